@@ -7,10 +7,14 @@ import io.swagger.v3.oas.annotations.info.Info;
 import io.swagger.v3.oas.annotations.info.License;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.core.Ordered;
 import org.springframework.data.jpa.repository.config.EnableJpaAuditing;
 
 @SpringBootApplication
 @EnableJpaAuditing(auditorAwareRef = "auditAwareImpl")
+// Cache advice wraps the transaction advice, so evictions happen after the transaction commits
+@EnableCaching(order = Ordered.LOWEST_PRECEDENCE - 1)
 @OpenAPIDefinition(
 		info = @Info(
 				title = "Hip Bank: Accounts microservice",
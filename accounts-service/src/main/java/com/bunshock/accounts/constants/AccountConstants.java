@@ -10,4 +10,20 @@ public class AccountConstants {
     public static final String MESSAGE_200 = "Successful operation: %s";
     public static final String MESSAGE_201 = "%s created successfully";
 
+    public static final String DEFAULT_PAGE_SIZE = "50";
+    public static final int MAX_PAGE_SIZE = 500;
+
+    public static final String ACCOUNT_DETAILS_CACHE = "accountDetails";
+
+    public static final String MOBILE_NUMBER_CONSTRAINT = "uk_customer_mobile_number";
+
+    // Customers per bulk request, and customers flushed to the database at once
+    public static final int MAX_BULK_SIZE = 10_000;
+    public static final int BULK_CHUNK_SIZE = 500;
+
+    // Timers of the service methods, of number generation and of block claims
+    public static final String SERVICE_METRIC = "service.invocations";
+    public static final String ID_GENERATION_METRIC = "identifier.generation";
+    public static final String BLOCK_CLAIM_METRIC = "identifier.block.claims";
+
 }
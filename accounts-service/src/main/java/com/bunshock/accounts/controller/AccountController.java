@@ -1,9 +1,11 @@
 package com.bunshock.accounts.controller;
 
 import com.bunshock.accounts.constants.AccountConstants;
+import com.bunshock.accounts.dto.CursorPageDTO;
 import com.bunshock.accounts.dto.ResponseErrorDTO;
 import com.bunshock.accounts.dto.customer.CustomerAccountDetailsDTO;
 import com.bunshock.accounts.dto.customer.CustomerAccountUpdateDTO;
+import com.bunshock.accounts.dto.customer.CustomerBulkResultDTO;
 import com.bunshock.accounts.dto.customer.CustomerInputDTO;
 import com.bunshock.accounts.dto.ResponseDTO;
 import com.bunshock.accounts.dto.ResponseSuccessDTO;
@@ -15,9 +17,11 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import jakarta.transaction.Transactional;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -30,6 +34,7 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.time.LocalDateTime;
@@ -125,10 +130,66 @@ public class AccountController {
                 .build(), HttpStatus.CREATED);
     }
 
+    @Operation(
+            summary = "Create the accounts of many customers",
+            description = "REST API to create many Customers, each with an associated Account, in" +
+                    " a single request. Each customer is validated on its own: invalid customers and" +
+                    " customers whose mobile number already exists are reported in the response" +
+                    " instead of failing the whole request."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "201",
+                    description = "HTTP Status: CREATED. Check 'created' field of each result.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseSuccessDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Accounts created",
+                                    value = "{\"statusCode\":201,\"timestamp\":\"02-06-2025 23:03" +
+                                            "\",\"message\":\"Accounts created successfully\",\"" +
+                                            "data\":[{\"mobileNumber\":\"+254712345678\",\"created" +
+                                            "\":true,\"accountNumber\":\"5831960233\"},{\"" +
+                                            "mobileNumber\":\"+254712345679\",\"created\":false,\"" +
+                                            "errorMessage\":\"Customer with mobile number '+2547" +
+                                            "12345679' already exists\"}]}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "HTTP Status: INTERNAL SERVER ERROR. Check 'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Internal server error",
+                                    value = "{\"statusCode\":500,\"timestamp\":\"02-06-2025 23:03" +
+                                            "\",\"apiPath\":\"uri=/api/accounts/create/bulk\",\"" +
+                                            "errorMessage\":\"Internal server error\"}"
+                            )
+                    )
+            )
+    })
+    @PostMapping("/create/bulk")
+    public ResponseEntity<ResponseDTO> createAccountsInBulk(
+            @RequestBody @Size(min = 1, max = AccountConstants.MAX_BULK_SIZE) List<CustomerInputDTO> customerInputs
+    ) {
+        List<CustomerBulkResultDTO> results = accountService.createAccounts(customerInputs);
+        return new ResponseEntity<>(ResponseSuccessDTO.<List<CustomerBulkResultDTO>>builder()
+                .statusCode(HttpStatus.CREATED.value())
+                .timestamp(LocalDateTime.now())
+                .message(String.format(AccountConstants.MESSAGE_201, "Accounts"))
+                .data(results)
+                .build(), HttpStatus.CREATED);
+    }
+
     @Operation(
             summary = "Fetch all customer's account details",
             description = "REST API to fetch every Customer's account details," +
-                    " including a Customer with an associated Account"
+                    " including a Customer with an associated Account. Results are paginated" +
+                    " by account number: pass the 'nextCursor' of a response as the 'after'" +
+                    " parameter to fetch the following page."
     )
     @ApiResponses({
             @ApiResponse(
@@ -148,7 +209,8 @@ public class AccountController {
                                             ", USA\"}},{\"name\":\"Bunshock Copycat\",\"email\":\"bunshock" +
                                             "@notme.com\",\"mobileNumber\":\"+154712345678\",\"account\":{" +
                                             "\"accountNumber\":\"9933458606\",\"accountType\":\"SAVINGS\"," +
-                                            "\"branchAddress\":\"1234 Main Street, Anytown, USA\"}}]}"
+                                            "\"branchAddress\":\"1234 Main Street, Anytown, USA\"}}]," +
+                                            "\"nextCursor\":\"9933458606\"}"
                             )
                     )
             ),
@@ -168,12 +230,19 @@ public class AccountController {
             )
     })
     @GetMapping("/fetch")
-    public ResponseEntity<ResponseDTO> fetchAccounts() {
+    public ResponseEntity<ResponseDTO> fetchAccounts(
+            @Pattern(regexp = "^\\d{10}$", message = "Account number must be exactly 10 digits")
+            @RequestParam(required = false) String after,
+            @Min(1) @Max(AccountConstants.MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = AccountConstants.DEFAULT_PAGE_SIZE) int limit
+    ) {
+        CursorPageDTO<CustomerAccountDetailsDTO> page = accountService.fetchAllAccountDetails(after, limit);
         return new ResponseEntity<>(ResponseSuccessDTO.<List<CustomerAccountDetailsDTO>>builder()
                 .statusCode(HttpStatus.OK.value())
                 .timestamp(LocalDateTime.now())
                 .message(String.format(AccountConstants.MESSAGE_200, "Fetched all account details"))
-                .data(accountService.fetchAllAccountDetails())
+                .data(page.getContent())
+                .nextCursor(page.getNextCursor())
                 .build(), HttpStatus.OK);
     }
 
@@ -422,7 +491,7 @@ public class AccountController {
             )
     })
     @DeleteMapping("/delete/{mobileNumber}")
-    @Transactional
+    // Not transactional: the service commits the delete before evicting the cached account details
     public ResponseEntity<ResponseDTO> deleteCustomerAccount(
             @Pattern(regexp = "^\\+?\\d{1,4}?[-.\\s]?\\(?\\d{1,3}?\\)?[-.\\s]?\\d{1,4}[-.\\s]" +
                     "?\\d{1,4}[-.\\s]?\\d{1,9}$", message = "Invalid mobile number format")
@@ -0,0 +1,18 @@
+package com.bunshock.accounts.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+// Single page of a keyset-paginated read, along with the cursor for the following page
+@AllArgsConstructor
+@Getter
+public class CursorPageDTO<T> {
+
+    private List<T> content;
+
+    // Key of the last element in the page, or null if there are no more pages
+    private String nextCursor;
+
+}
@@ -27,4 +27,11 @@ public class ResponseSuccessDTO<T> extends ResponseDTO {
     )
     private T data;
 
+    @Schema(
+            description = "Cursor to request the next page with (paginated responses only)." +
+                    " Absent on the last page",
+            example = "5831960233"
+    )
+    private String nextCursor;
+
 }
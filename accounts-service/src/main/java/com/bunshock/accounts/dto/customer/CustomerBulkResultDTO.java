@@ -0,0 +1,45 @@
+package com.bunshock.accounts.dto.customer;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Schema(
+        name = "Bulk account creation result",
+        description = "Outcome of creating the account of a single customer in a bulk request"
+)
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CustomerBulkResultDTO {
+
+    @Schema(
+            description = "Mobile number of the customer, as given in the request",
+            example = "+254712345678"
+    )
+    private String mobileNumber;
+
+    @Schema(
+            description = "Whether the account was created",
+            example = "true"
+    )
+    private boolean created;
+
+    @Schema(
+            description = "Number of the created account (successful case)",
+            example = "5831960233"
+    )
+    private String accountNumber;
+
+    @Schema(
+            description = "Reason why the account was not created (failure case)",
+            example = "Customer with mobile number '+254712345678' already exists"
+    )
+    private String errorMessage;
+
+}
@@ -5,7 +5,12 @@ import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.EnumType;
 import jakarta.persistence.Enumerated;
+import jakarta.persistence.FetchType;
 import jakarta.persistence.Id;
+import jakarta.persistence.JoinColumn;
+import jakarta.persistence.OneToOne;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -13,6 +18,8 @@ import lombok.Setter;
 import lombok.experimental.SuperBuilder;
 
 @Entity
+// One account per customer. The unique constraint also indexes customer_id for the joins
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_account_customer_id", columnNames = "customer_id"))
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
 @SuperBuilder
@@ -22,8 +29,10 @@ public class Account extends BaseEntity {
     @Column(name = "account_number", length = 10, unique = true, nullable = false)
     private String accountNumber;
 
-    @Column(name = "customer_id")
-    private Long customerId;
+    // Lazy, so that only the queries which fetch-join the customer load it
+    @OneToOne(fetch = FetchType.LAZY, optional = false)
+    @JoinColumn(name = "customer_id", nullable = false)
+    private Customer customer;
 
     @Enumerated(EnumType.STRING)
     @Column(name = "account_type")
@@ -1,10 +1,14 @@
 package com.bunshock.accounts.entity;
 
+import com.bunshock.accounts.constants.AccountConstants;
 import jakarta.persistence.Column;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -13,13 +17,17 @@ import lombok.experimental.SuperBuilder;
 
 
 @Entity
+@Table(uniqueConstraints = @UniqueConstraint(
+        name = AccountConstants.MOBILE_NUMBER_CONSTRAINT, columnNames = "mobile_number"))
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
 @SuperBuilder
 public class Customer extends BaseEntity {
 
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Sequence-generated (IDENTITY would disable JDBC batching of customer inserts)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "customer_seq")
+    @SequenceGenerator(name = "customer_seq", sequenceName = "customer_seq", allocationSize = 50)
     @Column(name = "customer_id")
     private Long customerId;
 
@@ -27,8 +35,9 @@ public class Customer extends BaseEntity {
 
     private String email;
 
-    // Customer registration is done via mobile number
-    @Column(name = "mobile_number", unique = true)
+    // Customer registration is done via mobile number. Uniqueness is enforced
+    // by the named constraint above, which duplicate signups are detected by
+    @Column(name = "mobile_number")
     private String mobileNumber;
 
 }
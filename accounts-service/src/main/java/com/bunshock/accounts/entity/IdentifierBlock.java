@@ -0,0 +1,31 @@
+package com.bunshock.accounts.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+// Range of account numbers reserved by a service instance. Claimed blocks are never released
+@Entity
+@Table(name = "identifier_blocks")
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+public class IdentifierBlock {
+
+    @Id
+    @Column(name = "block_start", nullable = false)
+    private Long blockStart;
+
+    @Column(name = "block_end", nullable = false)
+    private Long blockEnd;
+
+    @Column(name = "claimed_at", nullable = false)
+    private LocalDateTime claimedAt;
+
+}
@@ -2,6 +2,7 @@ package com.bunshock.accounts.exception;
 
 import com.bunshock.accounts.dto.ResponseErrorDTO;
 import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.http.converter.HttpMessageNotReadableException;
@@ -49,6 +50,15 @@ public class GlobalExceptionHandler {
         return singleErrorResponse(HttpStatus.CONFLICT, e.getMessage(), request);
     }
 
+    // Handle constraint violations not translated by the service layer (e.g. raised on commit)
+    @ExceptionHandler(DataIntegrityViolationException.class)
+    public ResponseEntity<ResponseErrorDTO> handleDataIntegrityViolationException(
+            DataIntegrityViolationException e, WebRequest request
+    ) {
+        return singleErrorResponse(HttpStatus.CONFLICT,
+                "Request conflicts with existing data", request);
+    }
+
     @ExceptionHandler(IdGenerationException.class)
     public ResponseEntity<ResponseErrorDTO> handleIdGenerationException(
             IdGenerationException e, WebRequest request
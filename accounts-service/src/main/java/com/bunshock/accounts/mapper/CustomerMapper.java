@@ -1,9 +1,11 @@
 package com.bunshock.accounts.mapper;
 
+import com.bunshock.accounts.dto.account.AccountShowDTO;
 import com.bunshock.accounts.dto.customer.CustomerAccountDetailsDTO;
 import com.bunshock.accounts.dto.customer.CustomerInputDTO;
 import com.bunshock.accounts.entity.Account;
 import com.bunshock.accounts.entity.Customer;
+import com.bunshock.accounts.repository.projection.CustomerAccountProjection;
 
 public class CustomerMapper {
 
@@ -26,4 +28,19 @@ public class CustomerMapper {
                 .build();
     }
 
+    public static CustomerAccountDetailsDTO mapToCustomerAccountDetailsDTO(
+            CustomerAccountProjection customerAccount
+    ) {
+        return CustomerAccountDetailsDTO.builder()
+                .name(customerAccount.getName())
+                .email(customerAccount.getEmail())
+                .mobileNumber(customerAccount.getMobileNumber())
+                .account(AccountShowDTO.builder()
+                        .accountNumber(customerAccount.getAccountNumber())
+                        .accountType(customerAccount.getAccountType())
+                        .branchAddress(customerAccount.getBranchAddress())
+                        .build())
+                .build();
+    }
+
 }
\ No newline at end of file
@@ -1,19 +1,33 @@
 package com.bunshock.accounts.repository;
 
 import com.bunshock.accounts.entity.Account;
-import jakarta.transaction.Transactional;
+import com.bunshock.accounts.repository.projection.CustomerAccountProjection;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface IAccountRepository extends JpaRepository<Account, String> {
 
-    Optional<Account> findByCustomerId(Long customerId);
+    // Account and customer in a single query
+    @Query("SELECT a FROM Account a JOIN FETCH a.customer c WHERE c.mobileNumber = :mobileNumber")
+    Optional<Account> findWithCustomerByMobileNumber(@Param("mobileNumber") String mobileNumber);
+
+    // Customer and account columns in one joined query (avoids a customer lookup per account),
+    // keyset-paginated on the account number
+    @Query("SELECT c.name AS name, c.email AS email, c.mobileNumber AS mobileNumber, " +
+            "a.accountNumber AS accountNumber, a.accountType AS accountType, " +
+            "a.branchAddress AS branchAddress " +
+            "FROM Account a JOIN a.customer c " +
+            "WHERE a.accountNumber > :after ORDER BY a.accountNumber")
+    List<CustomerAccountProjection> findCustomerAccountsAfter(@Param("after") String after, Limit limit);
+
+    @Query("SELECT a.accountNumber FROM Account a WHERE a.accountNumber BETWEEN :from AND :to")
+    List<String> findAccountNumbersBetween(@Param("from") String from, @Param("to") String to);
 
-    @Transactional
-    @Modifying
-    void deleteByCustomerId(Long customerId);
 }
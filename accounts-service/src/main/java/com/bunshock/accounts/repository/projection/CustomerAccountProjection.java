@@ -0,0 +1,22 @@
+package com.bunshock.accounts.repository.projection;
+
+import com.bunshock.accounts.enums.AccountType;
+
+/**
+ * Read-only view of a customer joined with its account, loaded in a single query.
+ */
+public interface CustomerAccountProjection {
+
+    String getName();
+
+    String getEmail();
+
+    String getMobileNumber();
+
+    String getAccountNumber();
+
+    AccountType getAccountType();
+
+    String getBranchAddress();
+
+}
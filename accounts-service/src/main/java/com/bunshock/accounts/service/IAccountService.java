@@ -1,7 +1,9 @@
 package com.bunshock.accounts.service;
 
+import com.bunshock.accounts.dto.CursorPageDTO;
 import com.bunshock.accounts.dto.customer.CustomerAccountDetailsDTO;
 import com.bunshock.accounts.dto.customer.CustomerAccountUpdateDTO;
+import com.bunshock.accounts.dto.customer.CustomerBulkResultDTO;
 import com.bunshock.accounts.dto.customer.CustomerInputDTO;
 
 import java.util.List;
@@ -16,11 +18,23 @@ public interface IAccountService {
     void createAccount(CustomerInputDTO customerInput);
 
     /**
-     * Fetches the details for all customer accounts.
+     * Creates an account for each of the given customers. Customers that are null or invalid, or whose
+     * mobile number is already registered, are skipped and reported as failed. Customers are committed
+     * in chunks, so the accounts created before an unexpected failure stay created.
      *
-     * @return a list of customer account details
+     * @param customerInputs the details of each customer
+     * @return the result for each customer, in the same order as the input
      */
-    List<CustomerAccountDetailsDTO> fetchAllAccountDetails();
+    List<CustomerBulkResultDTO> createAccounts(List<CustomerInputDTO> customerInputs);
+
+    /**
+     * Fetches a page of customer account details, ordered by account number.
+     *
+     * @param after the account number to start after (exclusive), or null for the first page
+     * @param limit the maximum number of account details in the page
+     * @return a page of customer account details and the cursor for the next page
+     */
+    CursorPageDTO<CustomerAccountDetailsDTO> fetchAllAccountDetails(String after, int limit);
 
     /**
      * Fetches the account details for a customer with a given mobile number
@@ -0,0 +1,192 @@
+package com.bunshock.accounts.service.impl;
+
+import com.bunshock.accounts.constants.AccountConstants;
+import com.bunshock.accounts.exception.IdGenerationException;
+import com.bunshock.accounts.repository.IAccountRepository;
+import com.bunshock.accounts.repository.IIdentifierBlockRepository;
+import com.bunshock.accounts.metrics.ServiceMetricsAspect;
+import com.bunshock.accounts.service.IdentifierGenerator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out account numbers from an in-memory pool of pre-reserved numbers.
+ * <p>
+ * Numbers are reserved in blocks of consecutive numbers. A block is claimed by inserting
+ * its start into the identifier_blocks table, so its primary key guarantees that no other
+ * instance can claim (and hand out) the same block. Handing out a number is then a lock-free
+ * poll from memory, with no existence check against the accounts table. The pool is refilled in
+ * the background once it drops below a threshold.
+ */
+@Service
+@Slf4j
+public class AccountNumberPoolService implements IdentifierGenerator {
+
+    private static final long MIN_ACCOUNT_NUMBER = 1_000_000_000L;
+    private static final long MAX_ACCOUNT_NUMBER = 9_999_999_999L;
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
+
+    private final AccountNumberGeneratorService accountNumberGenerator;
+    private final IIdentifierBlockRepository identifierBlockRepository;
+    private final IAccountRepository accountRepository;
+    private final int blockSize;
+    private final int refillThreshold;
+    private final MeterRegistry meterRegistry;
+    private final Timer generationTimer;
+    private final Timer claimSuccessTimer;
+    private final Timer claimConflictTimer;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "account-number-pool-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public AccountNumberPoolService(
+            AccountNumberGeneratorService accountNumberGenerator,
+            IIdentifierBlockRepository identifierBlockRepository,
+            IAccountRepository accountRepository,
+            @Value("${identifier-pool.block-size:1000}") int blockSize,
+            @Value("${identifier-pool.refill-threshold:200}") int refillThreshold,
+            MeterRegistry meterRegistry
+    ) {
+        this.accountNumberGenerator = accountNumberGenerator;
+        this.identifierBlockRepository = identifierBlockRepository;
+        this.accountRepository = accountRepository;
+        this.blockSize = blockSize;
+        this.refillThreshold = refillThreshold;
+        this.meterRegistry = meterRegistry;
+        this.generationTimer = timer(AccountConstants.ID_GENERATION_METRIC, ServiceMetricsAspect.OUTCOME_SUCCESS);
+        this.claimSuccessTimer = timer(AccountConstants.BLOCK_CLAIM_METRIC, ServiceMetricsAspect.OUTCOME_SUCCESS);
+        this.claimConflictTimer = timer(AccountConstants.BLOCK_CLAIM_METRIC, "conflict");
+    }
+
+    // Returns a reserved account number that has never been handed out
+    @Override
+    public String generateId() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            String accountNumber = pool.poll();
+            while (accountNumber == null) {
+                // Pool drained faster than the background refill: reserve on the caller's thread
+                reserveBlock();
+                accountNumber = pool.poll();
+            }
+            if (available.decrementAndGet() < refillThreshold)
+                scheduleRefill();
+            sample.stop(generationTimer);
+            return accountNumber;
+        } catch (RuntimeException e) {
+            sample.stop(timer(AccountConstants.ID_GENERATION_METRIC, ServiceMetricsAspect.outcomeOf(e)));
+            throw e;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleRefill() {
+        if (!refillScheduled.compareAndSet(false, true))
+            return;
+        refillExecutor.execute(() -> {
+            try {
+                reserveBlock();
+            } catch (RuntimeException e) {
+                // Retried on the next trigger, or on the caller's thread if the pool runs dry
+                log.warn("Failed to reserve a block of account numbers", e);
+            } finally {
+                refillScheduled.set(false);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    /**
+     * Claims a random block of account numbers not claimed by any instance before,
+     * and adds its numbers to the pool in random order.
+     *
+     * @throws IdGenerationException if no free block is found after the specified number of attempts
+     */
+    private synchronized void reserveBlock() {
+        // Another thread may have refilled the pool while this one was waiting
+        if (!pool.isEmpty() && available.get() >= refillThreshold)
+            return;
+
+        for (int attempt = 1; attempt <= MAX_CLAIM_ATTEMPTS; attempt++) {
+            // The existing random generator picks which block to claim
+            long offset = Long.parseLong(accountNumberGenerator.generateId()) - MIN_ACCOUNT_NUMBER;
+            long blockStart = MIN_ACCOUNT_NUMBER + offset - offset % blockSize;
+            long blockEnd = Math.min(blockStart + blockSize - 1, MAX_ACCOUNT_NUMBER);
+
+            Timer.Sample claim = Timer.start(meterRegistry);
+            try {
+                identifierBlockRepository.claimBlock(blockStart, blockEnd);
+            } catch (DataIntegrityViolationException e) {
+                // Block already claimed (by this or another instance)
+                claim.stop(claimConflictTimer);
+                continue;
+            }
+            claim.stop(claimSuccessTimer);
+
+            fillPool(blockStart, blockEnd);
+            return;
+        }
+        throw new IdGenerationException("Failed to reserve a block of unique account" +
+                " numbers after " + MAX_CLAIM_ATTEMPTS + " attempts");
+    }
+
+    private void fillPool(long blockStart, long blockEnd) {
+        // Account numbers generated before blocks existed may fall into the claimed block
+        Set<String> taken = new HashSet<>(accountRepository.findAccountNumbersBetween(
+                formatAccountNumber(blockStart), formatAccountNumber(blockEnd)));
+
+        List<String> accountNumbers = new ArrayList<>((int) (blockEnd - blockStart + 1));
+        for (long number = blockStart; number <= blockEnd; number++) {
+            String accountNumber = formatAccountNumber(number);
+            if (!taken.contains(accountNumber))
+                accountNumbers.add(accountNumber);
+        }
+        // Don't hand out consecutive (guessable) numbers
+        Collections.shuffle(accountNumbers, secureRandom);
+
+        pool.addAll(accountNumbers);
+        available.addAndGet(accountNumbers.size());
+    }
+
+    private Timer timer(String name, String outcome) {
+        return Timer.builder(name)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String formatAccountNumber(long number) {
+        return String.format("%010d", number);
+    }
+
+}
@@ -1,25 +1,41 @@
 package com.bunshock.accounts.service.impl;
 
 import com.bunshock.accounts.constants.AccountConstants;
+import com.bunshock.accounts.dto.CursorPageDTO;
 import com.bunshock.accounts.dto.customer.CustomerAccountDetailsDTO;
 import com.bunshock.accounts.dto.customer.CustomerAccountUpdateDTO;
+import com.bunshock.accounts.dto.customer.CustomerBulkResultDTO;
 import com.bunshock.accounts.dto.customer.CustomerInputDTO;
 import com.bunshock.accounts.entity.Account;
 import com.bunshock.accounts.entity.Customer;
 import com.bunshock.accounts.enums.AccountType;
 import com.bunshock.accounts.exception.CustomerAlreadyExistsException;
-import com.bunshock.accounts.exception.IdGenerationException;
 import com.bunshock.accounts.exception.ResourceNotFoundException;
-import com.bunshock.accounts.mapper.AccountMapper;
 import com.bunshock.accounts.mapper.CustomerMapper;
 import com.bunshock.accounts.repository.IAccountRepository;
 import com.bunshock.accounts.repository.ICustomerRepository;
+import com.bunshock.accounts.repository.projection.CustomerAccountProjection;
 import com.bunshock.accounts.service.IAccountService;
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.AllArgsConstructor;
+import org.hibernate.exception.ConstraintViolationException;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
 @AllArgsConstructor
@@ -27,27 +43,10 @@ public class AccountService implements IAccountService {
 
     private final IAccountRepository accountRepository;
     private final ICustomerRepository customerRepository;
-    private final AccountNumberGeneratorService accountNumberGenerator;
-
-    /**
-     * Generates a unique account number by attempting a number of times to produce
-     * a new account number that doesn't exist in the repository.
-     *
-     * @return a unique account number as a String
-     * @throws IdGenerationException if unable to generate a unique account number
-     *         after the specified number of attempts
-     */
-    private String generateUniqueAccountNumber() {
-        int maxAttempts = 10;
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            String newAccountNumber = accountNumberGenerator.generateId();
-            if (!accountRepository.existsById(newAccountNumber)) {
-                return newAccountNumber;
-            }
-        }
-        throw new IdGenerationException("Failed to generate a unique account" +
-                " number after " + maxAttempts + " attempts");
-    }
+    private final AccountNumberPoolService accountNumberPool;
+    private final EntityManager entityManager;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
 
     @Override
     @Transactional
@@ -59,84 +58,218 @@ public class AccountService implements IAccountService {
         // NOTE: For now, we don't allow an existing customer to be associated with
         // multiple accounts. Nor do we allow an existing customer to be reassigned
         // to a newly created account
-        customerRepository.findByMobileNumber(customer.getMobileNumber())
-                .ifPresent(existingCustomer -> {
-                    throw new CustomerAlreadyExistsException("Customer with mobile" +
-                            " number '" + customer.getMobileNumber() + "' already exists");
-                } );
-
-        Customer savedCustomer = customerRepository.save(customer);
+        // The unique constraint is the duplicate check: flushing right away surfaces
+        // a violation here, without a lookup beforehand and without races between signups
+        Customer savedCustomer = saveCustomerAndFlush(customer);
 
         // Create new account associated with newly saved customer
         Account newAccount = new Account();
 
-        String accountNumber = generateUniqueAccountNumber();
+        String accountNumber = accountNumberPool.generateId();
         newAccount.setAccountNumber(accountNumber);
 
-        newAccount.setCustomerId(savedCustomer.getCustomerId());
+        newAccount.setCustomer(savedCustomer);
         // TODO: let user choose account type
         newAccount.setAccountType(AccountType.SAVINGS);
         newAccount.setBranchAddress(AccountConstants.ADDRESS);
 
-        accountRepository.save(newAccount);
+        // Persisted directly: the account number is assigned, so save() would merge
+        // and select the account before inserting it
+        entityManager.persist(newAccount);
+    }
+
+    private Customer saveCustomerAndFlush(Customer customer) {
+        try {
+            return customerRepository.saveAndFlush(customer);
+        } catch (DataIntegrityViolationException e) {
+            if (isMobileNumberConflict(e))
+                throw new CustomerAlreadyExistsException("Customer with mobile" +
+                        " number '" + customer.getMobileNumber() + "' already exists");
+            throw e;
+        }
+    }
+
+    // Looked up along the causes: flushing through the entity manager reports the violation as is,
+    // while repositories translate it to a DataIntegrityViolationException
+    private static boolean isMobileNumberConflict(Throwable e) {
+        while (e != null && !(e instanceof ConstraintViolationException))
+            e = e.getCause();
+        if (!(e instanceof ConstraintViolationException violation) || violation.getConstraintName() == null)
+            return false;
+        // Reported with its schema by some databases, and as its backing "<name>_INDEX_<n>" index by H2
+        String constraintName = violation.getConstraintName().toLowerCase(Locale.ROOT);
+        constraintName = constraintName.substring(constraintName.lastIndexOf('.') + 1);
+        return constraintName.equals(AccountConstants.MOBILE_NUMBER_CONSTRAINT)
+                || constraintName.startsWith(AccountConstants.MOBILE_NUMBER_CONSTRAINT + "_index_");
+    }
+
+    // Not transactional: each chunk commits on its own, so that a failing chunk doesn't fail the others
+    @Override
+    public List<CustomerBulkResultDTO> createAccounts(List<CustomerInputDTO> customerInputs) {
+        List<CustomerBulkResultDTO> results = new ArrayList<>(customerInputs.size());
+        Set<String> requestedMobileNumbers = new HashSet<>();
+
+        for (int from = 0; from < customerInputs.size(); from += AccountConstants.BULK_CHUNK_SIZE) {
+            List<CustomerInputDTO> chunk = customerInputs.subList(from,
+                    Math.min(from + AccountConstants.BULK_CHUNK_SIZE, customerInputs.size()));
+
+            Set<String> chunkMobileNumbers = new HashSet<>();
+            List<CustomerBulkResultDTO> chunkResults;
+            try {
+                chunkResults = transactionTemplate.execute(status ->
+                        createChunk(chunk, requestedMobileNumbers, chunkMobileNumbers));
+                requestedMobileNumbers.addAll(chunkMobileNumbers);
+            } catch (RuntimeException e) {
+                if (!isMobileNumberConflict(e))
+                    throw e;
+                // A mobile number of the chunk was signed up since it was checked: the chunk is rolled
+                // back, and its customers created one at a time, so that only the duplicate fails
+                chunkResults = new ArrayList<>(chunk.size());
+                for (CustomerInputDTO customerInput : chunk)
+                    chunkResults.add(createOne(customerInput, requestedMobileNumbers));
+            }
+            results.addAll(chunkResults);
+        }
+
+        return results;
+    }
+
+    private List<CustomerBulkResultDTO> createChunk(List<CustomerInputDTO> chunk, Set<String> requestedMobileNumbers,
+                                                    Set<String> chunkMobileNumbers) {
+        // One set-based query per chunk for the mobile numbers already registered
+        Set<String> existingMobileNumbers = new HashSet<>(customerRepository.findExistingMobileNumbers(
+                chunk.stream().filter(Objects::nonNull).map(CustomerInputDTO::getMobileNumber)
+                        .filter(Objects::nonNull).toList()));
+
+        List<CustomerBulkResultDTO> results = new ArrayList<>(chunk.size());
+        for (CustomerInputDTO customerInput : chunk) {
+            String errorMessage = bulkInputError(customerInput);
+            if (errorMessage != null) {
+                results.add(failedBulkResult(customerInput == null ? null : customerInput.getMobileNumber(),
+                        errorMessage));
+                continue;
+            }
+            String mobileNumber = customerInput.getMobileNumber();
+            if (existingMobileNumbers.contains(mobileNumber) || requestedMobileNumbers.contains(mobileNumber)
+                    || !chunkMobileNumbers.add(mobileNumber))
+                results.add(alreadyExistsBulkResult(mobileNumber));
+            else
+                results.add(persistCustomerAccount(customerInput));
+        }
+
+        // Sends the deferred inserts of the chunk in JDBC batches, surfacing duplicates before commit
+        entityManager.flush();
+        return results;
+    }
+
+    private CustomerBulkResultDTO createOne(CustomerInputDTO customerInput, Set<String> requestedMobileNumbers) {
+        String errorMessage = bulkInputError(customerInput);
+        if (errorMessage != null)
+            return failedBulkResult(customerInput == null ? null : customerInput.getMobileNumber(), errorMessage);
+        String mobileNumber = customerInput.getMobileNumber();
+        if (!requestedMobileNumbers.add(mobileNumber))
+            return alreadyExistsBulkResult(mobileNumber);
+
+        try {
+            return transactionTemplate.execute(status -> {
+                CustomerBulkResultDTO result = persistCustomerAccount(customerInput);
+                entityManager.flush();
+                return result;
+            });
+        } catch (RuntimeException e) {
+            if (isMobileNumberConflict(e))
+                return alreadyExistsBulkResult(mobileNumber);
+            throw e;
+        }
+    }
+
+    // Why the customer can't be created whatever the database holds, or null if it's valid
+    private String bulkInputError(CustomerInputDTO customerInput) {
+        if (customerInput == null)
+            return "Customer must not be null";
+        Set<ConstraintViolation<CustomerInputDTO>> violations = validator.validate(customerInput);
+        if (violations.isEmpty())
+            return null;
+        return violations.stream()
+                .map(violation -> violation.getPropertyPath() + ": " + violation.getMessage())
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private CustomerBulkResultDTO persistCustomerAccount(CustomerInputDTO customerInput) {
+        // Sequence-generated customer ids are assigned on persist, so both
+        // inserts are deferred and sent to the database in JDBC batches
+        Customer customer = CustomerMapper.mapToCustomer(customerInput);
+        entityManager.persist(customer);
+
+        Account account = new Account();
+        account.setAccountNumber(accountNumberPool.generateId());
+        account.setCustomer(customer);
+        account.setAccountType(AccountType.SAVINGS);
+        account.setBranchAddress(AccountConstants.ADDRESS);
+        entityManager.persist(account);
+
+        return CustomerBulkResultDTO.builder()
+                .mobileNumber(customer.getMobileNumber())
+                .created(true)
+                .accountNumber(account.getAccountNumber())
+                .build();
+    }
+
+    private static CustomerBulkResultDTO alreadyExistsBulkResult(String mobileNumber) {
+        return failedBulkResult(mobileNumber, "Customer with mobile number '" + mobileNumber + "' already exists");
+    }
+
+    private static CustomerBulkResultDTO failedBulkResult(String mobileNumber, String errorMessage) {
+        return CustomerBulkResultDTO.builder()
+                .mobileNumber(mobileNumber)
+                .created(false)
+                .errorMessage(errorMessage)
+                .build();
     }
 
     @Override
-    public List<CustomerAccountDetailsDTO> fetchAllAccountDetails() {
-        List<Account> accounts = accountRepository.findAll();
-        return accounts.stream()
-                .map(account -> {
-                    Customer customer = customerRepository.findById(account.getCustomerId())
-                            .orElseThrow(() -> new ResourceNotFoundException(
-                                    "Customer", "customerId", account.getCustomerId().toString()));
-                    return CustomerAccountDetailsDTO.builder()
-                            .name(customer.getName())
-                            .email(customer.getEmail())
-                            .mobileNumber(customer.getMobileNumber())
-                            .account(AccountMapper.mapToAccountShowDTO(account))
-                            .build();
-                })
+    public CursorPageDTO<CustomerAccountDetailsDTO> fetchAllAccountDetails(String after, int limit) {
+        // Fetch one extra row to know whether there is a next page
+        List<CustomerAccountProjection> customerAccounts = accountRepository.findCustomerAccountsAfter(
+                after == null ? "" : after, Limit.of(limit + 1));
+
+        List<CustomerAccountDetailsDTO> page = customerAccounts.stream()
+                .limit(limit)
+                .map(CustomerMapper::mapToCustomerAccountDetailsDTO)
                 .toList();
+        String nextCursor = customerAccounts.size() > limit
+                ? page.getLast().getAccount().getAccountNumber()
+                : null;
+
+        return new CursorPageDTO<>(page, nextCursor);
     }
 
     @Override
+    @Cacheable(cacheNames = AccountConstants.ACCOUNT_DETAILS_CACHE, key = "#mobileNumber")
     public CustomerAccountDetailsDTO fetchAccountDetails(String mobileNumber) {
-        Customer customer = customerRepository.findByMobileNumber(mobileNumber)
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Customer", "mobileNumber", mobileNumber));
-
-        Account account = accountRepository.findByCustomerId(customer.getCustomerId())
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Account", "customerId", customer.getCustomerId().toString()));
+        Account account = findAccountWithCustomer(mobileNumber);
+        Customer customer = account.getCustomer();
 
         return CustomerMapper.mapToCustomerAccountDetailsDTO(customer, account);
     }
 
     @Override
     @Transactional
+    // Cached under the mobile number used for the lookup, i.e. the old one if it's being changed
+    @CacheEvict(cacheNames = AccountConstants.ACCOUNT_DETAILS_CACHE, key = "#mobileNumber")
     public CustomerAccountDetailsDTO updateAccount(String mobileNumber, CustomerAccountUpdateDTO updatedAccount) {
-        Customer customer = customerRepository.findByMobileNumber(mobileNumber)
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Customer", "mobileNumber", mobileNumber));
-
-        Account account = accountRepository.findByCustomerId(customer.getCustomerId())
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Account", "customerId", customer.getCustomerId().toString()));
+        Account account = findAccountWithCustomer(mobileNumber);
+        Customer customer = account.getCustomer();
 
         // Update and save customer details
         if (updatedAccount.getName() != null)
             customer.setName(updatedAccount.getName());
         if (updatedAccount.getEmail() != null)
             customer.setEmail(updatedAccount.getEmail());
-        if (updatedAccount.getMobileNumber() != null) {
-            customerRepository.findByMobileNumber(updatedAccount.getMobileNumber())
-                    .ifPresent(existingCustomer -> {
-                        throw new CustomerAlreadyExistsException("Customer with mobile" +
-                                " number '" + updatedAccount.getMobileNumber() + "' already exists");
-                    } );
+        if (updatedAccount.getMobileNumber() != null)
             customer.setMobileNumber(updatedAccount.getMobileNumber());
-        }
-        Customer savedCustomer = customerRepository.save(customer);
+        Customer savedCustomer = saveCustomerAndFlush(customer);
 
         // Update and save account details (if account details are provided)
         if (updatedAccount.getAccount() == null)
@@ -152,17 +285,20 @@ public class AccountService implements IAccountService {
     }
 
     @Override
+    @Transactional
+    @CacheEvict(cacheNames = AccountConstants.ACCOUNT_DETAILS_CACHE, key = "#mobileNumber")
     public void deleteAccount(String mobileNumber) {
-        Customer customer = customerRepository.findByMobileNumber(mobileNumber)
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Customer", "mobileNumber", mobileNumber));
+        Account account = findAccountWithCustomer(mobileNumber);
 
-        accountRepository.findByCustomerId(customer.getCustomerId())
-                .orElseThrow(() -> new ResourceNotFoundException(
-                        "Account", "customerId", customer.getCustomerId().toString()));
+        // The account references the customer, so it goes first
+        accountRepository.delete(account);
+        customerRepository.delete(account.getCustomer());
+    }
 
-        accountRepository.deleteByCustomerId(customer.getCustomerId());
-        customerRepository.deleteById(customer.getCustomerId());
+    private Account findAccountWithCustomer(String mobileNumber) {
+        return accountRepository.findWithCustomerByMobileNumber(mobileNumber)
+                .orElseThrow(() -> new ResourceNotFoundException(
+                        "Customer", "mobileNumber", mobileNumber));
     }
 
 }
@@ -0,0 +1,39 @@
+package com.bunshock.accounts.benchmark;
+
+import com.bunshock.accounts.service.impl.AccountNumberGeneratorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Account number generation, and the formatting part of it on its own
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AccountNumberGeneratorBenchmark {
+
+	private final AccountNumberGeneratorService generator = new AccountNumberGeneratorService();
+
+	private long number = 5_831_960_233L;
+
+	@Benchmark
+	public String generateId() {
+		return generator.generateId();
+	}
+
+	@Benchmark
+	public String formatAccountNumber() {
+		return String.format("%010d", number);
+	}
+
+}
@@ -0,0 +1,71 @@
+package com.bunshock.accounts.benchmark;
+
+import com.bunshock.accounts.dto.customer.CustomerAccountDetailsDTO;
+import com.bunshock.accounts.dto.customer.CustomerInputDTO;
+import com.bunshock.accounts.entity.Account;
+import com.bunshock.accounts.entity.Customer;
+import com.bunshock.accounts.enums.AccountType;
+import com.bunshock.accounts.mapper.CustomerMapper;
+import com.bunshock.accounts.repository.projection.CustomerAccountProjection;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CustomerMapperBenchmark {
+
+	private CustomerInputDTO customerInput;
+	private Customer customer;
+	private Account account;
+	private CustomerAccountProjection customerAccount;
+
+	@Setup
+	public void setUp() {
+		customerInput = new CustomerInputDTO("Bunshock", "bunshock@me.com", "+254712345678");
+		customer = CustomerMapper.mapToCustomer(customerInput);
+		account = Account.builder()
+				.accountNumber("5831960233")
+				.customer(customer)
+				.accountType(AccountType.SAVINGS)
+				.branchAddress("1234 Main Street, Anytown, USA")
+				.build();
+		customerAccount = new CustomerAccountProjection() {
+			public String getName() { return customer.getName(); }
+			public String getEmail() { return customer.getEmail(); }
+			public String getMobileNumber() { return customer.getMobileNumber(); }
+			public String getAccountNumber() { return account.getAccountNumber(); }
+			public AccountType getAccountType() { return account.getAccountType(); }
+			public String getBranchAddress() { return account.getBranchAddress(); }
+		};
+	}
+
+	@Benchmark
+	public Customer mapToCustomer() {
+		return CustomerMapper.mapToCustomer(customerInput);
+	}
+
+	@Benchmark
+	public CustomerAccountDetailsDTO mapEntitiesToCustomerAccountDetailsDTO() {
+		return CustomerMapper.mapToCustomerAccountDetailsDTO(customer, account);
+	}
+
+	@Benchmark
+	public CustomerAccountDetailsDTO mapProjectionToCustomerAccountDetailsDTO() {
+		return CustomerMapper.mapToCustomerAccountDetailsDTO(customerAccount);
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.bunshock.accounts.benchmark;
+
+import com.bunshock.accounts.constants.AccountConstants;
+import com.bunshock.accounts.dto.ResponseErrorDTO;
+import com.bunshock.accounts.dto.ResponseSuccessDTO;
+import com.bunshock.accounts.dto.account.AccountShowDTO;
+import com.bunshock.accounts.dto.customer.CustomerAccountDetailsDTO;
+import com.bunshock.accounts.enums.AccountType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Building the response bodies the controllers and the exception handler return,
+// and serializing them the way the message converter does
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseBenchmark {
+
+	// Configured with the same well-known modules as the one Spring Boot auto-configures
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	private CustomerAccountDetailsDTO data;
+	private Map<String, String> errors;
+	private ResponseSuccessDTO<CustomerAccountDetailsDTO> successResponse;
+	private ResponseErrorDTO errorResponse;
+
+	@Setup
+	public void setUp() {
+		data = CustomerAccountDetailsDTO.builder()
+				.name("Bunshock")
+				.email("bunshock@me.com")
+				.mobileNumber("+254712345678")
+				.account(AccountShowDTO.builder()
+						.accountNumber("5831960233")
+						.accountType(AccountType.SAVINGS)
+						.branchAddress("1234 Main Street, Anytown, USA")
+						.build())
+				.build();
+		errors = Map.of(
+				"mobileNumber", "Invalid mobile number format",
+				"email", "Invalid email address format");
+		successResponse = buildSuccessResponse();
+		errorResponse = buildErrorResponse();
+	}
+
+	@Benchmark
+	public ResponseSuccessDTO<CustomerAccountDetailsDTO> buildSuccessResponse() {
+		return ResponseSuccessDTO.<CustomerAccountDetailsDTO>builder()
+				.statusCode(HttpStatus.OK.value())
+				.timestamp(LocalDateTime.now())
+				.message(String.format(AccountConstants.MESSAGE_200, "Fetched details"))
+				.data(data)
+				.build();
+	}
+
+	@Benchmark
+	public ResponseErrorDTO buildErrorResponse() {
+		return ResponseErrorDTO.builder()
+				.statusCode(HttpStatus.BAD_REQUEST.value())
+				.timestamp(LocalDateTime.now())
+				.apiPath("uri=/api/accounts/fetch")
+				.errors(errors)
+				.build();
+	}
+
+	@Benchmark
+	public ResponseErrorDTO buildSingleErrorResponse() {
+		return ResponseErrorDTO.builder()
+				.statusCode(HttpStatus.NOT_FOUND.value())
+				.timestamp(LocalDateTime.now())
+				.apiPath("uri=/api/accounts/fetch")
+				.errorMessage("Customer not found with mobileNumber : '+254712345678'")
+				.build();
+	}
+
+	@Benchmark
+	public byte[] serializeSuccessResponse() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(successResponse);
+	}
+
+	@Benchmark
+	public byte[] serializeErrorResponse() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(errorResponse);
+	}
+
+}
@@ -0,0 +1,299 @@
+package com.bunshock.accounts.service.impl;
+
+import com.bunshock.accounts.constants.AccountConstants;
+import com.bunshock.accounts.dto.CursorPageDTO;
+import com.bunshock.accounts.dto.customer.CustomerAccountDetailsDTO;
+import com.bunshock.accounts.dto.customer.CustomerAccountUpdateDTO;
+import com.bunshock.accounts.dto.customer.CustomerBulkResultDTO;
+import com.bunshock.accounts.dto.customer.CustomerInputDTO;
+import com.bunshock.accounts.exception.CustomerAlreadyExistsException;
+import com.bunshock.accounts.exception.ResourceNotFoundException;
+import com.bunshock.accounts.repository.IAccountRepository;
+import com.bunshock.accounts.repository.ICustomerRepository;
+import com.bunshock.accounts.repository.IIdentifierBlockRepository;
+import com.bunshock.accounts.service.IAccountService;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.CacheManager;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.Mockito.doAnswer;
+
+@SpringBootTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class AccountServiceTests {
+
+	@Autowired
+	private IAccountService accountService;
+
+	@Autowired
+	private IAccountRepository accountRepository;
+
+	@MockitoSpyBean
+	private ICustomerRepository customerRepository;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	@Autowired
+	private IIdentifierBlockRepository identifierBlockRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	private int customerCount = 0;
+
+	@AfterEach
+	void cleanUp() {
+		accountRepository.deleteAll();
+		customerRepository.deleteAll();
+		cacheManager.getCache(AccountConstants.ACCOUNT_DETAILS_CACHE).clear();
+	}
+
+	@Test
+	void fetchAllAccountDetailsUsesConstantStatementCount() {
+		createCustomers(5);
+		long smallDatasetStatements = countStatements(() ->
+				assertThat(accountService.fetchAllAccountDetails(null, 1000).getContent()).hasSize(5));
+
+		createCustomers(100);
+		long largeDatasetStatements = countStatements(() ->
+				assertThat(accountService.fetchAllAccountDetails(null, 1000).getContent()).hasSize(105));
+
+		assertThat(smallDatasetStatements).isEqualTo(1);
+		assertThat(largeDatasetStatements).isEqualTo(smallDatasetStatements);
+	}
+
+	@Test
+	void fetchAllAccountDetailsPagesThroughEveryAccountOnce() {
+		createCustomers(5);
+
+		List<String> accountNumbers = new ArrayList<>();
+		String cursor = null;
+		do {
+			CursorPageDTO<CustomerAccountDetailsDTO> page = accountService.fetchAllAccountDetails(cursor, 2);
+			assertThat(page.getContent()).hasSizeLessThanOrEqualTo(2);
+			page.getContent().forEach(details -> accountNumbers.add(details.getAccount().getAccountNumber()));
+			cursor = page.getNextCursor();
+		} while (cursor != null);
+
+		assertThat(accountNumbers).hasSize(5).doesNotHaveDuplicates().isSorted();
+	}
+
+	@Test
+	void singleAccountOperationsLoadCustomerAndAccountInOneQuery() {
+		createCustomers(1);
+		String mobileNumber = String.format("+1555%07d", 1);
+
+		assertThat(countStatements(() -> accountService.fetchAccountDetails(mobileNumber))).isEqualTo(1);
+		// Select, then update of the customer
+		assertThat(countStatements(() -> accountService.updateAccount(mobileNumber,
+				CustomerAccountUpdateDTO.builder().name("Renamed").build()))).isEqualTo(2);
+		// Select, then delete of the account and of the customer
+		assertThat(countStatements(() -> accountService.deleteAccount(mobileNumber))).isEqualTo(3);
+		assertThatThrownBy(() -> accountService.deleteAccount(mobileNumber))
+				.isInstanceOf(ResourceNotFoundException.class);
+	}
+
+	@Test
+	void fetchAccountDetailsIsCachedUntilUpdatedOrDeleted() {
+		createCustomers(2);
+		String mobileNumber = String.format("+1555%07d", 1);
+		String newMobileNumber = String.format("+1555%07d", 100);
+
+		accountService.fetchAccountDetails(mobileNumber);
+		assertThat(countStatements(() -> accountService.fetchAccountDetails(mobileNumber))).isZero();
+
+		// Changing the mobile number must evict the entry cached under the old one
+		accountService.updateAccount(mobileNumber,
+				CustomerAccountUpdateDTO.builder().mobileNumber(newMobileNumber).build());
+		assertThatThrownBy(() -> accountService.fetchAccountDetails(mobileNumber))
+				.isInstanceOf(ResourceNotFoundException.class);
+		assertThat(accountService.fetchAccountDetails(newMobileNumber).getMobileNumber())
+				.isEqualTo(newMobileNumber);
+
+		accountService.deleteAccount(newMobileNumber);
+		assertThatThrownBy(() -> accountService.fetchAccountDetails(newMobileNumber))
+				.isInstanceOf(ResourceNotFoundException.class);
+	}
+
+	@Test
+	void createAccountsBatchesInsertsAndReportsEachCustomer() {
+		createCustomers(1);
+		List<CustomerInputDTO> customerInputs = new ArrayList<>();
+		for (int i = 1; i <= 1000; i++) {
+			customerInputs.add(new CustomerInputDTO("Bulk " + i, "bulk" + i + "@me.com",
+					String.format("+1555%07d", i)));
+		}
+		customerInputs.add(new CustomerInputDTO("Repeated", "repeated@me.com", String.format("+1555%07d", 2)));
+		customerInputs.add(new CustomerInputDTO("", "invalid", "not a number"));
+
+		List<CustomerBulkResultDTO> results = new ArrayList<>();
+		long statements = countStatements(() -> results.addAll(accountService.createAccounts(customerInputs)));
+
+		assertThat(results).hasSize(1002);
+		assertThat(results.getFirst().isCreated()).isFalse();
+		assertThat(results.get(1).isCreated()).isTrue();
+		assertThat(results.get(1).getAccountNumber()).matches("^\\d{10}$");
+		assertThat(results.get(1000).getErrorMessage()).contains("already exists");
+		assertThat(results.get(1001).getErrorMessage()).contains("email", "mobileNumber", "name");
+		assertThat(results).filteredOn(CustomerBulkResultDTO::isCreated).hasSize(999);
+		assertThat(accountRepository.count()).isEqualTo(1000);
+
+		// Far fewer statements than the two inserts per customer of unbatched creation
+		assertThat(statements).isLessThan(200);
+	}
+
+	@Test
+	void createAccountsReportsOnlyTheCustomersSignedUpConcurrently() {
+		List<CustomerInputDTO> customerInputs = new ArrayList<>();
+		for (int i = 1; i <= 3; i++) {
+			customerInputs.add(new CustomerInputDTO("Bulk " + i, "bulk" + i + "@me.com",
+					String.format("+1555%07d", i)));
+		}
+		customerInputs.add(null);
+
+		// Signed up by another request right after the chunk was checked for existing mobile numbers (none)
+		doAnswer(invocation -> {
+			CompletableFuture.runAsync(() -> accountService.createAccount(
+					new CustomerInputDTO("Concurrent", "concurrent@me.com", String.format("+1555%07d", 2)))).join();
+			return List.of();
+		}).when(customerRepository).findExistingMobileNumbers(anyCollection());
+
+		List<CustomerBulkResultDTO> results = accountService.createAccounts(customerInputs);
+
+		assertThat(results).extracting(CustomerBulkResultDTO::isCreated).containsExactly(true, false, true, false);
+		assertThat(results.get(1).getErrorMessage()).contains("already exists");
+		assertThat(results.get(3).getErrorMessage()).isEqualTo("Customer must not be null");
+		assertThat(accountRepository.count()).isEqualTo(3);
+	}
+
+	@Test
+	void parallelDuplicateSignupsCreateExactlyOneCustomer() throws Exception {
+		int signups = 8;
+		CustomerInputDTO customerInput = new CustomerInputDTO("Duplicate", "duplicate@me.com", "+15559999999");
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(signups)) {
+			for (int i = 0; i < signups; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					accountService.createAccount(customerInput);
+					return null;
+				}));
+			}
+			start.countDown();
+		}
+
+		int created = 0;
+		for (Future<?> result : results) {
+			try {
+				result.get();
+				created++;
+			} catch (ExecutionException e) {
+				assertThat(e.getCause()).isInstanceOf(CustomerAlreadyExistsException.class);
+			}
+		}
+
+		assertThat(created).isEqualTo(1);
+		assertThat(customerRepository.count()).isEqualTo(1);
+		assertThat(accountRepository.count()).isEqualTo(1);
+	}
+
+	@Test
+	void updateAccountRejectsMobileNumberOfAnotherCustomer() {
+		createCustomers(2);
+		String mobileNumber = String.format("+1555%07d", 1);
+		String otherMobileNumber = String.format("+1555%07d", 2);
+
+		assertThatThrownBy(() -> accountService.updateAccount(mobileNumber,
+				CustomerAccountUpdateDTO.builder().mobileNumber(otherMobileNumber).build()))
+				.isInstanceOf(CustomerAlreadyExistsException.class);
+		assertThat(accountService.fetchAccountDetails(mobileNumber).getMobileNumber()).isEqualTo(mobileNumber);
+	}
+
+	@Test
+	void blockClaimsCommitIndependentlyOfTheCallersTransaction() {
+		// Outside the range of account numbers, so that it can't clash with the blocks of the pool
+		long blockStart = 1L;
+		CustomerInputDTO customerInput = new CustomerInputDTO("Claimer", "claimer@me.com", "+15558888888");
+		TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+
+		// A rolled back create doesn't release the block claimed during it
+		transactionTemplate.executeWithoutResult(status -> {
+			accountService.createAccount(customerInput);
+			identifierBlockRepository.claimBlock(blockStart, blockStart + 999);
+			status.setRollbackOnly();
+		});
+		assertThat(customerRepository.count()).isZero();
+		assertThat(identifierBlockRepository.existsById(blockStart)).isTrue();
+
+		// A conflicting claim doesn't fail the create it happened during
+		transactionTemplate.executeWithoutResult(status -> {
+			accountService.createAccount(customerInput);
+			assertThatThrownBy(() -> identifierBlockRepository.claimBlock(blockStart, blockStart + 999))
+					.isInstanceOf(DataIntegrityViolationException.class);
+		});
+		assertThat(customerRepository.count()).isEqualTo(1);
+
+		identifierBlockRepository.deleteById(blockStart);
+	}
+
+	@Test
+	void serviceMethodsAreTimedByOutcome() {
+		createCustomers(1);
+		accountService.fetchAccountDetails(String.format("+1555%07d", 1));
+		assertThatThrownBy(() -> accountService.fetchAccountDetails("+15550000000"))
+				.isInstanceOf(ResourceNotFoundException.class);
+
+		assertThat(meterRegistry.get(AccountConstants.SERVICE_METRIC)
+				.tags("method", "fetchAccountDetails", "outcome", "success").timer().count()).isPositive();
+		assertThat(meterRegistry.get(AccountConstants.SERVICE_METRIC)
+				.tags("method", "fetchAccountDetails", "outcome", "not-found").timer().count()).isPositive();
+		assertThat(meterRegistry.get(AccountConstants.ID_GENERATION_METRIC)
+				.tag("outcome", "success").timer().count()).isPositive();
+	}
+
+	private void createCustomers(int count) {
+		for (int i = 0; i < count; i++) {
+			customerCount++;
+			accountService.createAccount(new CustomerInputDTO("Customer " + customerCount,
+					"customer" + customerCount + "@me.com", String.format("+1555%07d", customerCount)));
+		}
+	}
+
+	private long countStatements(Runnable action) {
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+		action.run();
+		return statistics.getPrepareStatementCount();
+	}
+
+}
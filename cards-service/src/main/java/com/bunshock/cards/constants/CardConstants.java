@@ -8,6 +8,28 @@ public class CardConstants {
     public static final String MESSAGE_200 = "Successful operation: %s";
     public static final String MESSAGE_201 = "%s created successfully";
 
-    public static final Double NEW_CARD_LIMIT = 100_000.0;
+    public static final String DEFAULT_PAGE_SIZE = "50";
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // Rows fetched per database round trip, and rows kept in the persistence context, while exporting
+    public static final String EXPORT_FETCH_SIZE = "1000";
+    public static final int EXPORT_CLEAR_INTERVAL = 1000;
+
+    // In minor units, see Money
+    public static final long NEW_CARD_LIMIT = 100_000_00L;
+
+    public static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+    public static final int IDEMPOTENCY_KEY_MAX_LENGTH = 255;
+
+    // Timers of the service methods, of number generation and of block claims, meters of the
+    // Bloom filter of existing numbers, and meters of the spend path
+    public static final String SERVICE_METRIC = "service.invocations";
+    public static final String ID_GENERATION_METRIC = "identifier.generation";
+    public static final String BLOCK_CLAIM_METRIC = "identifier.block.claims";
+    public static final String BLOOM_FILTER_METRIC = "identifier.bloom.filter";
+    public static final String SPEND_BATCH_METRIC = "card.spend.batch.size";
+    public static final String SPEND_IDEMPOTENCY_CACHE = "card.spend.idempotency";
+    public static final String SPEND_RATE_LIMIT_CACHE = "card.spend.rate.limit";
+    public static final String SPEND_THROTTLED_METRIC = "card.spend.throttled";
 
 }
@@ -1,13 +1,18 @@
 package com.bunshock.cards.controller;
 
 import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.dto.CursorPageDTO;
 import com.bunshock.cards.dto.ResponseDTO;
 import com.bunshock.cards.dto.ResponseErrorDTO;
 import com.bunshock.cards.dto.ResponseSuccessDTO;
 import com.bunshock.cards.dto.card.CardCreateDTO;
 import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.dto.card.CardSpendShowDTO;
 import com.bunshock.cards.dto.card.CardUpdateDTO;
+import com.bunshock.cards.money.Money;
 import com.bunshock.cards.service.ICardService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -16,10 +21,14 @@ import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
 import org.springframework.web.bind.annotation.DeleteMapping;
@@ -28,10 +37,14 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -46,6 +59,7 @@ import java.util.List;
 public class CardController {
 
     private final ICardService cardService;
+    private final ObjectMapper objectMapper;
 
     @Operation(
             summary = "Create a new card",
@@ -110,7 +124,8 @@ public class CardController {
 
     @Operation(
             summary = "Fetch all cards",
-            description = "REST API to fetch every card details"
+            description = "REST API to fetch every card details. Results are paginated: pass the" +
+                    " 'nextCursor' of a response as the 'after' parameter to fetch the following page."
     )
     @ApiResponses({
             @ApiResponse(
@@ -125,10 +140,11 @@ public class CardController {
                                             "\"message\":\"Successful operation: Fetched all card " +
                                             "details\",\"data\":[{\"mobileNumber\":\"+91243558671\"," +
                                             "\"cardNumber\":\"7873355014\",\"cardType\":\"DEBIT\"," +
-                                            "\"cardLimit\":150000,\"amountUsed\":0,\"availableAmount" +
-                                            "\":150000},{\"mobileNumber\":\"+11223345678\"," +
+                                            "\"cardLimit\":150000.00,\"amountUsed\":0.00,\"availableAmount" +
+                                            "\":150000.00},{\"mobileNumber\":\"+11223345678\"," +
                                             "\"cardNumber\":\"9736285880\",\"cardType\":\"CREDIT\"," +
-                                            "\"cardLimit\":100000,\"amountUsed\":0,\"availableAmount\":100000}]}"
+                                            "\"cardLimit\":100000.00,\"amountUsed\":0.00,\"availableAmount\":100000.00}]," +
+                                            "\"nextCursor\":\"2\"}"
                             )
                     )
             ),
@@ -148,15 +164,59 @@ public class CardController {
             )
     })
     @GetMapping("/fetch")
-    public ResponseEntity<ResponseDTO> fetchAllCards() {
+    public ResponseEntity<ResponseDTO> fetchAllCards(
+            @Positive @RequestParam(required = false) Long after,
+            @Min(1) @Max(CardConstants.MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = CardConstants.DEFAULT_PAGE_SIZE) int limit
+    ) {
+        CursorPageDTO<CardShowDTO> page = cardService.fetchAllCards(after, limit);
         return new ResponseEntity<>(ResponseSuccessDTO.<List<CardShowDTO>>builder()
                 .statusCode(HttpStatus.OK.value())
                 .timestamp(LocalDateTime.now())
                 .message(String.format(CardConstants.MESSAGE_200, "Fetched all card details"))
-                .data(cardService.fetchAllCards())
+                .data(page.getContent())
+                .nextCursor(page.getNextCursor())
                 .build(), HttpStatus.OK);
     }
 
+    @Operation(
+            summary = "Export all cards",
+            description = "REST API to stream every card details as newline-delimited JSON" +
+                    " (one card per line), ordered by card id"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "HTTP Status: OK",
+                    content = @Content(
+                            mediaType = MediaType.APPLICATION_NDJSON_VALUE,
+                            examples = @ExampleObject(
+                                    name = "Cards exported successfully",
+                                    value = "{\"mobileNumber\":\"+91243558671\",\"cardNumber\":\"7873355014\"," +
+                                            "\"cardType\":\"DEBIT\",\"cardLimit\":150000.00,\"amountUsed\":0.00," +
+                                            "\"availableAmount\":150000.00}\n{\"mobileNumber\":\"+11223345678\"," +
+                                            "\"cardNumber\":\"9736285880\",\"cardType\":\"CREDIT\"," +
+                                            "\"cardLimit\":100000.00,\"amountUsed\":0.00,\"availableAmount\":100000.00}\n"
+                            )
+                    )
+            )
+    })
+    @GetMapping(path = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportCards() {
+        ObjectWriter cardWriter = objectMapper.writerFor(CardShowDTO.class);
+        StreamingResponseBody body = outputStream -> cardService.exportAllCards(card -> {
+            try {
+                outputStream.write(cardWriter.writeValueAsBytes(card));
+                outputStream.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        return ResponseEntity.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(body);
+    }
+
     @Operation(
             summary = "Fetch a single card details",
             description = "REST API to fetch a card's details"
@@ -174,8 +234,8 @@ public class CardController {
                                             "\"message\":\"Successful operation: Fetched card details" +
                                             " for card number 5140213096\",\"data\":{\"mobileNumber\":" +
                                             "\"+11223345678\",\"cardNumber\":\"5140213096\",\"cardType" +
-                                            "\":\"CREDIT\",\"cardLimit\":100000,\"amountUsed\":0," +
-                                            "\"availableAmount\":100000}}"
+                                            "\":\"CREDIT\",\"cardLimit\":100000.00,\"amountUsed\":0.00," +
+                                            "\"availableAmount\":100000.00}}"
                             )
                     )
             ),
@@ -224,6 +284,58 @@ public class CardController {
                 .build(), HttpStatus.OK);
     }
 
+    @Operation(
+            summary = "Fetch all cards of a customer",
+            description = "REST API to fetch the details of every card of a customer, using their mobile number"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "HTTP Status: OK",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseSuccessDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Customer cards fetched successfully",
+                                    value = "{\"statusCode\":200,\"timestamp\":\"07-06-2025 14:47\"," +
+                                            "\"message\":\"Successful operation: Fetched card details" +
+                                            " for customer with mobile number: +11223345678\",\"data\":[" +
+                                            "{\"mobileNumber\":\"+11223345678\",\"cardNumber\":\"5140213096\"," +
+                                            "\"cardType\":\"CREDIT\",\"cardLimit\":100000.00,\"amountUsed\":0.00," +
+                                            "\"availableAmount\":100000.00}]}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "HTTP Status: INTERNAL SERVER ERROR. Check 'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Internal server error: Invalid mobile number format",
+                                    value = "{\"statusCode\":500,\"timestamp\":\"07-06-2025 14:49\"," +
+                                            "\"apiPath\":\"uri=/api/cards/fetch/customer/123abc\",\"errorMessage" +
+                                            "\":\"fetchCardsByMobileNumber.mobileNumber: Invalid mobile number format\"}"
+                            )
+                    )
+            )
+    })
+    @GetMapping("/fetch/customer/{mobileNumber}")
+    public ResponseEntity<ResponseDTO> fetchCardsByMobileNumber(
+            @Pattern(regexp = "^\\+?\\d{1,4}?[-.\\s]?\\(?\\d{1,3}?\\)?[-.\\s]?\\d{1,4}[-.\\s]" +
+                    "?\\d{1,4}[-.\\s]?\\d{1,9}$", message = "Invalid mobile number format")
+            @PathVariable String mobileNumber
+    ) {
+        return new ResponseEntity<>(ResponseSuccessDTO.<List<CardShowDTO>>builder()
+                .statusCode(HttpStatus.OK.value())
+                .timestamp(LocalDateTime.now())
+                .message(String.format(CardConstants.MESSAGE_200, "Fetched card details for customer with" +
+                        " mobile number: " + mobileNumber))
+                .data(cardService.fetchCardsByMobileNumber(mobileNumber))
+                .build(), HttpStatus.OK);
+    }
+
     @Operation(
             summary = "Update a card",
             description = "REST API to update a card"
@@ -241,8 +353,8 @@ public class CardController {
                                             "\"message\":\"Successful operation: Updated card details" +
                                             " for card number 5140213096\",\"data\":{\"mobileNumber\":" +
                                             "\"+11223345678\",\"cardNumber\":\"5140213096\",\"cardType" +
-                                            "\":\"DEBIT\",\"cardLimit\":250000,\"amountUsed\":0," +
-                                            "\"availableAmount\":250000}}"
+                                            "\":\"DEBIT\",\"cardLimit\":250000.00,\"amountUsed\":0.00," +
+                                            "\"availableAmount\":250000.00}}"
                             )
                     )
             ),
@@ -375,7 +487,8 @@ public class CardController {
 
     @Operation(
             summary = "Spend money from a card",
-            description = "REST API to spend money from a card"
+            description = "REST API to spend money from a card. Retries sending the same Idempotency-Key" +
+                    " header spend the money only once"
     )
     @ApiResponses({
             @ApiResponse(
@@ -388,7 +501,7 @@ public class CardController {
                                     name = "Money spent successfully",
                                     value = "{\"statusCode\":200,\"timestamp\":\"07-06-2025 15:00\"," +
                                             "\"message\":\"Successful operation: Money spent successfully" +
-                                            " for card number 4364172931 (amount: 1200.8)\"}"
+                                            " for card number 4364172931 (amount: 1200.80)\"}"
                             )
                     )
             ),
@@ -408,6 +521,55 @@ public class CardController {
                             )
                     )
             ),
+            @ApiResponse(
+                    responseCode = "409",
+                    description = "HTTP Status: CONFLICT. Possible causes: the card doesn't have enough" +
+                            " available, or a spend with the same idempotency key is still in progress." +
+                            " Check 'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Idempotent spend in progress",
+                                    value = "{\"statusCode\":409,\"timestamp\":\"07-06-2025 15:01\"," +
+                                            "\"apiPath\":\"uri=/api/cards/spend/4364172931\",\"errorMessage" +
+                                            "\":\"A spend with idempotency key '6c1f0e42' is still in progress," +
+                                            " retry later\"}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "422",
+                    description = "HTTP Status: UNPROCESSABLE ENTITY. Possible cause: the idempotency" +
+                            " key was already used to spend from another card or another amount. Check " +
+                            "'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Idempotency key reused",
+                                    value = "{\"statusCode\":422,\"timestamp\":\"07-06-2025 15:02\"," +
+                                            "\"apiPath\":\"uri=/api/cards/spend/4364172931\",\"errorMessage" +
+                                            "\":\"Idempotency key '6c1f0e42' was already used for a different request\"}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "429",
+                    description = "HTTP Status: TOO MANY REQUESTS. Possible cause: too many spends from" +
+                            " the card in a short time, when the spend rate limit is enabled. Check " +
+                            "'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Spend throttled",
+                                    value = "{\"statusCode\":429,\"timestamp\":\"07-06-2025 15:03\"," +
+                                            "\"apiPath\":\"uri=/api/cards/spend/4364172931\",\"errorMessage" +
+                                            "\":\"Too many spends from this card, retry later\"}"
+                            )
+                    )
+            ),
             @ApiResponse(
                     responseCode = "500",
                     description = "HTTP Status: INTERNAL SERVER ERROR. Check 'errorMessage' field.",
@@ -423,7 +585,8 @@ public class CardController {
                                     name = "Internal server error: Invalid amount format",
                                     value = "{\"statusCode\":500,\"timestamp\":\"07-06-2025 15:01\"," +
                                             "\"apiPath\":\"uri=/api/cards/spend/4364172931\"," +
-                                            "\"errorMessage\":\"spendMoney.amount: must be greater than 0\"}"
+                                            "\"errorMessage\":\"spendMoney.amount: Amount must be a positive decimal number" +
+                                            " with at most 2 decimal places\"}"
                             )}
                     )
             )
@@ -432,14 +595,93 @@ public class CardController {
     public ResponseEntity<ResponseDTO> spendMoney(
             @Pattern(regexp = "^\\d{10}$", message = "Card number must be exactly 10 digits")
             @PathVariable String cardNumber,
-            @Positive @RequestParam Double amount
+            @Pattern(regexp = "^(?=.*[1-9])\\d{1,13}(\\.\\d{1,2})?$", message = "Amount must be a positive" +
+                    " decimal number with at most 2 decimal places")
+            @RequestParam String amount,
+            @Size(min = 1, max = CardConstants.IDEMPOTENCY_KEY_MAX_LENGTH)
+            @RequestHeader(name = CardConstants.IDEMPOTENCY_KEY_HEADER, required = false) String idempotencyKey
     ) {
-        cardService.spendMoney(cardNumber, amount);
+        long amountInMinorUnits = Money.parse(amount);
+        cardService.spendMoney(cardNumber, amountInMinorUnits, idempotencyKey);
         return new ResponseEntity<>(ResponseSuccessDTO.<Void>builder()
                 .statusCode(HttpStatus.OK.value())
                 .timestamp(LocalDateTime.now())
                 .message(String.format(CardConstants.MESSAGE_200, "Money spent successfully for card number "
-                        + cardNumber + " (amount: " + amount + ")"))
+                        + cardNumber + " (amount: " + Money.format(amountInMinorUnits) + ")"))
+                .build(), HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Fetch the spend history of a card",
+            description = "REST API to fetch the spends of a card, oldest first, along with the available" +
+                    " amount right after each one (requires card-spend-history.enabled). Results are paginated:" +
+                    " pass the 'nextCursor' of a response as the 'after' parameter to fetch the following page."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "HTTP Status: OK",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseSuccessDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Spend history fetched successfully",
+                                    value = "{\"statusCode\":200,\"timestamp\":\"07-06-2025 15:10\"," +
+                                            "\"message\":\"Successful operation: Fetched spend history" +
+                                            " for card number 4364172931\",\"data\":[{\"amount\":1200.80," +
+                                            "\"availableAmount\":98799.20,\"spentAt\":\"07-06-2025 15:00:12.417\"}," +
+                                            "{\"amount\":300.00,\"availableAmount\":98499.20,\"spentAt\":" +
+                                            "\"07-06-2025 15:04:51.093\"}],\"nextCursor\":\"4294967336\"}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "HTTP Status: NOT FOUND. Possible cause: specified card number does not" +
+                            " match any existing card, or the spend history is disabled. Check " +
+                            "'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Spend history not found",
+                                    value = "{\"statusCode\":404,\"timestamp\":\"07-06-2025 15:11\"," +
+                                            "\"apiPath\":\"uri=/api/cards/history/1234567890\"," +
+                                            "\"errorMessage\":\"Spend history not found with cardNumber : '1234567890'\"}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "HTTP Status: INTERNAL SERVER ERROR. Check 'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Internal server error: Invalid card number format",
+                                    value = "{\"statusCode\":500,\"timestamp\":\"07-06-2025 15:12\"," +
+                                            "\"apiPath\":\"uri=/api/cards/history/123\",\"errorMessage" +
+                                            "\":\"fetchSpendHistory.cardNumber: Card number must be exactly 10 digits\"}"
+                            )
+                    )
+            )
+    })
+    @GetMapping("/history/{cardNumber}")
+    public ResponseEntity<ResponseDTO> fetchSpendHistory(
+            @Pattern(regexp = "^\\d{10}$", message = "Card number must be exactly 10 digits")
+            @PathVariable String cardNumber,
+            @Positive @RequestParam(required = false) Long after,
+            @Min(1) @Max(CardConstants.MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = CardConstants.DEFAULT_PAGE_SIZE) int limit
+    ) {
+        CursorPageDTO<CardSpendShowDTO> page = cardService.fetchSpendHistory(cardNumber, after, limit);
+        return new ResponseEntity<>(ResponseSuccessDTO.<List<CardSpendShowDTO>>builder()
+                .statusCode(HttpStatus.OK.value())
+                .timestamp(LocalDateTime.now())
+                .message(String.format(CardConstants.MESSAGE_200, "Fetched spend history for card number "
+                        + cardNumber))
+                .data(page.getContent())
+                .nextCursor(page.getNextCursor())
                 .build(), HttpStatus.OK);
     }
 
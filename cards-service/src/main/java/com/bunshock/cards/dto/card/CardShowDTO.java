@@ -1,6 +1,7 @@
 package com.bunshock.cards.dto.card;
 
 import com.bunshock.cards.enums.CardType;
+import com.bunshock.cards.money.JsonMoney;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -15,8 +16,11 @@ public class CardShowDTO {
     private String mobileNumber;
     private String cardNumber;
     private CardType cardType;
-    private Double cardLimit;
-    private Double amountUsed;
-    private Double availableAmount;
+    @JsonMoney
+    private long cardLimit;
+    @JsonMoney
+    private long amountUsed;
+    @JsonMoney
+    private long availableAmount;
 
 }
@@ -0,0 +1,28 @@
+package com.bunshock.cards.dto.card;
+
+import com.bunshock.cards.money.JsonMoney;
+import com.fasterxml.jackson.annotation.JsonFormat;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDateTime;
+
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@Builder
+public class CardSpendShowDTO {
+
+    @JsonMoney
+    private long amount;
+
+    // Available amount of the card right after the spend
+    @JsonMoney
+    private long availableAmount;
+
+    @JsonFormat(pattern = "dd-MM-yyyy HH:mm:ss.SSS")
+    private LocalDateTime spentAt;
+
+}
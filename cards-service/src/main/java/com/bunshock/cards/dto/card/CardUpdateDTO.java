@@ -1,5 +1,6 @@
 package com.bunshock.cards.dto.card;
 
+import com.bunshock.cards.money.JsonMoney;
 import com.bunshock.cards.validation.ValidCardType;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Pattern;
@@ -36,9 +37,11 @@ public class CardUpdateDTO {
 
     @Schema(
             description = "Card limit",
-            example = "10000.0"
+            type = "number",
+            example = "10000.00"
     )
     @Positive
-    private Double cardLimit;
+    @JsonMoney
+    private Long cardLimit;
 
 }
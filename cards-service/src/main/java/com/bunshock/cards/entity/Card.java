@@ -8,6 +8,7 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
@@ -16,7 +17,9 @@ import lombok.Setter;
 import lombok.experimental.SuperBuilder;
 
 @Entity
-@Table(name = "cards")
+// Lookups by customer seek this index, which also yields their cards in card id order
+@Table(name = "cards", indexes = @Index(
+        name = "idx_card_mobile_number", columnList = "mobile_number, card_id"))
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
 @SuperBuilder
@@ -38,12 +41,16 @@ public class Card extends BaseEntity {
     private CardType cardType;
 
     @Column(name = "card_limit", nullable = false)
-    private Double cardLimit;
+    private long cardLimit;
 
     @Column(name = "amount_used", nullable = false)
-    private Double amountUsed;
+    private long amountUsed;
 
     @Column(name = "available_amount", nullable = false)
-    private Double availableAmount;
+    private long availableAmount;
+
+    // Sequence number of the last spend flushed by the in-memory balance engine (if enabled)
+    @Column(name = "balance_sequence")
+    private Long balanceSequence;
 
 }
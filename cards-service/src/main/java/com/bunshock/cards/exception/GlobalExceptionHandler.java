@@ -98,6 +98,30 @@ public class GlobalExceptionHandler {
         return singleErrorResponse(HttpStatus.CONFLICT, e.getMessage(), request);
     }
 
+    // Handle idempotency keys reused for a different request
+    @ExceptionHandler(IdempotencyKeyMismatchException.class)
+    public ResponseEntity<ResponseErrorDTO> handleIdempotencyKeyMismatchException(
+            IdempotencyKeyMismatchException e, WebRequest request
+    ) {
+        return singleErrorResponse(HttpStatus.UNPROCESSABLE_ENTITY, e.getMessage(), request);
+    }
+
+    // Handle spends whose idempotency key is claimed by a spend still running on another instance
+    @ExceptionHandler(IdempotentSpendInProgressException.class)
+    public ResponseEntity<ResponseErrorDTO> handleIdempotentSpendInProgressException(
+            IdempotentSpendInProgressException e, WebRequest request
+    ) {
+        return singleErrorResponse(HttpStatus.CONFLICT, e.getMessage(), request);
+    }
+
+    // Handle spends throttled by the rate limiter
+    @ExceptionHandler(SpendRateLimitExceededException.class)
+    public ResponseEntity<ResponseErrorDTO> handleSpendRateLimitExceededException(
+            SpendRateLimitExceededException e, WebRequest request
+    ) {
+        return singleErrorResponse(HttpStatus.TOO_MANY_REQUESTS, e.getMessage(), request);
+    }
+
     // Handle any other not specified exceptions
     @ExceptionHandler(Exception.class)
     public ResponseEntity<ResponseErrorDTO> handleGlobalException(
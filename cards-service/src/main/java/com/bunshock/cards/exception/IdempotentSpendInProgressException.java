@@ -0,0 +1,13 @@
+package com.bunshock.cards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.CONFLICT)
+public class IdempotentSpendInProgressException extends RuntimeException {
+
+    public IdempotentSpendInProgressException(String idempotencyKey) {
+        super(String.format("A spend with idempotency key '%s' is still in progress, retry later", idempotencyKey));
+    }
+
+}
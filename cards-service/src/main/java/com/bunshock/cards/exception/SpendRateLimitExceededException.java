@@ -0,0 +1,16 @@
+package com.bunshock.cards.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.TOO_MANY_REQUESTS)
+public class SpendRateLimitExceededException extends RuntimeException {
+
+    // Thrown for every throttled spend, so it's shared and carries no stack trace
+    public static final SpendRateLimitExceededException INSTANCE = new SpendRateLimitExceededException();
+
+    private SpendRateLimitExceededException() {
+        super("Too many spends from this card, retry later", null, false, false);
+    }
+
+}
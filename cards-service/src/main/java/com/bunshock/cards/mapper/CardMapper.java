@@ -1,7 +1,13 @@
 package com.bunshock.cards.mapper;
 
 import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.dto.card.CardSpendShowDTO;
 import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.service.impl.CardSpendHistoryJournal;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 
 public class CardMapper {
 
@@ -16,4 +22,12 @@ public class CardMapper {
                 .build();
     }
 
+    public static CardSpendShowDTO mapToCardSpendShowDTO(CardSpendHistoryJournal.Entry entry) {
+        return CardSpendShowDTO.builder()
+                .amount(entry.amount())
+                .availableAmount(entry.availableAmount())
+                .spentAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(entry.spentAt()), ZoneId.systemDefault()))
+                .build();
+    }
+
 }
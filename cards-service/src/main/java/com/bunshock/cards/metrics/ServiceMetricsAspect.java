@@ -0,0 +1,65 @@
+package com.bunshock.cards.metrics;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.exception.IdGenerationException;
+import com.bunshock.cards.exception.IdempotencyKeyMismatchException;
+import com.bunshock.cards.exception.InsufficientFundsException;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every {@link com.bunshock.cards.service.ICardService} method, tagged by method and outcome.
+ * The timers publish a percentile histogram, so that latency percentiles can be queried per operation.
+ */
+@Aspect
+@Component
+// Outermost advice, so that the timings include caching and transactions
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@AllArgsConstructor
+public class ServiceMetricsAspect {
+
+    public static final String OUTCOME_SUCCESS = "success";
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("execution(* com.bunshock.cards.service.ICardService.*(..))")
+    public Object timeServiceMethod(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = OUTCOME_SUCCESS;
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(CardConstants.SERVICE_METRIC)
+                    .tag("service", "ICardService")
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    // Outcome tag value of an operation that failed with the given exception
+    public static String outcomeOf(Throwable e) {
+        return switch (e) {
+            case ResourceNotFoundException ignored -> "not-found";
+            case InsufficientFundsException ignored -> "insufficient-funds";
+            case DataIntegrityViolationException ignored -> "conflict";
+            case IdempotencyKeyMismatchException ignored -> "idempotency-key-mismatch";
+            case IdGenerationException ignored -> "id-exhausted";
+            default -> "error";
+        };
+    }
+
+}
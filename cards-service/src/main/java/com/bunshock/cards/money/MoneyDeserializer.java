@@ -0,0 +1,31 @@
+package com.bunshock.cards.money;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+
+import java.io.IOException;
+
+/**
+ * Reads a JSON number (or numeric string) in major units, like 1200.8, to minor units. The amount is
+ * parsed from its text, so it's never rounded through a {@code double}.
+ */
+public class MoneyDeserializer extends JsonDeserializer<Long> {
+
+    @Override
+    public Long deserialize(JsonParser parser, DeserializationContext context) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token != JsonToken.VALUE_NUMBER_INT && token != JsonToken.VALUE_NUMBER_FLOAT
+                && token != JsonToken.VALUE_STRING)
+            return (Long) context.handleUnexpectedToken(Long.class, parser);
+
+        String text = parser.getText().trim();
+        try {
+            return Money.parse(text);
+        } catch (NumberFormatException e) {
+            return (Long) context.handleWeirdStringValue(Long.class, text, e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,17 @@
+package com.bunshock.cards.money;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+// Writes minor units as a JSON number in major units, like 1200.80
+public class MoneySerializer extends JsonSerializer<Long> {
+
+    @Override
+    public void serialize(Long amount, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeNumber(Money.format(amount));
+    }
+
+}
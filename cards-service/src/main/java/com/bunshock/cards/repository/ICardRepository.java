@@ -1,16 +1,74 @@
 package com.bunshock.cards.repository;
 
+import com.bunshock.cards.constants.CardConstants;
 import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.enums.CardType;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface ICardRepository extends JpaRepository<Card, Long> {
 
     boolean existsByCardNumber(String cardNumber);
 
+    @Query("SELECT c.cardType FROM Card c WHERE c.cardNumber = :cardNumber")
+    Optional<CardType> findCardTypeByCardNumber(@Param("cardNumber") String cardNumber);
+
+    @Query("SELECT c.availableAmount FROM Card c WHERE c.cardNumber = :cardNumber")
+    long findAvailableAmount(@Param("cardNumber") String cardNumber);
+
     Optional<Card> findByCardNumber(String cardNumber);
 
+    List<Card> findByMobileNumberOrderByCardIdAsc(String mobileNumber);
+
+    List<Card> findByCardIdGreaterThanOrderByCardIdAsc(Long cardId, Limit limit);
+
+    // Forward-only, read-only stream over every card. Must be consumed inside a transaction
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = CardConstants.EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true"),
+            @QueryHint(name = HibernateHints.HINT_CACHEABLE, value = "false")
+    })
+    @Query("SELECT c FROM Card c ORDER BY c.cardId")
+    Stream<Card> streamAllByOrderByCardId();
+
+    // Check and decrement in one guarded statement, so concurrent spends can neither overspend
+    // nor lose updates. Updates no row if the card doesn't exist or has insufficient funds
+    @Transactional
+    @Modifying
+    @Query("UPDATE Card c SET c.availableAmount = c.availableAmount - :amount, " +
+            "c.amountUsed = c.amountUsed + :amount, c.updatedAt = :updatedAt, c.updatedBy = :updatedBy " +
+            "WHERE c.cardNumber = :cardNumber AND c.availableAmount >= :amount")
+    int spendIfAvailable(@Param("cardNumber") String cardNumber, @Param("amount") long amount,
+                         @Param("updatedAt") LocalDateTime updatedAt, @Param("updatedBy") String updatedBy);
+
+    // Writes only the editable columns, so that it can't overwrite the balances (or balance sequence) of a
+    // spend committed since the card was read. A null parameter leaves its column unchanged
+    @Transactional
+    @Modifying
+    @Query("UPDATE Card c SET c.mobileNumber = COALESCE(:mobileNumber, c.mobileNumber), " +
+            "c.cardType = COALESCE(:cardType, c.cardType), c.cardLimit = COALESCE(:cardLimit, c.cardLimit), " +
+            "c.availableAmount = COALESCE(:cardLimit, c.cardLimit) - c.amountUsed, " +
+            "c.updatedAt = :updatedAt, c.updatedBy = :updatedBy WHERE c.cardNumber = :cardNumber")
+    int updateDetails(@Param("cardNumber") String cardNumber, @Param("mobileNumber") String mobileNumber,
+                      @Param("cardType") CardType cardType, @Param("cardLimit") Long cardLimit,
+                      @Param("updatedAt") LocalDateTime updatedAt, @Param("updatedBy") String updatedBy);
+
+    @Query("SELECT c.cardNumber FROM Card c WHERE c.cardNumber IN :cardNumbers")
+    List<String> findExistingCardNumbers(@Param("cardNumbers") Collection<String> cardNumbers);
+
 }
@@ -0,0 +1,44 @@
+package com.bunshock.cards.repository;
+
+import com.bunshock.cards.entity.SpendIdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface ISpendIdempotencyRecordRepository extends JpaRepository<SpendIdempotencyRecord, String> {
+
+    // Plain insert (no merge): fails with a DataIntegrityViolationException if the key is already claimed.
+    // Committed on its own, before the spend runs, so that other instances see the claim
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = "INSERT INTO spend_idempotency_keys (idempotency_key, card_number, amount, status, claimed_at) " +
+            "VALUES (:idempotencyKey, :cardNumber, :amount, 'PENDING', CURRENT_TIMESTAMP)", nativeQuery = true)
+    void claimKey(@Param("idempotencyKey") String idempotencyKey, @Param("cardNumber") String cardNumber,
+                  @Param("amount") long amount);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE SpendIdempotencyRecord r SET r.status = com.bunshock.cards.entity.SpendIdempotencyRecord.Status.COMPLETED, " +
+            "r.completedAt = CURRENT_TIMESTAMP WHERE r.idempotencyKey = :idempotencyKey")
+    int completeKey(@Param("idempotencyKey") String idempotencyKey);
+
+    // Frees the key of a spend that failed, so that it may be retried
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM SpendIdempotencyRecord r WHERE r.idempotencyKey = :idempotencyKey " +
+            "AND r.status = com.bunshock.cards.entity.SpendIdempotencyRecord.Status.PENDING")
+    int releaseKey(@Param("idempotencyKey") String idempotencyKey);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM SpendIdempotencyRecord r WHERE r.claimedAt < :before")
+    int deleteClaimedBefore(@Param("before") LocalDateTime before);
+
+}
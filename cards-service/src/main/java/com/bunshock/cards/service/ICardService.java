@@ -1,10 +1,13 @@
 package com.bunshock.cards.service;
 
+import com.bunshock.cards.dto.CursorPageDTO;
 import com.bunshock.cards.dto.card.CardCreateDTO;
 import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.dto.card.CardSpendShowDTO;
 import com.bunshock.cards.dto.card.CardUpdateDTO;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface ICardService {
 
@@ -17,11 +20,21 @@ public interface ICardService {
 
 
     /**
-     * Fetch all the card details.
+     * Fetch a page of card details, ordered by card id.
      *
-     * @return list of cards
+     * @param after the card id to start after (exclusive), or null for the first page
+     * @param limit the maximum number of cards in the page
+     * @return a page of cards and the cursor for the next page
      */
-    List<CardShowDTO> fetchAllCards();
+    CursorPageDTO<CardShowDTO> fetchAllCards(Long after, int limit);
+
+    /**
+     * Export every card, one at a time and in card id order, without loading
+     * all of them in memory.
+     *
+     * @param consumer the consumer receiving each card's details
+     */
+    void exportAllCards(Consumer<CardShowDTO> consumer);
 
     /**
      * Fetch a specific card's details using its card number.
@@ -31,6 +44,14 @@ public interface ICardService {
      */
     CardShowDTO fetchCard(String cardNumber);
 
+    /**
+     * Fetch the details of every card of a customer, ordered by card id.
+     *
+     * @param mobileNumber the mobile number of the customer
+     * @return the details of the customer's cards, empty if the customer has none
+     */
+    List<CardShowDTO> fetchCardsByMobileNumber(String mobileNumber);
+
     /**
      * Update the details of an existing card.
      *
@@ -52,10 +73,29 @@ public interface ICardService {
      * Spend a specified amount of money from a card's available balance.
      *
      * @param cardNumber the unique number of the card from which money will be spent
-     * @param amount the amount of money to spend
+     * @param amount the amount of money to spend, in minor units (see {@link com.bunshock.cards.money.Money})
      */
-    void spendMoney(String cardNumber, Double amount);
+    void spendMoney(String cardNumber, long amount);
 
-    // TODO: Add a method to get all cards for a specific customer
+    /**
+     * Spend a specified amount of money from a card's available balance, at most once per
+     * idempotency key: repeating a key returns the outcome of the spend first made with it. New spends
+     * count against the rate limit of the card, if enabled; repeated keys don't.
+     *
+     * @param cardNumber the unique number of the card from which money will be spent
+     * @param amount the amount of money to spend, in minor units (see {@link com.bunshock.cards.money.Money})
+     * @param idempotencyKey the key chosen by the client for this spend, or null to spend unconditionally
+     */
+    void spendMoney(String cardNumber, long amount, String idempotencyKey);
+
+    /**
+     * Fetch a page of the spends of a card, oldest first, from the spend history.
+     *
+     * @param cardNumber the unique number of the card
+     * @param after the cursor returned with the previous page, or null for the first page
+     * @param limit the maximum number of spends in the page
+     * @return a page of spends and the cursor for the next page
+     */
+    CursorPageDTO<CardSpendShowDTO> fetchSpendHistory(String cardNumber, Long after, int limit);
 
 }
@@ -0,0 +1,357 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.exception.InsufficientFundsException;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Optional in-memory authorization engine for card spends, enabled by {@code card-balance-engine.enabled}.
+ * <p>
+ * The balances of the cards being spent from are kept in memory, guarded by striped locks, so that
+ * authorizing a spend needs no database round trip. Every authorized spend is appended to a
+ * {@link CardBalanceJournal} before it's acknowledged, and the amounts spent are flushed to the cards
+ * table in JDBC batches in the background. Each card row records the sequence number of the last spend
+ * flushed into it, so that on startup the spends left in the journal are applied to the table exactly once.
+ * <p>
+ * Balance changes of a card held in memory must go through the engine: any other writer of the card
+ * row runs its write through {@link #evictDuring(String, Supplier)}, so that no spend of the card is
+ * authorized against the row as it was before the write.
+ */
+@Service
+@ConditionalOnProperty(name = "card-balance-engine.enabled", havingValue = "true")
+@Slf4j
+public class CardBalanceEngine {
+
+    // Relative update, so that it composes with changes made to the row since the card was loaded
+    private static final String FLUSH_SQL = "UPDATE cards SET available_amount = available_amount - ?," +
+            " amount_used = amount_used + ?, balance_sequence = ?, updated_at = ?, updated_by = ?" +
+            " WHERE card_number = ?";
+
+    private final ICardRepository cardRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditorAware<String> auditorAware;
+    private final CardBalanceJournal journal;
+    private final Optional<CardSpendHistory> spendHistory;
+    private final long idleTimeoutNanos;
+
+    private final ReentrantLock[] stripes;
+    private final Map<String, Balance> balances = new ConcurrentHashMap<>();
+    private final Set<String> dirtyCards = ConcurrentHashMap.newKeySet();
+    private final AtomicLong sequence = new AtomicLong();
+
+    // In-memory balance of a card, guarded by the card's stripe lock
+    private static final class Balance {
+        private long availableAmount;
+        private long amountUsed;
+        // Spent since the last flush, and sequence number of the last spend
+        private long unflushedAmount;
+        private long lastSequence;
+        private long lastSpentAt;
+    }
+
+    public CardBalanceEngine(
+            ICardRepository cardRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            AuditorAware<String> auditorAware,
+            Optional<CardSpendHistory> spendHistory,
+            @Value("${card-balance-engine.stripes:1024}") int stripes,
+            @Value("${card-balance-engine.idle-timeout:10m}") Duration idleTimeout,
+            @Value("${card-balance-engine.journal-dir:./data/card-balance-journal}") Path journalDir,
+            @Value("${card-balance-engine.sync-on-write:false}") boolean syncOnWrite
+    ) throws IOException {
+        this.cardRepository = cardRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.auditorAware = auditorAware;
+        this.journal = new CardBalanceJournal(journalDir, syncOnWrite);
+        this.spendHistory = spendHistory;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++)
+            this.stripes[i] = new ReentrantLock();
+    }
+
+    /**
+     * Applies the spends left in the journal by the previous run (those not flushed before it stopped)
+     * to the cards table, then starts a new journal segment.
+     */
+    @PostConstruct
+    public synchronized void recover() throws IOException {
+        List<Path> segments = journal.segments();
+        List<CardBalanceJournal.Entry> entries = journal.read(segments);
+
+        Map<String, List<CardBalanceJournal.Entry>> entriesByCard = new LinkedHashMap<>();
+        for (CardBalanceJournal.Entry entry : entries)
+            entriesByCard.computeIfAbsent(entry.cardNumber(), cardNumber -> new ArrayList<>()).add(entry);
+
+        List<Object[]> rows = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        String auditor = auditorAware.getCurrentAuditor().orElse(null);
+        transactionTemplate.executeWithoutResult(status -> {
+            entriesByCard.forEach((cardNumber, cardEntries) -> {
+                List<Long> flushedSequence = jdbcTemplate.queryForList("SELECT COALESCE(balance_sequence, 0)" +
+                        " FROM cards WHERE card_number = ?", Long.class, cardNumber);
+                // Card deleted since: nothing to apply
+                if (flushedSequence.isEmpty())
+                    return;
+
+                long amount = 0;
+                long lastSequence = flushedSequence.getFirst();
+                for (CardBalanceJournal.Entry entry : cardEntries) {
+                    if (entry.sequence() > flushedSequence.getFirst()) {
+                        amount = Money.add(amount, entry.amount());
+                        lastSequence = Math.max(lastSequence, entry.sequence());
+                    }
+                }
+                if (lastSequence > flushedSequence.getFirst())
+                    rows.add(flushRow(cardNumber, amount, lastSequence, now, auditor));
+            });
+            jdbcTemplate.batchUpdate(FLUSH_SQL, rows);
+        });
+        journal.delete(segments);
+
+        long lastJournalSequence = entries.stream().mapToLong(CardBalanceJournal.Entry::sequence).max().orElse(0);
+        Long lastFlushedSequence = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(balance_sequence), 0) FROM cards", Long.class);
+        sequence.set(Math.max(lastJournalSequence, lastFlushedSequence));
+        journal.rotate();
+
+        if (!rows.isEmpty())
+            log.info("Recovered unflushed spends of {} cards from the card balance journal", rows.size());
+    }
+
+    /**
+     * Spends the amount from the in-memory balance of the card, loading it first if needed.
+     * The spend is journaled before returning.
+     *
+     * @throws ResourceNotFoundException  if the card doesn't exist
+     * @throws InsufficientFundsException if the available amount of the card is lower than the amount
+     */
+    public void spend(String cardNumber, long amount) {
+        ReentrantLock lock = stripeOf(cardNumber);
+        lock.lock();
+        try {
+            Balance balance = balances.get(cardNumber);
+            if (balance == null) {
+                // Loaded under the lock: no spend or eviction of the card can interleave
+                balance = load(cardNumber);
+                balances.put(cardNumber, balance);
+            }
+
+            if (amount > balance.availableAmount)
+                throw new InsufficientFundsException("Insufficient funds in card with card number "
+                        + cardNumber);
+
+            long spendSequence = sequence.incrementAndGet();
+            // Marked before journaling, so that a flush rotating the journal meanwhile still picks it up
+            dirtyCards.add(cardNumber);
+            try {
+                journal.append(spendSequence, cardNumber, amount);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to journal spend of card " + cardNumber, e);
+            }
+
+            balance.availableAmount = Money.subtract(balance.availableAmount, amount);
+            balance.amountUsed = Money.add(balance.amountUsed, amount);
+            balance.unflushedAmount = Money.add(balance.unflushedAmount, amount);
+            balance.lastSequence = spendSequence;
+            balance.lastSpentAt = System.nanoTime();
+            if (spendHistory.isPresent())
+                spendHistory.get().record(cardNumber, amount, balance.availableAmount);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Overwrites the balances of the card with the in-memory ones, which may not be flushed yet
+    public void refresh(Card card) {
+        ReentrantLock lock = stripeOf(card.getCardNumber());
+        lock.lock();
+        try {
+            Balance balance = balances.get(card.getCardNumber());
+            if (balance != null) {
+                card.setAvailableAmount(balance.availableAmount);
+                card.setAmountUsed(balance.amountUsed);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Flushes the unflushed spends of the card and drops its in-memory balance, so that
+     * the card row is up to date and the next spend reloads it.
+     */
+    public void evict(String cardNumber) {
+        evictDuring(cardNumber, () -> null);
+    }
+
+    /**
+     * Evicts the card (see {@link #evict(String)}), then runs the write of its row, all under the lock of
+     * the card: spends of the card wait for the write, and then load the row it left (or fail if it
+     * deleted it). The write must be committed when it returns.
+     */
+    public synchronized <T> T evictDuring(String cardNumber, Supplier<T> write) {
+        ReentrantLock lock = stripeOf(cardNumber);
+        lock.lock();
+        try {
+            flushAndRemove(cardNumber);
+            return write.get();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Called with the lock of the card held
+    private void flushAndRemove(String cardNumber) {
+        Balance balance = balances.remove(cardNumber);
+        if (balance == null || balance.unflushedAmount == 0)
+            return;
+        try {
+            jdbcTemplate.update(FLUSH_SQL, flushRow(cardNumber, balance.unflushedAmount,
+                    balance.lastSequence, LocalDateTime.now(), auditorAware.getCurrentAuditor().orElse(null)));
+        } catch (RuntimeException e) {
+            balances.put(cardNumber, balance);
+            dirtyCards.add(cardNumber);
+            throw e;
+        }
+    }
+
+    // Writes the amounts spent since the last flush to the cards table, in a single batch
+    @Scheduled(fixedDelayString = "${card-balance-engine.flush-interval:1000}")
+    public synchronized void flush() {
+        // Every spend journaled in the closed segments has marked its card dirty before this point
+        List<Path> closedSegments;
+        try {
+            closedSegments = journal.rotate();
+        } catch (IOException e) {
+            log.warn("Failed to rotate the card balance journal", e);
+            return;
+        }
+
+        Map<String, Long> flushedAmounts = new LinkedHashMap<>();
+        List<Object[]> rows = new ArrayList<>();
+        LocalDateTime now = LocalDateTime.now();
+        String auditor = auditorAware.getCurrentAuditor().orElse(null);
+        for (String cardNumber : dirtyCards) {
+            dirtyCards.remove(cardNumber);
+            ReentrantLock lock = stripeOf(cardNumber);
+            lock.lock();
+            try {
+                Balance balance = balances.get(cardNumber);
+                if (balance == null || balance.unflushedAmount == 0)
+                    continue;
+                flushedAmounts.put(cardNumber, balance.unflushedAmount);
+                rows.add(flushRow(cardNumber, balance.unflushedAmount, balance.lastSequence, now, auditor));
+                balance.unflushedAmount = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        try {
+            if (!rows.isEmpty())
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(FLUSH_SQL, rows));
+        } catch (RuntimeException e) {
+            // Retried on the next flush. The journal segments are kept until then
+            flushedAmounts.forEach(this::restoreUnflushed);
+            log.warn("Failed to flush the spends of {} cards", rows.size(), e);
+            return;
+        }
+
+        try {
+            journal.delete(closedSegments);
+        } catch (IOException e) {
+            log.warn("Failed to delete flushed card balance journal segments", e);
+        }
+        evictIdle();
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        flush();
+        journal.close();
+    }
+
+    private Balance load(String cardNumber) {
+        Card card = cardRepository.findByCardNumber(cardNumber)
+                .orElseThrow(() -> new ResourceNotFoundException("Card", "cardNumber", cardNumber));
+
+        Balance balance = new Balance();
+        balance.availableAmount = card.getAvailableAmount();
+        balance.amountUsed = card.getAmountUsed();
+        balance.lastSequence = card.getBalanceSequence() == null ? 0 : card.getBalanceSequence();
+        balance.lastSpentAt = System.nanoTime();
+        return balance;
+    }
+
+    // Only called by flush(), which excludes evictions, so the balance is still in memory
+    private void restoreUnflushed(String cardNumber, long amount) {
+        ReentrantLock lock = stripeOf(cardNumber);
+        lock.lock();
+        try {
+            Balance balance = balances.get(cardNumber);
+            balance.unflushedAmount = Money.add(balance.unflushedAmount, amount);
+            dirtyCards.add(cardNumber);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Drops the balances of the cards not spent from for a while, once flushed
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (String cardNumber : balances.keySet()) {
+            ReentrantLock lock = stripeOf(cardNumber);
+            lock.lock();
+            try {
+                Balance balance = balances.get(cardNumber);
+                if (balance != null && balance.unflushedAmount == 0 && now - balance.lastSpentAt > idleTimeoutNanos)
+                    balances.remove(cardNumber);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private ReentrantLock stripeOf(String cardNumber) {
+        return stripes[Math.floorMod(cardNumber.hashCode(), stripes.length)];
+    }
+
+    private static Object[] flushRow(String cardNumber, long amount, long lastSequence,
+                                     LocalDateTime updatedAt, String updatedBy) {
+        return new Object[] { amount, amount, lastSequence, updatedAt, updatedBy, cardNumber };
+    }
+
+}
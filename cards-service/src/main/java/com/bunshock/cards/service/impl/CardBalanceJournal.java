@@ -0,0 +1,190 @@
+package com.bunshock.cards.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of the spends authorized by the {@link CardBalanceEngine}, split in segment files.
+ * <p>
+ * Each record holds the sequence number, card number and amount of a spend, followed by a CRC32
+ * checksum, so that a record torn by a crash is detected (and ignored) when reading the journal back.
+ * Segments are rotated by the engine on every flush, so that a segment whose spends have all been
+ * flushed to the cards table can be deleted as a whole.
+ * <p>
+ * Appends don't exclude each other: each one reserves the next record slot of the segment with an
+ * atomic add and writes the record at that position, so that spends of cards in different lock stripes
+ * of the engine journal in parallel. Only rotating or closing the segment waits for the appends in
+ * progress. A crash may then leave a slot unwritten before records that were, so reading the journal
+ * back skips invalid records instead of stopping at the first one.
+ */
+public class CardBalanceJournal implements Closeable {
+
+    // Amount in minor units
+    public record Entry(long sequence, String cardNumber, long amount) {}
+
+    private static final int CARD_NUMBER_LENGTH = 10;
+    static final int RECORD_SIZE = Long.BYTES + CARD_NUMBER_LENGTH + Long.BYTES + Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path directory;
+    private final boolean syncOnWrite;
+    // Shared by appends, exclusive for replacing the segment
+    private final ReadWriteLock segmentLock = new ReentrantReadWriteLock();
+    private final AtomicLong writePosition = new AtomicLong();
+
+    private FileChannel segment;
+    private Path segmentPath;
+
+    /**
+     * @param directory   directory of the segment files, created if missing
+     * @param syncOnWrite whether every append is forced to the storage device. Otherwise appends
+     *                    survive a crash of the process, but not of the operating system
+     */
+    public CardBalanceJournal(Path directory, boolean syncOnWrite) throws IOException {
+        this.directory = Files.createDirectories(directory);
+        this.syncOnWrite = syncOnWrite;
+    }
+
+    public void append(long sequence, String cardNumber, long amount) throws IOException {
+        if (cardNumber.length() != CARD_NUMBER_LENGTH)
+            throw new IllegalArgumentException("Card number must be exactly 10 digits");
+
+        ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+        record.putLong(sequence)
+                .put(cardNumber.getBytes(StandardCharsets.US_ASCII))
+                .putLong(amount);
+        CRC32 checksum = new CRC32();
+        checksum.update(record.array(), 0, RECORD_SIZE - Integer.BYTES);
+        record.putInt((int) checksum.getValue());
+        record.flip();
+
+        segmentLock.readLock().lock();
+        try {
+            if (segment == null)
+                throw new IllegalStateException("No open journal segment");
+            // Positional writes of a channel may run concurrently
+            long position = writePosition.getAndAdd(RECORD_SIZE);
+            while (record.hasRemaining())
+                position += segment.write(record, position);
+            if (syncOnWrite)
+                segment.force(false);
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Closes the current segment (if any) and starts a new one.
+     *
+     * @return every segment before the new one, oldest first
+     */
+    public List<Path> rotate() throws IOException {
+        segmentLock.writeLock().lock();
+        try {
+            List<Path> closedSegments = new ArrayList<>(segments());
+            long lastNumber = closedSegments.isEmpty() ? 0 : segmentNumber(closedSegments.getLast());
+            if (segmentPath != null)
+                lastNumber = Math.max(lastNumber, segmentNumber(segmentPath));
+
+            // The new segment is opened first, so that the journal stays writable if that fails
+            Path newSegmentPath = directory.resolve(
+                    String.format("%s%020d%s", SEGMENT_PREFIX, lastNumber + 1, SEGMENT_SUFFIX));
+            FileChannel newSegment = FileChannel.open(newSegmentPath, StandardOpenOption.CREATE_NEW,
+                    StandardOpenOption.WRITE);
+            if (segment != null) {
+                segment.close();
+                closedSegments.add(segmentPath);
+            }
+            segment = newSegment;
+            segmentPath = newSegmentPath;
+            writePosition.set(0);
+            return closedSegments;
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    // Every segment except the open one, oldest first
+    public List<Path> segments() throws IOException {
+        segmentLock.readLock().lock();
+        try (Stream<Path> files = Files.list(directory)) {
+            return files
+                    .filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .filter(file -> !file.equals(segmentPath))
+                    .sorted()
+                    .toList();
+        } finally {
+            segmentLock.readLock().unlock();
+        }
+    }
+
+    // Valid entries of the given segments, in order. Torn or unwritten records are skipped
+    public List<Entry> read(List<Path> segments) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+        CRC32 crc = new CRC32();
+        byte[] cardNumber = new byte[CARD_NUMBER_LENGTH];
+
+        for (Path path : segments) {
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                while (true) {
+                    buffer.clear();
+                    while (buffer.hasRemaining() && channel.read(buffer) > 0) {
+                        // Keep reading until the record is complete or the segment ends
+                    }
+                    if (buffer.hasRemaining())
+                        break;
+
+                    crc.reset();
+                    crc.update(buffer.array(), 0, RECORD_SIZE - Integer.BYTES);
+                    buffer.flip();
+                    long sequence = buffer.getLong();
+                    buffer.get(cardNumber);
+                    long amount = buffer.getLong();
+                    if (buffer.getInt() != (int) crc.getValue())
+                        continue;
+
+                    entries.add(new Entry(sequence, new String(cardNumber, StandardCharsets.US_ASCII), amount));
+                }
+            }
+        }
+        return entries;
+    }
+
+    public void delete(List<Path> segments) throws IOException {
+        for (Path path : segments)
+            Files.deleteIfExists(path);
+    }
+
+    @Override
+    public void close() throws IOException {
+        segmentLock.writeLock().lock();
+        try {
+            if (segment != null)
+                segment.close();
+            segment = null;
+        } finally {
+            segmentLock.writeLock().unlock();
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+}
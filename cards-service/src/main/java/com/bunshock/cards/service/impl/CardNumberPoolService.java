@@ -0,0 +1,249 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.exception.IdGenerationException;
+import com.bunshock.cards.repository.ICardRepository;
+import com.bunshock.cards.repository.IIdentifierBlockRepository;
+import com.bunshock.cards.metrics.ServiceMetricsAspect;
+import com.bunshock.cards.service.IdentifierGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out card numbers from an in-memory pool of pre-reserved numbers.
+ * <p>
+ * Numbers are reserved in blocks of consecutive numbers. A block is claimed by inserting
+ * its start into the identifier_blocks table, so its primary key guarantees that no other
+ * instance can claim (and hand out) the same block. Handing out a number is then a lock-free
+ * poll from memory, with no existence check against the cards table. The pool is refilled in
+ * the background once it drops below a threshold.
+ * <p>
+ * Card numbers generated before blocks existed may fall into a claimed block. They're all put in a
+ * {@link LongBloomFilter} at startup, so that only the numbers of a block the filter can't rule out
+ * are checked against the cards table, and a block with none of them needs no check at all. Numbers
+ * created since startup can't fall into a block claimed later, as they come from claimed blocks too.
+ */
+@Service
+@Slf4j
+public class CardNumberPoolService implements IdentifierGenerator {
+
+    private static final long MIN_CARD_NUMBER = 1_000_000_000L;
+    private static final long MAX_CARD_NUMBER = 9_999_999_999L;
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
+
+    private final CardNumberGeneratorService cardNumberGenerator;
+    private final IIdentifierBlockRepository identifierBlockRepository;
+    private final ICardRepository cardRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int blockSize;
+    private final int refillThreshold;
+    private final MeterRegistry meterRegistry;
+    private final Timer generationTimer;
+    private final Timer claimSuccessTimer;
+    private final Timer claimConflictTimer;
+    private final LongBloomFilter existingNumbers;
+    private final Counter definiteMisses;
+    private final Counter possibleHits;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "card-number-pool-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public CardNumberPoolService(
+            CardNumberGeneratorService cardNumberGenerator,
+            IIdentifierBlockRepository identifierBlockRepository,
+            ICardRepository cardRepository,
+            JdbcTemplate jdbcTemplate,
+            @Value("${identifier-pool.block-size:1000}") int blockSize,
+            @Value("${identifier-pool.refill-threshold:200}") int refillThreshold,
+            @Value("${identifier-pool.bloom-filter.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${identifier-pool.bloom-filter.false-positive-probability:0.01}") double falsePositiveProbability,
+            MeterRegistry meterRegistry
+    ) {
+        this.cardNumberGenerator = cardNumberGenerator;
+        this.identifierBlockRepository = identifierBlockRepository;
+        this.cardRepository = cardRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = blockSize;
+        this.refillThreshold = refillThreshold;
+        this.meterRegistry = meterRegistry;
+        this.generationTimer = timer(CardConstants.ID_GENERATION_METRIC, ServiceMetricsAspect.OUTCOME_SUCCESS);
+        this.claimSuccessTimer = timer(CardConstants.BLOCK_CLAIM_METRIC, ServiceMetricsAspect.OUTCOME_SUCCESS);
+        this.claimConflictTimer = timer(CardConstants.BLOCK_CLAIM_METRIC, "conflict");
+
+        this.existingNumbers = new LongBloomFilter(expectedInsertions, falsePositiveProbability);
+        this.definiteMisses = probeCounter("definite-miss");
+        this.possibleHits = probeCounter("possible-hit");
+        Gauge.builder(CardConstants.BLOOM_FILTER_METRIC + ".size", existingNumbers, LongBloomFilter::bitSize)
+                .baseUnit("bits")
+                .register(meterRegistry);
+        Gauge.builder(CardConstants.BLOOM_FILTER_METRIC + ".false.positive.probability", () -> falsePositiveProbability)
+                .tag("kind", "configured")
+                .register(meterRegistry);
+        Gauge.builder(CardConstants.BLOOM_FILTER_METRIC + ".false.positive.probability", existingNumbers,
+                        LongBloomFilter::estimatedFalsePositiveProbability)
+                .tag("kind", "estimated")
+                .register(meterRegistry);
+        Gauge.builder(CardConstants.BLOOM_FILTER_METRIC + ".elements", existingNumbers,
+                        LongBloomFilter::estimatedElementCount)
+                .register(meterRegistry);
+    }
+
+    // Runs before the first refill, which is triggered once the application is ready
+    @PostConstruct
+    public void loadExistingNumbers() {
+        jdbcTemplate.query("SELECT card_number FROM cards", statement -> statement.setFetchSize(1000),
+                row -> { existingNumbers.put(Long.parseLong(row.getString(1))); });
+    }
+
+    // Returns a reserved card number that has never been handed out
+    @Override
+    public String generateId() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            String cardNumber = pool.poll();
+            while (cardNumber == null) {
+                // Pool drained faster than the background refill: reserve on the caller's thread
+                reserveBlock();
+                cardNumber = pool.poll();
+            }
+            if (available.decrementAndGet() < refillThreshold)
+                scheduleRefill();
+            // Not removed when the card is deleted (or never created): a false positive at worst
+            existingNumbers.put(Long.parseLong(cardNumber));
+            sample.stop(generationTimer);
+            return cardNumber;
+        } catch (RuntimeException e) {
+            sample.stop(timer(CardConstants.ID_GENERATION_METRIC, ServiceMetricsAspect.outcomeOf(e)));
+            throw e;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleRefill() {
+        if (!refillScheduled.compareAndSet(false, true))
+            return;
+        refillExecutor.execute(() -> {
+            try {
+                reserveBlock();
+            } catch (RuntimeException e) {
+                // Retried on the next trigger, or on the caller's thread if the pool runs dry
+                log.warn("Failed to reserve a block of card numbers", e);
+            } finally {
+                refillScheduled.set(false);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    /**
+     * Claims a random block of card numbers not claimed by any instance before,
+     * and adds its numbers to the pool in random order.
+     *
+     * @throws IdGenerationException if no free block is found after the specified number of attempts
+     */
+    private synchronized void reserveBlock() {
+        // Another thread may have refilled the pool while this one was waiting
+        if (!pool.isEmpty() && available.get() >= refillThreshold)
+            return;
+
+        for (int attempt = 1; attempt <= MAX_CLAIM_ATTEMPTS; attempt++) {
+            // The existing random generator picks which block to claim
+            long offset = Long.parseLong(cardNumberGenerator.generateId()) - MIN_CARD_NUMBER;
+            long blockStart = MIN_CARD_NUMBER + offset - offset % blockSize;
+            long blockEnd = Math.min(blockStart + blockSize - 1, MAX_CARD_NUMBER);
+
+            Timer.Sample claim = Timer.start(meterRegistry);
+            try {
+                identifierBlockRepository.claimBlock(blockStart, blockEnd);
+            } catch (DataIntegrityViolationException e) {
+                // Block already claimed (by this or another instance)
+                claim.stop(claimConflictTimer);
+                continue;
+            }
+            claim.stop(claimSuccessTimer);
+
+            fillPool(blockStart, blockEnd);
+            return;
+        }
+        throw new IdGenerationException("Failed to reserve a block of unique card" +
+                " numbers after " + MAX_CLAIM_ATTEMPTS + " attempts");
+    }
+
+    private void fillPool(long blockStart, long blockEnd) {
+        // Only the numbers the filter can't rule out may have been generated before blocks existed
+        List<String> possiblyTaken = new ArrayList<>();
+        for (long number = blockStart; number <= blockEnd; number++) {
+            if (existingNumbers.mightContain(number))
+                possiblyTaken.add(formatCardNumber(number));
+        }
+        possibleHits.increment(possiblyTaken.size());
+        definiteMisses.increment(blockEnd - blockStart + 1 - possiblyTaken.size());
+        Set<String> taken = possiblyTaken.isEmpty()
+                ? Set.of()
+                : new HashSet<>(cardRepository.findExistingCardNumbers(possiblyTaken));
+
+        List<String> cardNumbers = new ArrayList<>((int) (blockEnd - blockStart + 1));
+        for (long number = blockStart; number <= blockEnd; number++) {
+            String cardNumber = formatCardNumber(number);
+            if (!taken.contains(cardNumber))
+                cardNumbers.add(cardNumber);
+        }
+        // Don't hand out consecutive (guessable) numbers
+        Collections.shuffle(cardNumbers, secureRandom);
+
+        pool.addAll(cardNumbers);
+        available.addAndGet(cardNumbers.size());
+    }
+
+    private Counter probeCounter(String result) {
+        return Counter.builder(CardConstants.BLOOM_FILTER_METRIC + ".probes")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Timer timer(String name, String outcome) {
+        return Timer.builder(name)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String formatCardNumber(long number) {
+        return String.format("%010d", number);
+    }
+
+}
@@ -1,113 +1,226 @@
 package com.bunshock.cards.service.impl;
 
 import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.dto.CursorPageDTO;
 import com.bunshock.cards.dto.card.CardCreateDTO;
 import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.dto.card.CardSpendShowDTO;
 import com.bunshock.cards.dto.card.CardUpdateDTO;
 import com.bunshock.cards.entity.Card;
 import com.bunshock.cards.enums.CardType;
-import com.bunshock.cards.exception.IdGenerationException;
 import com.bunshock.cards.exception.InsufficientFundsException;
 import com.bunshock.cards.exception.ResourceNotFoundException;
 import com.bunshock.cards.mapper.CardMapper;
 import com.bunshock.cards.repository.ICardRepository;
 import com.bunshock.cards.service.ICardService;
+import jakarta.persistence.EntityManager;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 @Service
 @AllArgsConstructor
 public class CardService implements ICardService {
 
     private final ICardRepository cardRepository;
-    private final CardNumberGeneratorService cardNumberGenerator;
-
-    /**
-     * Generates a unique card number by attempting a number of times to produce
-     * a new card number that doesn't exist in the repository.
-     *
-     * @return a unique card number as a String
-     * @throws IdGenerationException if unable to generate a unique card number
-     *         after the specified number of attempts
-     */
-    private String generateUniqueCardNumber() {
-        int maxAttempts = 10;
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            String newCardNumber = cardNumberGenerator.generateId();
-            if (!cardRepository.existsByCardNumber(newCardNumber)) {
-                return newCardNumber;
-            }
-        }
-        throw new IdGenerationException("Failed to generate a unique card" +
-                " number after " + maxAttempts + " attempts");
-    }
-
+    private final CardNumberPoolService cardNumberPool;
+    private final EntityManager entityManager;
+    private final AuditorAware<String> auditorAware;
+    private final Optional<CardBalanceEngine> balanceEngine;
+    private final Optional<CardSpendBatcher> spendBatcher;
+    private final CardSpendIdempotencyService spendIdempotency;
+    private final Optional<CardSpendHistory> spendHistory;
+    private final Optional<CardSpendRateLimiter> spendRateLimiter;
+    private final TransactionTemplate transactionTemplate;
 
     @Override
     public void createCard(CardCreateDTO cardInput) {
         Card card = Card.builder()
                 .mobileNumber(cardInput.getMobileNumber())
-                .cardNumber(generateUniqueCardNumber())
+                .cardNumber(cardNumberPool.generateId())
                 .cardType(CardType.valueOf(cardInput.getCardType()))
                 .cardLimit(CardConstants.NEW_CARD_LIMIT)
-                .amountUsed(0.0)
+                .amountUsed(0L)
                 .availableAmount(CardConstants.NEW_CARD_LIMIT)
                 .build();
         cardRepository.save(card);
+        // Spends of the number before it existed may have left a bucket with the unknown card limits
+        spendRateLimiter.ifPresent(limiter -> limiter.evict(card.getCardNumber()));
     }
 
     @Override
-    public List<CardShowDTO> fetchAllCards() {
-        return cardRepository.findAll().stream()
+    public CursorPageDTO<CardShowDTO> fetchAllCards(Long after, int limit) {
+        // Fetch one extra row to know whether there is a next page
+        List<Card> cards = cardRepository.findByCardIdGreaterThanOrderByCardIdAsc(
+                after == null ? 0L : after, Limit.of(limit + 1));
+
+        List<CardShowDTO> page = cards.stream()
+                .limit(limit)
                 .map(CardMapper::mapToCardShowDTO)
                 .toList();
+        String nextCursor = cards.size() > limit
+                ? String.valueOf(cards.get(limit - 1).getCardId())
+                : null;
+
+        return new CursorPageDTO<>(page, nextCursor);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public void exportAllCards(Consumer<CardShowDTO> consumer) {
+        try (Stream<Card> cards = cardRepository.streamAllByOrderByCardId()) {
+            Iterator<Card> iterator = cards.iterator();
+            int exported = 0;
+            while (iterator.hasNext()) {
+                consumer.accept(CardMapper.mapToCardShowDTO(iterator.next()));
+                // Detach exported cards so the persistence context doesn't grow with the table
+                if (++exported % CardConstants.EXPORT_CLEAR_INTERVAL == 0)
+                    entityManager.clear();
+            }
+        }
     }
 
     @Override
     public CardShowDTO fetchCard(String cardNumber) {
         Card card = cardRepository.findByCardNumber(cardNumber)
                 .orElseThrow(() -> new ResourceNotFoundException("Card", "cardNumber", cardNumber));
+        // Balances held by the engine are ahead of the table until they're flushed
+        balanceEngine.ifPresent(engine -> engine.refresh(card));
         return CardMapper.mapToCardShowDTO(card);
     }
 
     @Override
-    public CardShowDTO updateCard(String cardNumber, CardUpdateDTO updatedCard) {
-        Card card = cardRepository.findByCardNumber(cardNumber)
-                .orElseThrow(() -> new ResourceNotFoundException("Card", "cardNumber", cardNumber));
+    public List<CardShowDTO> fetchCardsByMobileNumber(String mobileNumber) {
+        return cardRepository.findByMobileNumberOrderByCardIdAsc(mobileNumber).stream()
+                .map(card -> {
+                    balanceEngine.ifPresent(engine -> engine.refresh(card));
+                    return CardMapper.mapToCardShowDTO(card);
+                })
+                .toList();
+    }
 
-        if (updatedCard.getMobileNumber() != null)
-            card.setMobileNumber(updatedCard.getMobileNumber());
+    @Override
+    public CardShowDTO updateCard(String cardNumber, CardUpdateDTO updatedCard) {
+        // The bulk update bypasses auditing, so it sets the audit columns itself
+        int updated = writeCard(cardNumber, () -> cardRepository.updateDetails(cardNumber,
+                updatedCard.getMobileNumber(),
+                updatedCard.getCardType() == null ? null : CardType.valueOf(updatedCard.getCardType()),
+                updatedCard.getCardLimit(), LocalDateTime.now(), auditorAware.getCurrentAuditor().orElse(null)));
+        if (updated == 0)
+            throw new ResourceNotFoundException("Card", "cardNumber", cardNumber);
+        // The rate limit of the card depends on its type
         if (updatedCard.getCardType() != null)
-            card.setCardType(CardType.valueOf(updatedCard.getCardType()));
-        if (updatedCard.getCardLimit() != null) {
-            card.setCardLimit(updatedCard.getCardLimit());
-            card.setAvailableAmount(updatedCard.getCardLimit() - card.getAmountUsed());
-        }
+            spendRateLimiter.ifPresent(limiter -> limiter.evict(cardNumber));
 
-        return CardMapper.mapToCardShowDTO(cardRepository.save(card));
+        return fetchCard(cardNumber);
     }
 
     @Override
     public void deleteCard(String cardNumber) {
-        Card card = cardRepository.findByCardNumber(cardNumber)
-                .orElseThrow(() -> new ResourceNotFoundException("Card", "cardNumber", cardNumber));
-        cardRepository.delete(card);
+        writeCard(cardNumber, () -> {
+            Card card = cardRepository.findByCardNumber(cardNumber)
+                    .orElseThrow(() -> new ResourceNotFoundException("Card", "cardNumber", cardNumber));
+            cardRepository.delete(card);
+            return card;
+        });
+    }
+
+    // Writes of the card row go through the balance engine, if enabled: the write runs (and commits, as
+    // the repository methods are transactions of their own) while no spend of the card can be authorized
+    // against the in-memory balance it predates. Spends flushed by the engine are relative, so they
+    // compose with the write
+    private <T> T writeCard(String cardNumber, Supplier<T> write) {
+        return balanceEngine.isPresent() ? balanceEngine.get().evictDuring(cardNumber, write) : write.get();
     }
 
     @Override
-    public void spendMoney(String cardNumber, Double amount) {
-        Card card = cardRepository.findByCardNumber(cardNumber)
-                .orElseThrow(() -> new ResourceNotFoundException("Card", "cardNumber", cardNumber));
+    public void spendMoney(String cardNumber, long amount, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            spendThrottled(cardNumber, amount);
+            return;
+        }
+        // Only throttled if it's a new spend: a repeated key is answered without spending again
+        spendIdempotency.execute(idempotencyKey, cardNumber, amount, () -> spendThrottled(cardNumber, amount));
+    }
 
-        if (amount > card.getAvailableAmount())
-            throw new InsufficientFundsException("Insufficient funds in card with card number "
-                    + cardNumber);
+    // Throttled spends are rejected before touching the card
+    private void spendThrottled(String cardNumber, long amount) {
+        spendRateLimiter.ifPresent(limiter -> limiter.acquire(cardNumber));
+        spendMoney(cardNumber, amount);
+    }
 
-        card.setAvailableAmount(card.getAvailableAmount() - amount);
-        card.setAmountUsed(card.getAmountUsed() + amount);
-        cardRepository.save(card);
+    @Override
+    public void spendMoney(String cardNumber, long amount) {
+        if (balanceEngine.isPresent()) {
+            balanceEngine.get().spend(cardNumber, amount);
+            return;
+        }
+        if (spendBatcher.isPresent()) {
+            spendBatcher.get().spend(cardNumber, amount);
+            return;
+        }
+
+        // Single round trip on success, unless the spend is recorded in the history
+        int updated = spendHistory.isPresent()
+                ? spendAndRecord(cardNumber, amount)
+                : spendIfAvailable(cardNumber, amount);
+        if (updated == 1)
+            return;
+
+        // No row updated: either there is no such card or it doesn't have enough available
+        if (!cardRepository.existsByCardNumber(cardNumber))
+            throw new ResourceNotFoundException("Card", "cardNumber", cardNumber);
+        throw new InsufficientFundsException("Insufficient funds in card with card number "
+                + cardNumber);
+    }
+
+    @Override
+    public CursorPageDTO<CardSpendShowDTO> fetchSpendHistory(String cardNumber, Long after, int limit) {
+        int count = spendHistory.map(history -> history.count(cardNumber)).orElse(0);
+        if (count == 0 && (spendHistory.isEmpty() || !cardRepository.existsByCardNumber(cardNumber)))
+            throw new ResourceNotFoundException("Spend history", "cardNumber", cardNumber);
+
+        // Read one extra spend to know whether there is a next page. The cursor is the journal position
+        // of the last spend of the page, which stays valid when the oldest spends are dropped
+        List<CardSpendHistoryJournal.Entry> entries = spendHistory.get().read(cardNumber,
+                after == null ? 0L : after, limit + 1);
+        List<CardSpendShowDTO> page = entries.stream()
+                .limit(limit)
+                .map(CardMapper::mapToCardSpendShowDTO)
+                .toList();
+        String nextCursor = entries.size() > limit
+                ? String.valueOf(entries.get(limit - 1).position())
+                : null;
+
+        return new CursorPageDTO<>(page, nextCursor);
+    }
+
+    // The bulk update bypasses auditing, so it sets the audit columns itself
+    private int spendIfAvailable(String cardNumber, long amount) {
+        return cardRepository.spendIfAvailable(cardNumber, amount, LocalDateTime.now(),
+                auditorAware.getCurrentAuditor().orElse(null));
+    }
+
+    // The available amount is read in the transaction of the spend, which locks the card row until
+    // commit: it's the amount right after this spend. It's recorded once the spend is committed
+    private int spendAndRecord(String cardNumber, long amount) {
+        return transactionTemplate.execute(status -> {
+            int updated = spendIfAvailable(cardNumber, amount);
+            if (updated == 1)
+                spendHistory.get().recordAfterCommit(cardNumber, amount, cardRepository.findAvailableAmount(cardNumber));
+            return updated;
+        });
     }
 
 }
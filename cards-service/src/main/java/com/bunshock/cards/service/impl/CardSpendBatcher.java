@@ -0,0 +1,273 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.exception.InsufficientFundsException;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Optional group commit of card spends, enabled by {@code card-spend-batching.enabled}.
+ * <p>
+ * Spends are queued and applied by a single worker thread in micro-batches: every spend of a batch
+ * runs the same guarded UPDATE as the unbatched path, sent as one JDBC batch and committed in a
+ * single transaction. Callers wait until the batch of their spend is committed, for at most
+ * {@code card-spend-batching.result-timeout}. Since the batch statements run in queue order, spends on
+ * a card are applied in the order they were queued.
+ */
+@Service
+@ConditionalOnProperty(name = "card-spend-batching.enabled", havingValue = "true")
+@Slf4j
+public class CardSpendBatcher {
+
+    private static final String SPEND_SQL = "UPDATE cards SET available_amount = available_amount - ?," +
+            " amount_used = amount_used + ?, updated_at = ?, updated_by = ?" +
+            " WHERE card_number = ? AND available_amount >= ?";
+
+    private record PendingSpend(String cardNumber, long amount, CompletableFuture<Void> result) {}
+
+    private final ICardRepository cardRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditorAware<String> auditorAware;
+    private final Optional<CardSpendHistory> spendHistory;
+    private final int batchSize;
+    private final long maxLingerNanos;
+    private final Duration resultTimeout;
+    private final DistributionSummary batchSizes;
+
+    private final BlockingQueue<PendingSpend> queue;
+    private final Thread worker;
+
+    public CardSpendBatcher(
+            ICardRepository cardRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            AuditorAware<String> auditorAware,
+            Optional<CardSpendHistory> spendHistory,
+            MeterRegistry meterRegistry,
+            @Value("${card-spend-batching.batch-size:128}") int batchSize,
+            @Value("${card-spend-batching.max-linger:1ms}") Duration maxLinger,
+            @Value("${card-spend-batching.queue-capacity:10000}") int queueCapacity,
+            @Value("${card-spend-batching.result-timeout:30s}") Duration resultTimeout
+    ) {
+        this.cardRepository = cardRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.auditorAware = auditorAware;
+        this.spendHistory = spendHistory;
+        this.batchSize = batchSize;
+        this.maxLingerNanos = maxLinger.toNanos();
+        this.resultTimeout = resultTimeout;
+        this.batchSizes = DistributionSummary.builder(CardConstants.SPEND_BATCH_METRIC)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        this.queue = new LinkedBlockingQueue<>(queueCapacity);
+        this.worker = Thread.ofPlatform().name("card-spend-batcher").daemon().start(this::processBatches);
+    }
+
+    /**
+     * Queues the spend and waits until its batch is committed. Blocks while the queue is full.
+     *
+     * @throws ResourceNotFoundException  if the card doesn't exist
+     * @throws InsufficientFundsException if the available amount of the card is lower than the amount
+     * @throws IllegalStateException      if the batch of the spend isn't committed within the timeout,
+     *                                    in which case the spend may still be applied afterwards
+     */
+    public void spend(String cardNumber, long amount) {
+        PendingSpend spend = new PendingSpend(cardNumber, amount, new CompletableFuture<>());
+        try {
+            queue.put(spend);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while queuing spend of card " + cardNumber, e);
+        }
+
+        try {
+            spend.result().get(resultTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw new IllegalStateException("Failed to apply spend of card " + cardNumber, e.getCause());
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Timed out waiting for spend of card " + cardNumber
+                    + " to be applied", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for spend of card " + cardNumber, e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        worker.interrupt();
+        worker.join();
+    }
+
+    private void processBatches() {
+        List<PendingSpend> batch = new ArrayList<>(batchSize);
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                batch.add(queue.take());
+                queue.drainTo(batch, batchSize - batch.size());
+
+                // Wait a little for more spends, unless the batch is already full
+                long deadline = System.nanoTime() + maxLingerNanos;
+                while (batch.size() < batchSize && maxLingerNanos > 0) {
+                    PendingSpend next = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                    queue.drainTo(batch, batchSize - batch.size());
+                }
+
+                applySafely(batch);
+                batch.clear();
+            }
+        } catch (InterruptedException e) {
+            // Shutting down: the spends already queued are still applied below
+        }
+
+        queue.drainTo(batch);
+        for (int from = 0; from < batch.size(); from += batchSize)
+            applySafely(batch.subList(from, Math.min(from + batchSize, batch.size())));
+    }
+
+    // The worker must survive anything thrown while applying a batch, and no caller may be left waiting
+    private void applySafely(List<PendingSpend> batch) {
+        try {
+            apply(batch);
+        } catch (Throwable e) {
+            log.error("Failed to complete a batch of {} card spends", batch.size(), e);
+            batch.forEach(spend -> spend.result().completeExceptionally(e));
+        }
+    }
+
+    private void apply(List<PendingSpend> batch) {
+        batchSizes.record(batch.size());
+        LocalDateTime now = LocalDateTime.now();
+        String auditor = auditorAware.getCurrentAuditor().orElse(null);
+
+        List<Object[]> rows = new ArrayList<>(batch.size());
+        for (PendingSpend spend : batch)
+            rows.add(new Object[] { spend.amount(), spend.amount(), now, auditor, spend.cardNumber(), spend.amount() });
+
+        int[] updateCounts;
+        Map<String, Long> availableAmounts = new HashMap<>();
+        try {
+            updateCounts = transactionTemplate.execute(status -> {
+                int[] counts = jdbcTemplate.batchUpdate(SPEND_SQL, rows);
+                if (spendHistory.isPresent())
+                    availableAmounts.putAll(availableAmountsOf(batch, counts));
+                return counts;
+            });
+        } catch (RuntimeException e) {
+            log.warn("Failed to apply a batch of {} card spends", batch.size(), e);
+            batch.forEach(spend -> spend.result().completeExceptionally(e));
+            return;
+        }
+
+        // Committed: complete every caller. Relies on the driver reporting the count of
+        // each statement of the batch (H2 does), as a statement updating no row is a rejected spend
+        Set<String> rejectedCardNumbers = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (updateCounts[i] != 0)
+                batch.get(i).result().complete(null);
+            else
+                rejectedCardNumbers.add(batch.get(i).cardNumber());
+        }
+        if (!rejectedCardNumbers.isEmpty())
+            reject(batch, updateCounts, rejectedCardNumbers);
+        if (spendHistory.isPresent())
+            recordHistory(batch, updateCounts, availableAmounts);
+    }
+
+    // Available amounts of the cards spent from, read after the batch within its transaction
+    private Map<String, Long> availableAmountsOf(List<PendingSpend> batch, int[] updateCounts) {
+        Set<String> cardNumbers = new HashSet<>();
+        for (int i = 0; i < batch.size(); i++) {
+            if (updateCounts[i] != 0)
+                cardNumbers.add(batch.get(i).cardNumber());
+        }
+        if (cardNumbers.isEmpty())
+            return Map.of();
+
+        Map<String, Long> availableAmounts = new HashMap<>();
+        String placeholders = String.join(",", Collections.nCopies(cardNumbers.size(), "?"));
+        jdbcTemplate.query("SELECT card_number, available_amount FROM cards WHERE card_number IN (" + placeholders + ")",
+                row -> { availableAmounts.put(row.getString(1), row.getLong(2)); }, cardNumbers.toArray());
+        return availableAmounts;
+    }
+
+    // Spends of a card apply in batch order, so the amount available after each one is found by
+    // adding back, from the end of the batch, the spends applied after it
+    private void recordHistory(List<PendingSpend> batch, int[] updateCounts, Map<String, Long> availableAmounts) {
+        long[] availableAfter = new long[batch.size()];
+        Map<String, Long> running = new HashMap<>(availableAmounts);
+        for (int i = batch.size() - 1; i >= 0; i--) {
+            PendingSpend spend = batch.get(i);
+            if (updateCounts[i] == 0)
+                continue;
+            long available = running.get(spend.cardNumber());
+            availableAfter[i] = available;
+            running.put(spend.cardNumber(), Money.add(available, spend.amount()));
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            if (updateCounts[i] != 0)
+                spendHistory.get().record(batch.get(i).cardNumber(), batch.get(i).amount(), availableAfter[i]);
+        }
+    }
+
+    // Completes the spends that updated no row with the reason why: either there is no such card or it
+    // doesn't have enough available. Cards are looked up with a single query for the whole batch
+    private void reject(List<PendingSpend> batch, int[] updateCounts, Set<String> rejectedCardNumbers) {
+        Set<String> existingCardNumbers;
+        try {
+            existingCardNumbers = new HashSet<>(cardRepository.findExistingCardNumbers(rejectedCardNumbers));
+        } catch (RuntimeException e) {
+            for (int i = 0; i < batch.size(); i++) {
+                if (updateCounts[i] == 0)
+                    batch.get(i).result().completeExceptionally(e);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            if (updateCounts[i] != 0)
+                continue;
+            String cardNumber = batch.get(i).cardNumber();
+            batch.get(i).result().completeExceptionally(existingCardNumbers.contains(cardNumber)
+                    ? new InsufficientFundsException("Insufficient funds in card with card number " + cardNumber)
+                    : new ResourceNotFoundException("Card", "cardNumber", cardNumber));
+        }
+    }
+
+}
@@ -0,0 +1,94 @@
+package com.bunshock.cards.service.impl;
+
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Optional history of card spends, enabled by {@code card-spend-history.enabled}, kept in a
+ * {@link CardSpendHistoryJournal} instead of the database.
+ * <p>
+ * Every spend path records its spends here once they're applied (committed, for the paths writing to the
+ * cards table), in the order they were applied to each card, except that concurrent spends of a card on
+ * the unbatched path may be recorded in their commit order. The history is best effort: failing to
+ * record a spend is logged, and never fails the spend. Only the most recent spends are retained, as
+ * bounded by the number of journal segments (see {@code card-spend-history.max-segments}).
+ */
+@Service
+@ConditionalOnProperty(name = "card-spend-history.enabled", havingValue = "true")
+@Slf4j
+public class CardSpendHistory {
+
+    // When appended records are forced to the storage device. Until then they survive a crash
+    // of the process, but not of the operating system
+    public enum SyncPolicy { EVERY_APPEND, PERIODIC, NONE }
+
+    private final CardSpendHistoryJournal journal;
+    private final SyncPolicy syncPolicy;
+
+    public CardSpendHistory(
+            @Value("${card-spend-history.journal-dir:./data/card-spend-history}") Path journalDir,
+            @Value("${card-spend-history.segment-size:64MB}") DataSize segmentSize,
+            @Value("${card-spend-history.max-segments:16}") int maxSegments,
+            @Value("${card-spend-history.sync-policy:periodic}") SyncPolicy syncPolicy
+    ) throws IOException {
+        this.journal = new CardSpendHistoryJournal(journalDir, segmentSize.toBytes(), maxSegments);
+        this.syncPolicy = syncPolicy;
+    }
+
+    // Records an applied spend, along with the available amount of the card right after it
+    public void record(String cardNumber, long amount, long availableAmount) {
+        try {
+            journal.append(cardNumber, amount, availableAmount, System.currentTimeMillis());
+            if (syncPolicy == SyncPolicy.EVERY_APPEND)
+                journal.force();
+        } catch (IOException | RuntimeException e) {
+            log.warn("Failed to record spend of card {} in the spend history", cardNumber, e);
+        }
+    }
+
+    // Records a spend once the current transaction commits, so that a rolled back spend leaves no entry
+    public void recordAfterCommit(String cardNumber, long amount, long availableAmount) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            record(cardNumber, amount, availableAmount);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                record(cardNumber, amount, availableAmount);
+            }
+        });
+    }
+
+    public int count(String cardNumber) {
+        return journal.count(cardNumber);
+    }
+
+    // Spends of the card, oldest first, after the one at the given journal position (0 for the oldest)
+    public List<CardSpendHistoryJournal.Entry> read(String cardNumber, long after, int limit) {
+        return journal.read(cardNumber, after, limit);
+    }
+
+    @Scheduled(fixedDelayString = "${card-spend-history.sync-interval:1000}")
+    public void sync() {
+        if (syncPolicy == SyncPolicy.PERIODIC)
+            journal.force();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        journal.close();
+    }
+
+}
@@ -0,0 +1,263 @@
+package com.bunshock.cards.service.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only history of card spends, written to memory-mapped segment files of a fixed size.
+ * <p>
+ * Records are fixed-size: the time, amount and resulting available amount of the spend, the card
+ * number and a CRC32 checksum, so that a record torn by a crash is detected on startup and
+ * overwritten by the next append. Appends are sequential writes to the mapped memory of the last
+ * segment; when it's full, the next segment is created. Whether and when the mapped memory is
+ * forced to the storage device is up to the caller (see {@link #force()}).
+ * <p>
+ * At most a fixed number of segments is retained: when a new segment would exceed it, the oldest
+ * segment is deleted along with its records, so that disk use, mapped memory and the index are bounded.
+ * A mapping can't be released explicitly, so the memory of a deleted segment is unmapped once its
+ * buffer is garbage collected.
+ * <p>
+ * An in-memory index holds the position of every retained record of each card, so that the history of
+ * a card is read straight from the mapped segments, without scanning them nor loading them on the heap.
+ * The index is rebuilt from the segments on startup. A position never changes nor is reused, and
+ * positions grow in append order, so reads resume after a given position, wherever the retention has
+ * moved the oldest record since.
+ */
+public class CardSpendHistoryJournal implements Closeable {
+
+    // Position of the record in the journal, amounts in minor units, time in milliseconds since the epoch
+    public record Entry(long position, String cardNumber, long amount, long availableAmount, long spentAt) {}
+
+    private static final int CARD_NUMBER_LENGTH = 10;
+    // spentAt, amount, availableAmount, card number, 2 reserved bytes (zero) and the checksum
+    private static final int RECORD_SIZE = 3 * Long.BYTES + CARD_NUMBER_LENGTH + Short.BYTES + Integer.BYTES;
+    private static final int CARD_NUMBER_OFFSET = 3 * Long.BYTES;
+    private static final int CHECKSUM_OFFSET = RECORD_SIZE - Integer.BYTES;
+    private static final String SEGMENT_PREFIX = "history-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    // Growable array of record positions in append order, each one being the segment number << 32 | offset
+    // in segment. Segment numbers start at 1, so positions are all positive
+    private static final class Positions {
+        private long[] values = new long[4];
+        private int size;
+
+        void add(long position) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = position;
+        }
+
+        // Drops the leading positions in segments before the given one
+        void dropBefore(long segmentNumber) {
+            int dropped = 0;
+            while (dropped < size && values[dropped] >>> 32 < segmentNumber)
+                dropped++;
+            if (dropped == 0)
+                return;
+            size -= dropped;
+            System.arraycopy(values, dropped, values, 0, size);
+            // Shrunk too, so that cards spending less than they used to don't keep their peak footprint
+            if (size < values.length / 4 && values.length > 4)
+                values = Arrays.copyOf(values, Math.max(4, values.length / 2));
+        }
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final NavigableMap<Long, MappedByteBuffer> segments = new TreeMap<>();
+    private final Map<String, Positions> index = new HashMap<>();
+    private final byte[] cardNumberBytes = new byte[CARD_NUMBER_LENGTH];
+    private final byte[] checksummedBytes = new byte[CHECKSUM_OFFSET];
+    private final CRC32 checksum = new CRC32();
+
+    private MappedByteBuffer segment;
+    private long segmentNumber;
+    private int writeOffset;
+
+    /**
+     * Maps the existing segments and rebuilds the index from them.
+     *
+     * @param directory   directory of the segment files, created if missing
+     * @param segmentSize size of each segment file in bytes, rounded down to a whole number of records
+     * @param maxSegments number of segments retained, the oldest ones being deleted first
+     */
+    public CardSpendHistoryJournal(Path directory, long segmentSize, int maxSegments) throws IOException {
+        if (segmentSize < RECORD_SIZE || segmentSize > Integer.MAX_VALUE)
+            throw new IllegalArgumentException("Segment size must be between " + RECORD_SIZE
+                    + " and " + Integer.MAX_VALUE + " bytes");
+        if (maxSegments < 1)
+            throw new IllegalArgumentException("At least one segment must be retained");
+        this.directory = Files.createDirectories(directory);
+        this.segmentSize = (int) (segmentSize - segmentSize % RECORD_SIZE);
+        this.maxSegments = maxSegments;
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(file -> file.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            segment = map(file, Math.max(Files.size(file), this.segmentSize), StandardOpenOption.CREATE);
+            segmentNumber = segmentNumber(file);
+            segments.put(segmentNumber, segment);
+            writeOffset = recover(segmentNumber, segment);
+        }
+        if (segment == null)
+            roll();
+        // The retention may have been lowered since the segments were written
+        retain(maxSegments);
+    }
+
+    public synchronized void append(String cardNumber, long amount, long availableAmount, long spentAt)
+            throws IOException {
+        if (cardNumber.length() != CARD_NUMBER_LENGTH)
+            throw new IllegalArgumentException("Card number must be exactly 10 digits");
+        if (writeOffset + RECORD_SIZE > segment.capacity())
+            roll();
+
+        int offset = writeOffset;
+        for (int i = 0; i < CARD_NUMBER_LENGTH; i++)
+            cardNumberBytes[i] = (byte) cardNumber.charAt(i);
+        segment.putLong(offset, spentAt)
+                .putLong(offset + Long.BYTES, amount)
+                .putLong(offset + 2 * Long.BYTES, availableAmount)
+                .put(offset + CARD_NUMBER_OFFSET, cardNumberBytes)
+                .putShort(offset + CARD_NUMBER_OFFSET + CARD_NUMBER_LENGTH, (short) 0)
+                .putInt(offset + CHECKSUM_OFFSET, checksumOf(segment, offset));
+        writeOffset += RECORD_SIZE;
+
+        index.computeIfAbsent(cardNumber, key -> new Positions())
+                .add(segmentNumber << 32 | offset);
+    }
+
+    // Number of records of the card
+    public synchronized int count(String cardNumber) {
+        Positions positions = index.get(cardNumber);
+        return positions == null ? 0 : positions.size;
+    }
+
+    /**
+     * Reads retained records of the card, oldest first.
+     *
+     * @param after position of the last record already read, or 0 to read from the oldest one
+     * @param limit maximum number of records to read
+     */
+    public synchronized List<Entry> read(String cardNumber, long after, int limit) {
+        Positions positions = index.get(cardNumber);
+        if (positions == null)
+            return List.of();
+        int found = Arrays.binarySearch(positions.values, 0, positions.size, after);
+        int from = found >= 0 ? found + 1 : -found - 1;
+        if (from >= positions.size)
+            return List.of();
+
+        int to = (int) Math.min((long) from + limit, positions.size);
+        List<Entry> entries = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            long position = positions.values[i];
+            MappedByteBuffer buffer = segments.get(position >>> 32);
+            int offset = (int) position;
+            entries.add(new Entry(position, cardNumber, buffer.getLong(offset + Long.BYTES),
+                    buffer.getLong(offset + 2 * Long.BYTES), buffer.getLong(offset)));
+        }
+        return entries;
+    }
+
+    // Forces the records appended to the open segment to the storage device
+    public synchronized void force() {
+        segment.force();
+    }
+
+    @Override
+    public synchronized void close() {
+        force();
+    }
+
+    // Indexes the valid records of a segment, returning the offset after the last one
+    private int recover(long segmentNumber, MappedByteBuffer buffer) {
+        int offset = 0;
+        while (offset + RECORD_SIZE <= buffer.capacity()) {
+            if (buffer.getLong(offset) == 0 || buffer.getInt(offset + CHECKSUM_OFFSET) != checksumOf(buffer, offset))
+                break;
+            buffer.get(offset + CARD_NUMBER_OFFSET, cardNumberBytes);
+            index.computeIfAbsent(new String(cardNumberBytes, StandardCharsets.US_ASCII), key -> new Positions())
+                    .add(segmentNumber << 32 | offset);
+            offset += RECORD_SIZE;
+        }
+        return offset;
+    }
+
+    private void roll() throws IOException {
+        // Room for the new segment first, so that no more than the retained segments are ever mapped
+        retain(maxSegments - 1);
+        Path file = segmentFile(segmentNumber + 1);
+        MappedByteBuffer next = map(file, segmentSize, StandardOpenOption.CREATE_NEW);
+        if (segment != null)
+            segment.force();
+        segment = next;
+        segmentNumber++;
+        segments.put(segmentNumber, next);
+        writeOffset = 0;
+    }
+
+    // Deletes the oldest segments beyond the given number, and drops their records from the index
+    private void retain(int retainedSegments) throws IOException {
+        if (segments.size() <= retainedSegments)
+            return;
+        while (segments.size() > retainedSegments) {
+            long oldest = segments.pollFirstEntry().getKey();
+            Files.deleteIfExists(segmentFile(oldest));
+        }
+        long firstRetained = segments.isEmpty() ? segmentNumber + 1 : segments.firstKey();
+        Iterator<Positions> positions = index.values().iterator();
+        while (positions.hasNext()) {
+            Positions card = positions.next();
+            card.dropBefore(firstRetained);
+            if (card.size == 0)
+                positions.remove();
+        }
+    }
+
+    private Path segmentFile(long number) {
+        return directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    // The mapping stays valid once the channel is closed, and grows the file to the mapped size
+    private static MappedByteBuffer map(Path file, long size, StandardOpenOption create) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, create, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private int checksumOf(MappedByteBuffer buffer, int offset) {
+        buffer.get(offset, checksummedBytes);
+        checksum.reset();
+        checksum.update(checksummedBytes);
+        return (int) checksum.getValue();
+    }
+
+}
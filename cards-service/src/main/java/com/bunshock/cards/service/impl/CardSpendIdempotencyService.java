@@ -0,0 +1,195 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.entity.SpendIdempotencyRecord;
+import com.bunshock.cards.exception.IdempotencyKeyMismatchException;
+import com.bunshock.cards.exception.IdempotentSpendInProgressException;
+import com.bunshock.cards.repository.ISpendIdempotencyRecordRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Applies a spend at most once per idempotency key, so that clients can safely retry a spend.
+ * <p>
+ * Completed spends are remembered in a bounded in-memory cache, expiring after the retention period. A
+ * repeated key is answered from the cache without touching the card, and a duplicate arriving while the
+ * first spend with its key is still running waits for that spend's outcome instead of running again.
+ * Running spends are held apart from the cache, so that its size bound can't evict them. Only completed
+ * spends are remembered: after a failure the key is free, so the spend may be retried.
+ * <p>
+ * If {@code card-spend-idempotency.table-backed} is set, keys are also claimed in the
+ * spend_idempotency_keys table before their spend runs, so that they survive restarts and are shared
+ * between instances. The claim is a PENDING row, committed on its own as the spend may be applied on
+ * another thread (by the balance engine or the spend batcher), and its primary key lets a single
+ * instance run the spend. The row is marked COMPLETED once the spend is applied, or deleted if it
+ * fails. A duplicate finding a PENDING row is rejected as still in progress, which is also the case,
+ * until the row expires, if the instance crashed before completing or releasing the key: a spend is
+ * never applied twice, but may have to be checked before retrying it with a new key.
+ */
+@Service
+@Slf4j
+public class CardSpendIdempotencyService {
+
+    private record Spend(String cardNumber, long amount, CompletableFuture<Void> result) {
+
+        boolean matches(String otherCardNumber, long otherAmount) {
+            return cardNumber.equals(otherCardNumber) && amount == otherAmount;
+        }
+
+    }
+
+    private final ISpendIdempotencyRecordRepository recordRepository;
+    private final Duration retention;
+    private final boolean tableBacked;
+    private final Cache<String, Spend> completedSpends;
+    private final Map<String, Spend> runningSpends = new ConcurrentHashMap<>();
+
+    public CardSpendIdempotencyService(
+            ISpendIdempotencyRecordRepository recordRepository,
+            MeterRegistry meterRegistry,
+            @Value("${card-spend-idempotency.maximum-keys:100000}") long maximumKeys,
+            @Value("${card-spend-idempotency.retention:24h}") Duration retention,
+            @Value("${card-spend-idempotency.table-backed:false}") boolean tableBacked
+    ) {
+        this.recordRepository = recordRepository;
+        this.retention = retention;
+        this.tableBacked = tableBacked;
+        this.completedSpends = Caffeine.newBuilder()
+                .maximumSize(maximumKeys)
+                .expireAfterWrite(retention)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, completedSpends, CardConstants.SPEND_IDEMPOTENCY_CACHE);
+    }
+
+    /**
+     * Runs the spend, unless a spend with the same idempotency key was already applied
+     * or is being applied, in which case its outcome is returned instead.
+     *
+     * @throws IdempotencyKeyMismatchException     if the key was used for a spend of another card or amount
+     * @throws IdempotentSpendInProgressException if the key is claimed by a spend still running on
+     *                                             another instance
+     */
+    public void execute(String idempotencyKey, String cardNumber, long amount, Runnable spend) {
+        Spend own = new Spend(cardNumber, amount, new CompletableFuture<>());
+        Spend running = runningSpends.putIfAbsent(idempotencyKey, own);
+        if (running != null) {
+            awaitDuplicate(idempotencyKey, running, cardNumber, amount);
+            return;
+        }
+
+        try {
+            // Checked once running, as a completed spend is cached before it stops running
+            Spend completed = completedSpends.getIfPresent(idempotencyKey);
+            if (completed != null) {
+                if (!completed.matches(cardNumber, amount))
+                    throw new IdempotencyKeyMismatchException(idempotencyKey);
+            } else {
+                if (tableBacked)
+                    runClaimed(idempotencyKey, cardNumber, amount, spend);
+                else
+                    spend.run();
+                completedSpends.put(idempotencyKey, own);
+            }
+            own.result().complete(null);
+        } catch (RuntimeException e) {
+            own.result().completeExceptionally(e);
+            throw e;
+        } finally {
+            runningSpends.remove(idempotencyKey, own);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${card-spend-idempotency.cleanup-interval:3600000}")
+    public void deleteExpiredRecords() {
+        if (!tableBacked)
+            return;
+        int deleted = recordRepository.deleteClaimedBefore(LocalDateTime.now().minus(retention));
+        if (deleted > 0)
+            log.debug("Deleted {} expired spend idempotency records", deleted);
+    }
+
+    private void awaitDuplicate(String idempotencyKey, Spend running, String cardNumber, long amount) {
+        if (!running.matches(cardNumber, amount))
+            throw new IdempotencyKeyMismatchException(idempotencyKey);
+        try {
+            running.result().join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause)
+                throw cause;
+            throw e;
+        }
+    }
+
+    private void runClaimed(String idempotencyKey, String cardNumber, long amount, Runnable spend) {
+        if (!claim(idempotencyKey, cardNumber, amount))
+            return;
+        try {
+            spend.run();
+        } catch (RuntimeException e) {
+            release(idempotencyKey);
+            throw e;
+        }
+        complete(idempotencyKey);
+    }
+
+    /**
+     * Claims the key in the table.
+     *
+     * @return false if the spend was already completed with the key (by this or another instance)
+     */
+    private boolean claim(String idempotencyKey, String cardNumber, long amount) {
+        // A second attempt in case the claim that conflicted was released in between
+        for (int attempt = 1; attempt <= 2; attempt++) {
+            try {
+                recordRepository.claimKey(idempotencyKey, cardNumber, amount);
+                return true;
+            } catch (DataIntegrityViolationException e) {
+                Optional<SpendIdempotencyRecord> record = recordRepository.findById(idempotencyKey);
+                if (record.isEmpty())
+                    continue;
+                if (!cardNumber.equals(record.get().getCardNumber()) || amount != record.get().getAmount())
+                    throw new IdempotencyKeyMismatchException(idempotencyKey);
+                if (record.get().getStatus() == SpendIdempotencyRecord.Status.COMPLETED)
+                    return false;
+                throw new IdempotentSpendInProgressException(idempotencyKey);
+            }
+        }
+        throw new IdempotentSpendInProgressException(idempotencyKey);
+    }
+
+    // The spend is applied already, so failing to record it must not fail the request. The key then
+    // stays pending, so duplicates are rejected as in progress instead of spending again
+    private void complete(String idempotencyKey) {
+        try {
+            recordRepository.completeKey(idempotencyKey);
+        } catch (RuntimeException e) {
+            log.warn("Failed to complete spend idempotency key {}", idempotencyKey, e);
+        }
+    }
+
+    // The spend failed: if the key can't be released, it stays pending until it expires
+    private void release(String idempotencyKey) {
+        try {
+            recordRepository.releaseKey(idempotencyKey);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release spend idempotency key {}", idempotencyKey, e);
+        }
+    }
+
+}
@@ -0,0 +1,144 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.enums.CardType;
+import com.bunshock.cards.exception.SpendRateLimitExceededException;
+import com.bunshock.cards.repository.ICardRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Optional per-card rate limit of spends, enabled by {@code card-spend-rate-limit.enabled}, checked
+ * before a spend touches the card. Spends answered from their idempotency key aren't new spends, so
+ * they aren't checked.
+ * <p>
+ * Each card has a token bucket allowing {@code burst} spends in a row, refilled at {@code rate} spends
+ * per second, both configured per card type. Buckets are kept in a bounded in-memory cache and dropped
+ * once their card hasn't spent for the idle timeout, long enough for them to be full again. Only the
+ * first spend of a card missing from the cache reads its type from the database. Card numbers that
+ * don't exist get a bucket too, with the {@code unknown} limits, so that spends of them neither hit the
+ * database every time nor go unthrottled; the service evicts the bucket of a card when it's created or
+ * its type changes, so its next spend reads its type again.
+ */
+@Service
+@ConditionalOnProperty(name = "card-spend-rate-limit.enabled", havingValue = "true")
+public class CardSpendRateLimiter {
+
+    private record Limit(long emissionIntervalNanos, long burstToleranceNanos) {
+
+        static Limit of(double rate, int burst) {
+            if (!(rate > 0) || burst < 1)
+                throw new IllegalArgumentException("Spend rate and burst must be positive");
+            long emissionIntervalNanos = Math.round(1_000_000_000 / rate);
+            return new Limit(emissionIntervalNanos, emissionIntervalNanos * burst);
+        }
+
+    }
+
+    // Generic cell rate algorithm: the bucket is kept as the theoretical arrival time of the next spend
+    // (an empty bucket's is the current time), so taking a token is a single compare-and-set
+    private static final class Bucket {
+
+        private final Limit limit;
+        private final Counter throttled;
+        private final AtomicLong theoreticalArrival;
+
+        Bucket(Limit limit, Counter throttled, long now) {
+            this.limit = limit;
+            this.throttled = throttled;
+            this.theoreticalArrival = new AtomicLong(now);
+        }
+
+        boolean tryAcquire(long now) {
+            while (true) {
+                long arrival = theoreticalArrival.get();
+                long next = Math.max(arrival, now) + limit.emissionIntervalNanos();
+                if (next - now > limit.burstToleranceNanos())
+                    return false;
+                if (theoreticalArrival.compareAndSet(arrival, next))
+                    return true;
+            }
+        }
+
+    }
+
+    private final ICardRepository cardRepository;
+    private final Map<CardType, Limit> limits = new EnumMap<>(CardType.class);
+    private final Map<CardType, Counter> throttledCounters = new EnumMap<>(CardType.class);
+    private final Limit unknownLimit;
+    private final Counter unknownThrottled;
+    private final Cache<String, Bucket> buckets;
+
+    public CardSpendRateLimiter(
+            ICardRepository cardRepository,
+            MeterRegistry meterRegistry,
+            @Value("${card-spend-rate-limit.credit.rate:20}") double creditRate,
+            @Value("${card-spend-rate-limit.credit.burst:40}") int creditBurst,
+            @Value("${card-spend-rate-limit.debit.rate:10}") double debitRate,
+            @Value("${card-spend-rate-limit.debit.burst:20}") int debitBurst,
+            @Value("${card-spend-rate-limit.unknown.rate:1}") double unknownRate,
+            @Value("${card-spend-rate-limit.unknown.burst:5}") int unknownBurst,
+            @Value("${card-spend-rate-limit.maximum-cards:100000}") long maximumCards,
+            @Value("${card-spend-rate-limit.idle-timeout:1m}") Duration idleTimeout
+    ) {
+        this.cardRepository = cardRepository;
+        limits.put(CardType.CREDIT, Limit.of(creditRate, creditBurst));
+        limits.put(CardType.DEBIT, Limit.of(debitRate, debitBurst));
+        this.unknownLimit = Limit.of(unknownRate, unknownBurst);
+        for (CardType cardType : CardType.values())
+            throttledCounters.put(cardType, throttledCounter(meterRegistry, cardType.name()));
+        this.unknownThrottled = throttledCounter(meterRegistry, "UNKNOWN");
+        this.buckets = Caffeine.newBuilder()
+                .maximumSize(maximumCards)
+                .expireAfterAccess(idleTimeout)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, buckets, CardConstants.SPEND_RATE_LIMIT_CACHE);
+    }
+
+    /**
+     * Takes a token from the bucket of the card.
+     *
+     * @throws SpendRateLimitExceededException if the bucket is empty
+     */
+    public void acquire(String cardNumber) {
+        long now = System.nanoTime();
+        Bucket bucket = buckets.get(cardNumber, key -> newBucket(key, now));
+        if (!bucket.tryAcquire(now)) {
+            bucket.throttled.increment();
+            throw SpendRateLimitExceededException.INSTANCE;
+        }
+    }
+
+    /**
+     * Drops the bucket of the card, for its next spend to read its type again.
+     */
+    public void evict(String cardNumber) {
+        buckets.invalidate(cardNumber);
+    }
+
+    private Bucket newBucket(String cardNumber, long now) {
+        return cardRepository.findCardTypeByCardNumber(cardNumber)
+                .map(cardType -> new Bucket(limits.get(cardType), throttledCounters.get(cardType), now))
+                .orElseGet(() -> new Bucket(unknownLimit, unknownThrottled, now));
+    }
+
+    private static Counter throttledCounter(MeterRegistry meterRegistry, String cardType) {
+        return Counter.builder(CardConstants.SPEND_THROTTLED_METRIC)
+                .description("Spends rejected by the per-card rate limit")
+                .tag("card.type", cardType)
+                .register(meterRegistry);
+    }
+
+}
@@ -0,0 +1,16 @@
+-- Converts the card balances of an existing database from DOUBLE amounts in major units
+-- to BIGINT amounts in minor units (cents), as mapped by the Card entity.
+--
+-- Run it once, with the service stopped, before starting the version using minor units.
+-- Tables created from scratch already get BIGINT columns, so they need no migration.
+-- If the in-memory balance engine is enabled, stop the previous version gracefully first:
+-- it flushes and deletes its journal on shutdown, and journals it leaves behind can't be read back.
+
+UPDATE cards
+SET card_limit       = ROUND(card_limit * 100),
+    amount_used      = ROUND(amount_used * 100),
+    available_amount = ROUND(available_amount * 100);
+
+ALTER TABLE cards ALTER COLUMN card_limit SET DATA TYPE BIGINT;
+ALTER TABLE cards ALTER COLUMN amount_used SET DATA TYPE BIGINT;
+ALTER TABLE cards ALTER COLUMN available_amount SET DATA TYPE BIGINT;
@@ -0,0 +1,48 @@
+package com.bunshock.cards.benchmark;
+
+import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.enums.CardType;
+import com.bunshock.cards.mapper.CardMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CardMapperBenchmark {
+
+	private Card card;
+
+	@Setup
+	public void setUp() {
+		card = Card.builder()
+				.cardId(1L)
+				.mobileNumber("+254712345678")
+				.cardNumber("5831960233")
+				.cardType(CardType.CREDIT)
+				.cardLimit(100_000_00L)
+				.amountUsed(2_500_00L)
+				.availableAmount(97_500_00L)
+				.build();
+	}
+
+	@Benchmark
+	public CardShowDTO mapToCardShowDTO() {
+		return CardMapper.mapToCardShowDTO(card);
+	}
+
+}
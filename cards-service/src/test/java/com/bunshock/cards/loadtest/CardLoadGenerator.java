@@ -0,0 +1,332 @@
+package com.bunshock.cards.loadtest;
+
+import com.bunshock.cards.CardsApplication;
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.money.Money;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load generator for the cards API: boots the service on a random port against its in-memory H2
+ * database, seeds cards, then drives spends, fetches and creates from concurrent clients over HTTP.
+ * <p>
+ * Reports throughput, latency percentiles and outcomes per operation, then checks that every card
+ * still has amountUsed + availableAmount == cardLimit, and that each seeded card was charged exactly
+ * the spends acknowledged to the clients. Exits with status 1 if an invariant is broken or a request
+ * failed unexpectedly, so that a run can gate changes.
+ * <p>
+ * Run with {@code mvn -P load-test verify}, see the load-test profile for the options. Arguments that
+ * aren't options of the generator (like {@code --card-spend-batching.enabled=true}) are passed to the
+ * service.
+ */
+public class CardLoadGenerator {
+
+	private enum Operation { SPEND, FETCH, CREATE }
+
+	// Insufficient funds and throttling are expected under load, anything else unexpected is an error
+	private enum Outcome { OK, INSUFFICIENT_FUNDS, THROTTLED, ERROR }
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+	private static final String SEED_MOBILE_NUMBER = "+15550000000";
+	private static final long MAX_SPEND = Money.ofMajor(10);
+
+	private record Options(int threads, Duration warmup, Duration duration, int cards, double hotCardShare,
+			int spendWeight, int fetchWeight, int createWeight, List<String> serviceArgs) {
+
+		static Options parse(String[] args) {
+			Map<String, String> values = new HashMap<>(Map.of(
+					"threads", "32", "warmup", "5", "duration", "30", "cards", "100",
+					"hot-card-share", "0.2", "mix", "80,15,5"));
+			List<String> serviceArgs = new ArrayList<>();
+			for (String arg : args) {
+				String option = arg.startsWith("--") ? arg.substring(2, Math.max(2, arg.indexOf('='))) : "";
+				if (values.containsKey(option))
+					values.put(option, arg.substring(arg.indexOf('=') + 1));
+				else if (!arg.isBlank())
+					serviceArgs.addAll(Arrays.asList(arg.trim().split("\\s+")));
+			}
+
+			int[] mix = Arrays.stream(values.get("mix").split(",")).mapToInt(Integer::parseInt).toArray();
+			if (mix.length != 3 || Arrays.stream(mix).sum() <= 0)
+				throw new IllegalArgumentException("Mix must be three weights: spend,fetch,create");
+			return new Options(Integer.parseInt(values.get("threads")),
+					Duration.ofSeconds(Long.parseLong(values.get("warmup"))),
+					Duration.ofSeconds(Long.parseLong(values.get("duration"))),
+					Integer.parseInt(values.get("cards")), Double.parseDouble(values.get("hot-card-share")),
+					mix[0], mix[1], mix[2], serviceArgs);
+		}
+
+		Operation pick(ThreadLocalRandom random) {
+			int weight = random.nextInt(spendWeight + fetchWeight + createWeight);
+			if (weight < spendWeight)
+				return Operation.SPEND;
+			return weight < spendWeight + fetchWeight ? Operation.FETCH : Operation.CREATE;
+		}
+
+	}
+
+	// Latencies and outcomes of one client, merged once the run is over
+	private static final class Stats {
+
+		private final Map<Operation, long[]> latencies = new EnumMap<>(Operation.class);
+		private final Map<Operation, Integer> sizes = new EnumMap<>(Operation.class);
+		private final Map<Operation, long[]> outcomes = new EnumMap<>(Operation.class);
+
+		Stats() {
+			for (Operation operation : Operation.values()) {
+				latencies.put(operation, new long[1024]);
+				sizes.put(operation, 0);
+				outcomes.put(operation, new long[Outcome.values().length]);
+			}
+		}
+
+		void record(Operation operation, long latencyNanos, Outcome outcome) {
+			long[] values = latencies.get(operation);
+			int size = sizes.get(operation);
+			if (size == values.length) {
+				values = Arrays.copyOf(values, size * 2);
+				latencies.put(operation, values);
+			}
+			values[size] = latencyNanos;
+			sizes.put(operation, size + 1);
+			outcomes.get(operation)[outcome.ordinal()]++;
+		}
+
+		long[] latencies(Operation operation) {
+			return Arrays.copyOf(latencies.get(operation), sizes.get(operation));
+		}
+
+	}
+
+	private final Options options;
+	private final HttpClient client = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(5))
+			.build();
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	// Spends acknowledged to the clients, per card, in minor units
+	private final Map<String, LongAdder> acknowledgedSpends = new ConcurrentHashMap<>();
+	private String baseUrl;
+
+	private CardLoadGenerator(Options options) {
+		this.options = options;
+	}
+
+	public static void main(String[] args) throws Exception {
+		Options options = Options.parse(args);
+		List<String> serviceArgs = new ArrayList<>(List.of("--server.port=0", "--spring.jpa.show-sql=false",
+				"--logging.level.root=WARN"));
+		serviceArgs.addAll(options.serviceArgs());
+		// Otherwise devtools restarts the service in another class loader
+		System.setProperty("spring.devtools.restart.enabled", "false");
+
+		int status;
+		try (ConfigurableApplicationContext context = new SpringApplicationBuilder(CardsApplication.class)
+				.run(serviceArgs.toArray(String[]::new))) {
+			int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+			status = new CardLoadGenerator(options).run("http://localhost:" + port + "/api/cards");
+		}
+		System.exit(status);
+	}
+
+	private int run(String baseUrl) throws Exception {
+		this.baseUrl = baseUrl;
+		System.out.printf("Seeding %d cards%n", options.cards());
+		for (int i = 0; i < options.cards(); i++)
+			create(SEED_MOBILE_NUMBER, i % 2 == 0 ? "CREDIT" : "DEBIT");
+		List<String> cardNumbers = fetchAll().stream().map(card -> card.get("cardNumber").asText()).toList();
+		cardNumbers.forEach(cardNumber -> acknowledgedSpends.put(cardNumber, new LongAdder()));
+
+		System.out.printf("Warming up for %ds, then running for %ds with %d clients%n",
+				options.warmup().toSeconds(), options.duration().toSeconds(), options.threads());
+		drive(cardNumbers, options.warmup());
+		long start = System.nanoTime();
+		List<Stats> stats = drive(cardNumbers, options.duration());
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		boolean failed = report(stats, seconds);
+		failed |= !checkInvariants(cardNumbers);
+		System.out.println(failed ? "Load test FAILED" : "Load test passed");
+		return failed ? 1 : 0;
+	}
+
+	private List<Stats> drive(List<String> cardNumbers, Duration duration) throws Exception {
+		long deadline = System.nanoTime() + duration.toNanos();
+		List<Future<Stats>> clients = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(options.threads())) {
+			for (int i = 0; i < options.threads(); i++) {
+				clients.add(executor.submit(() -> {
+					Stats stats = new Stats();
+					ThreadLocalRandom random = ThreadLocalRandom.current();
+					while (System.nanoTime() < deadline) {
+						Operation operation = options.pick(random);
+						long operationStart = System.nanoTime();
+						Outcome outcome = execute(operation, cardNumbers, random);
+						stats.record(operation, System.nanoTime() - operationStart, outcome);
+					}
+					return stats;
+				}));
+			}
+		}
+		List<Stats> stats = new ArrayList<>();
+		for (Future<Stats> client : clients)
+			stats.add(client.get());
+		return stats;
+	}
+
+	private Outcome execute(Operation operation, List<String> cardNumbers, ThreadLocalRandom random) {
+		// The first card is the hot one, spent from and fetched more than the others
+		String cardNumber = random.nextDouble() < options.hotCardShare()
+				? cardNumbers.getFirst()
+				: cardNumbers.get(random.nextInt(cardNumbers.size()));
+		try {
+			return switch (operation) {
+				case SPEND -> {
+					long amount = random.nextLong(1, MAX_SPEND + 1);
+					Outcome outcome = outcomeOf(send(HttpRequest.newBuilder(URI.create(baseUrl + "/spend/"
+									+ cardNumber + "?amount=" + Money.format(amount)))
+							.POST(HttpRequest.BodyPublishers.noBody())));
+					if (outcome == Outcome.OK)
+						acknowledgedSpends.get(cardNumber).add(amount);
+					yield outcome;
+				}
+				case FETCH -> outcomeOf(send(HttpRequest.newBuilder(URI.create(baseUrl + "/fetch/" + cardNumber))
+						.GET()));
+				case CREATE -> outcomeOf(create(String.format("+1555%07d", random.nextInt(10_000_000)),
+						random.nextBoolean() ? "CREDIT" : "DEBIT"));
+			};
+		} catch (IOException e) {
+			return Outcome.ERROR;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return Outcome.ERROR;
+		}
+	}
+
+	private static Outcome outcomeOf(HttpResponse<String> response) {
+		return switch (response.statusCode()) {
+			case 200, 201 -> Outcome.OK;
+			case 409 -> Outcome.INSUFFICIENT_FUNDS;
+			case 429 -> Outcome.THROTTLED;
+			default -> Outcome.ERROR;
+		};
+	}
+
+	// Prints the results of each operation, returning whether a request failed unexpectedly
+	private boolean report(List<Stats> stats, double seconds) {
+		boolean failed = false;
+		System.out.printf("%n%-7s %10s %10s %9s %9s %9s %9s %9s   %s%n", "", "requests", "req/s",
+				"p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms", "outcomes");
+		for (Operation operation : Operation.values()) {
+			long[] latencies = stats.stream().map(client -> client.latencies(operation))
+					.flatMapToLong(Arrays::stream).sorted().toArray();
+			long[] outcomes = new long[Outcome.values().length];
+			stats.forEach(client -> Arrays.setAll(outcomes, i -> outcomes[i] + client.outcomes.get(operation)[i]));
+			if (latencies.length == 0)
+				continue;
+
+			StringBuilder line = new StringBuilder(String.format("%-7s %10d %10.1f", operation,
+					latencies.length, latencies.length / seconds));
+			for (double percentile : PERCENTILES)
+				line.append(String.format(" %9.2f", percentile(latencies, percentile) / 1e6));
+			line.append(String.format(" %9.2f  ", latencies[latencies.length - 1] / 1e6));
+			for (Outcome outcome : Outcome.values()) {
+				if (outcomes[outcome.ordinal()] > 0)
+					line.append(String.format(" %s=%d", outcome, outcomes[outcome.ordinal()]));
+			}
+			System.out.println(line);
+			failed |= outcomes[Outcome.ERROR.ordinal()] > 0;
+		}
+		System.out.println();
+		return failed;
+	}
+
+	// Nearest-rank percentile of sorted values
+	private static long percentile(long[] sorted, double percentile) {
+		int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+		return sorted[Math.max(0, rank - 1)];
+	}
+
+	private boolean checkInvariants(List<String> seededCardNumbers) throws Exception {
+		List<String> violations = new ArrayList<>();
+		List<JsonNode> cards = fetchAll();
+		for (JsonNode card : cards) {
+			long cardLimit = amount(card, "cardLimit");
+			long amountUsed = amount(card, "amountUsed");
+			long availableAmount = amount(card, "availableAmount");
+			if (amountUsed + availableAmount != cardLimit || availableAmount < 0)
+				violations.add(String.format("card %s: amountUsed %s + availableAmount %s != cardLimit %s",
+						card.get("cardNumber").asText(), Money.format(amountUsed),
+						Money.format(availableAmount), Money.format(cardLimit)));
+		}
+		// Fetched one by one, which reads the balance of cards kept in memory by the balance engine
+		for (String cardNumber : seededCardNumbers) {
+			JsonNode card = data(send(HttpRequest.newBuilder(URI.create(baseUrl + "/fetch/" + cardNumber)).GET()));
+			long amountUsed = amount(card, "amountUsed");
+			long acknowledged = acknowledgedSpends.get(cardNumber).sum();
+			if (amountUsed != acknowledged)
+				violations.add(String.format("card %s: amountUsed %s != acknowledged spends %s", cardNumber,
+						Money.format(amountUsed), Money.format(acknowledged)));
+		}
+
+		System.out.printf("Checked %d cards: %d invariant violations%n", cards.size(), violations.size());
+		violations.stream().limit(10).forEach(violation -> System.out.println("  " + violation));
+		return violations.isEmpty();
+	}
+
+	private HttpResponse<String> create(String mobileNumber, String cardType) throws IOException, InterruptedException {
+		String body = objectMapper.writeValueAsString(Map.of("mobileNumber", mobileNumber, "cardType", cardType));
+		return send(HttpRequest.newBuilder(URI.create(baseUrl + "/create"))
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(body)));
+	}
+
+	private List<JsonNode> fetchAll() throws IOException, InterruptedException {
+		List<JsonNode> cards = new ArrayList<>();
+		String cursor = null;
+		do {
+			JsonNode page = objectMapper.readTree(send(HttpRequest.newBuilder(URI.create(baseUrl + "/fetch?limit="
+					+ CardConstants.MAX_PAGE_SIZE + (cursor == null ? "" : "&after=" + cursor))).GET()).body());
+			page.get("data").forEach(cards::add);
+			cursor = page.hasNonNull("nextCursor") ? page.get("nextCursor").asText() : null;
+		} while (cursor != null);
+		return cards;
+	}
+
+	private JsonNode data(HttpResponse<String> response) throws IOException {
+		if (response.statusCode() != 200)
+			throw new IOException("Unexpected status " + response.statusCode() + ": " + response.body());
+		return objectMapper.readTree(response.body()).get("data");
+	}
+
+	private HttpResponse<String> send(HttpRequest.Builder request) throws IOException, InterruptedException {
+		return client.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.ofString());
+	}
+
+	private static long amount(JsonNode card, String field) {
+		return Money.parse(card.get(field).asText());
+	}
+
+}
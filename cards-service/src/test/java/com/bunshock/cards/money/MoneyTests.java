@@ -0,0 +1,63 @@
+package com.bunshock.cards.money;
+
+import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.dto.card.CardUpdateDTO;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.exc.InvalidFormatException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class MoneyTests {
+
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	@Test
+	void parseIsExact() {
+		assertThat(Money.parse("1200.8")).isEqualTo(120080);
+		assertThat(Money.parse("0.1")).isEqualTo(10);
+		assertThat(Money.parse("0.29")).isEqualTo(29);
+		assertThat(Money.parse("15")).isEqualTo(1500);
+		assertThat(Money.parse("-3.05")).isEqualTo(-305);
+		assertThat(Money.parse("2.500")).isEqualTo(250);
+
+		assertThatThrownBy(() -> Money.parse("2.505")).isInstanceOf(NumberFormatException.class);
+		assertThatThrownBy(() -> Money.parse("1e3")).isInstanceOf(NumberFormatException.class);
+		assertThatThrownBy(() -> Money.parse("1.")).isInstanceOf(NumberFormatException.class);
+		assertThatThrownBy(() -> Money.parse("")).isInstanceOf(NumberFormatException.class);
+		assertThatThrownBy(() -> Money.parse("99999999999999999999")).isInstanceOf(NumberFormatException.class);
+	}
+
+	@Test
+	void formatAlwaysHasTwoDecimals() {
+		assertThat(Money.format(120080)).isEqualTo("1200.80");
+		assertThat(Money.format(5)).isEqualTo("0.05");
+		assertThat(Money.format(-5)).isEqualTo("-0.05");
+		assertThat(Money.format(-305)).isEqualTo("-3.05");
+	}
+
+	@Test
+	void repeatedSpendsDontDrift() {
+		long available = Money.ofMajor(1);
+		for (int i = 0; i < 10; i++)
+			available = Money.subtract(available, Money.parse("0.1"));
+		assertThat(available).isZero();
+
+		assertThatThrownBy(() -> Money.add(Long.MAX_VALUE, 1)).isInstanceOf(ArithmeticException.class);
+	}
+
+	@Test
+	void amountsAreBoundAsDecimalNumbers() throws Exception {
+		CardShowDTO card = CardShowDTO.builder().cardLimit(100_000_00L).amountUsed(1_200_80L).availableAmount(98_799_20L).build();
+		assertThat(objectMapper.writeValueAsString(card))
+				.contains("\"cardLimit\":100000.00", "\"amountUsed\":1200.80", "\"availableAmount\":98799.20");
+
+		assertThat(objectMapper.readValue("{\"cardLimit\":2500.5}", CardUpdateDTO.class).getCardLimit()).isEqualTo(2_500_50L);
+		assertThat(objectMapper.readValue("{\"cardLimit\":\"2500\"}", CardUpdateDTO.class).getCardLimit()).isEqualTo(2_500_00L);
+		assertThatThrownBy(() -> objectMapper.readValue("{\"cardLimit\":0.001}", CardUpdateDTO.class))
+				.isInstanceOf(InvalidFormatException.class);
+	}
+
+}
@@ -0,0 +1,222 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.dto.card.CardCreateDTO;
+import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.exception.InsufficientFundsException;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import com.bunshock.cards.service.ICardService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.LongStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+// Flushes are triggered by the tests themselves
+@SpringBootTest(properties = {
+		"card-balance-engine.enabled=true",
+		"card-balance-engine.flush-interval=3600000",
+		"card-balance-engine.journal-dir=" + CardBalanceEngineTests.JOURNAL_DIR
+})
+class CardBalanceEngineTests {
+
+	static final String JOURNAL_DIR = "target/card-balance-journal";
+
+	@Autowired
+	private ICardService cardService;
+
+	@Autowired
+	private CardBalanceEngine balanceEngine;
+
+	@Autowired
+	private ICardRepository cardRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private AuditorAware<String> auditorAware;
+
+	@AfterEach
+	void cleanUp() {
+		balanceEngine.flush();
+		cardRepository.findAll().forEach(card -> cardService.deleteCard(card.getCardNumber()));
+	}
+
+	@Test
+	void concurrentSpendsAreExactAndFlushedToTheTable() throws Exception {
+		String cardNumber = createCard();
+		int spends = 400;
+		long amount = Money.ofMajor(1000);
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+			for (int i = 0; i < spends; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					cardService.spendMoney(cardNumber, amount);
+					return null;
+				}));
+			}
+			start.countDown();
+		}
+
+		int succeeded = 0;
+		for (Future<?> result : results) {
+			try {
+				result.get();
+				succeeded++;
+			} catch (ExecutionException e) {
+				assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+			}
+		}
+		assertThat(succeeded).isEqualTo((int) (CardConstants.NEW_CARD_LIMIT / amount));
+
+		// Served from memory before the flush, then from the table
+		assertThat(cardService.fetchCard(cardNumber).getAvailableAmount()).isZero();
+		assertThat(cardRepository.findByCardNumber(cardNumber).orElseThrow().getAvailableAmount())
+				.isEqualTo(CardConstants.NEW_CARD_LIMIT);
+		balanceEngine.flush();
+		Card card = cardRepository.findByCardNumber(cardNumber).orElseThrow();
+		assertThat(card.getAvailableAmount()).isZero();
+		assertThat(card.getAmountUsed()).isEqualTo(CardConstants.NEW_CARD_LIMIT);
+	}
+
+	@Test
+	void unflushedSpendsAreRecoveredFromTheJournal() throws Exception {
+		String cardNumber = createCard();
+		cardService.spendMoney(cardNumber, Money.ofMajor(100));
+		cardService.spendMoney(cardNumber, Money.ofMajor(200));
+
+		// As if the process had crashed before flushing: a new engine recovers from the same journal
+		newEngine().recover();
+
+		Card card = cardRepository.findByCardNumber(cardNumber).orElseThrow();
+		assertThat(card.getAvailableAmount()).isEqualTo(CardConstants.NEW_CARD_LIMIT - Money.ofMajor(300));
+		assertThat(card.getAmountUsed()).isEqualTo(Money.ofMajor(300));
+	}
+
+	@Test
+	void recoverySkipsSpendsAlreadyFlushed() throws Exception {
+		String cardNumber = createCard();
+		// The spend with sequence number 1 was flushed, but the journal segment wasn't deleted yet
+		jdbcTemplate.update("UPDATE cards SET available_amount = available_amount - 1000," +
+				" amount_used = amount_used + 1000, balance_sequence = 1 WHERE card_number = ?", cardNumber);
+		try (CardBalanceJournal journal = new CardBalanceJournal(Path.of(JOURNAL_DIR), false)) {
+			journal.rotate();
+			journal.append(1, cardNumber, Money.ofMajor(10));
+			journal.append(2, cardNumber, Money.ofMajor(20));
+		}
+
+		newEngine().recover();
+
+		Card card = cardRepository.findByCardNumber(cardNumber).orElseThrow();
+		assertThat(card.getAmountUsed()).isEqualTo(Money.ofMajor(30));
+		assertThat(card.getBalanceSequence()).isEqualTo(2);
+	}
+
+	@Test
+	void spendsWaitForTheDeletionOfTheCard() throws Exception {
+		String cardNumber = createCard();
+		cardService.spendMoney(cardNumber, Money.ofMajor(100));
+
+		try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+			Future<?> spend = balanceEngine.evictDuring(cardNumber, () -> {
+				Future<?> concurrentSpend = executor.submit(() -> cardService.spendMoney(cardNumber, Money.ofMajor(10)));
+				try {
+					Thread.sleep(200);
+				} catch (InterruptedException e) {
+					throw new IllegalStateException(e);
+				}
+				assertThat(concurrentSpend).isNotDone();
+				cardRepository.delete(cardRepository.findByCardNumber(cardNumber).orElseThrow());
+				return concurrentSpend;
+			});
+
+			assertThatThrownBy(spend::get).hasCauseInstanceOf(ResourceNotFoundException.class);
+		}
+	}
+
+	@Test
+	void concurrentAppendsAreAllReadBack(@TempDir Path directory) throws Exception {
+		int threads = 8;
+		int appendsPerThread = 500;
+		try (CardBalanceJournal journal = new CardBalanceJournal(directory, false);
+			 ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+			journal.rotate();
+			List<Future<?>> results = new ArrayList<>();
+			for (int t = 0; t < threads; t++) {
+				long firstSequence = (long) t * appendsPerThread;
+				results.add(executor.submit(() -> {
+					for (long sequence = firstSequence; sequence < firstSequence + appendsPerThread; sequence++)
+						journal.append(sequence, "1000000000", sequence);
+					return null;
+				}));
+			}
+			for (Future<?> result : results)
+				result.get();
+
+			List<CardBalanceJournal.Entry> entries = journal.read(journal.rotate());
+			assertThat(entries).extracting(CardBalanceJournal.Entry::sequence)
+					.containsExactlyInAnyOrderElementsOf(
+							LongStream.range(0, (long) threads * appendsPerThread).boxed().toList());
+		}
+	}
+
+	@Test
+	void readingSkipsAnInvalidRecordBeforeValidOnes(@TempDir Path directory) throws Exception {
+		try (CardBalanceJournal journal = new CardBalanceJournal(directory, false)) {
+			journal.rotate();
+			journal.append(1, "1000000000", 10);
+			journal.append(2, "1000000000", 20);
+			journal.append(3, "1000000000", 30);
+			List<Path> segments = journal.rotate();
+
+			// As if the second append hadn't been written when the process crashed
+			try (FileChannel segment = FileChannel.open(segments.getFirst(), StandardOpenOption.WRITE)) {
+				segment.write(ByteBuffer.allocate(CardBalanceJournal.RECORD_SIZE), CardBalanceJournal.RECORD_SIZE);
+			}
+
+			assertThat(journal.read(segments)).extracting(CardBalanceJournal.Entry::sequence)
+					.containsExactly(1L, 3L);
+		}
+	}
+
+	private CardBalanceEngine newEngine() throws Exception {
+		return new CardBalanceEngine(cardRepository, jdbcTemplate, transactionManager, auditorAware, Optional.empty(),
+				16, Duration.ofMinutes(10), Path.of(JOURNAL_DIR), false);
+	}
+
+	private String createCard() {
+		cardService.createCard(new CardCreateDTO("+15550000001", "CREDIT"));
+		return cardRepository.findAll().getFirst().getCardNumber();
+	}
+
+}
@@ -0,0 +1,101 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.service.ICardService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// The table lives in an H2 file database, so that the large-table test measures the heap of the export
+// alone. That test runs in the load-test profile with a capped heap (see pom.xml), so it fails with an
+// OutOfMemoryError if the export ever holds every card in memory.
+@SpringBootTest(properties = {
+		"spring.datasource.url=jdbc:h2:file:./target/h2/cards-export",
+		"spring.jpa.hibernate.ddl-auto=create-drop",
+		"spring.jpa.show-sql=false"
+})
+class CardExportTests {
+
+	@Autowired
+	private ICardService cardService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void exportAllCardsStreamsEveryCardInOrder() {
+		generateCards(1_000);
+
+		assertExportsEveryCardInOrder(1_000);
+	}
+
+	@Test
+	@Tag("large-table")
+	void exportAllCardsStreamsAMillionCardsInBoundedMemory() {
+		generateCards(1_000_000);
+
+		assertExportsEveryCardInOrder(1_000_000);
+	}
+
+	private void generateCards(int count) {
+		jdbcTemplate.execute("TRUNCATE TABLE cards");
+		jdbcTemplate.update("INSERT INTO cards (mobile_number, card_number, card_type, card_limit," +
+				" amount_used, available_amount, created_at, created_by)" +
+				" SELECT '+1555' || LPAD(CAST(X AS VARCHAR), 7, '0'), CAST(1000000000 + X AS VARCHAR)," +
+				" 'DEBIT', 10000000, 0, 10000000, CURRENT_TIMESTAMP, 'CARDS_MS'" +
+				" FROM SYSTEM_RANGE(1, ?)", count);
+	}
+
+	private void assertExportsEveryCardInOrder(int count) {
+		ObjectWriter cardWriter = objectMapper.writerFor(CardShowDTO.class);
+		CountingOutputStream outputStream = new CountingOutputStream();
+		long[] exported = { 0 };
+		String[] lastCardNumber = { "" };
+
+		cardService.exportAllCards(card -> {
+			assertThat(card.getCardNumber()).isGreaterThan(lastCardNumber[0]);
+			lastCardNumber[0] = card.getCardNumber();
+			exported[0]++;
+			try {
+				outputStream.write(cardWriter.writeValueAsBytes(card));
+				outputStream.write('\n');
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		});
+
+		assertThat(exported[0]).isEqualTo(count);
+		assertThat(outputStream.lines).isEqualTo(count);
+	}
+
+	// Discards everything written to it, only counting the lines
+	private static class CountingOutputStream extends OutputStream {
+
+		private long lines = 0;
+
+		@Override
+		public void write(int b) {
+			if (b == '\n') lines++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) {
+			for (int i = off; i < off + len; i++) write(b[i]);
+		}
+
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.dto.CursorPageDTO;
+import com.bunshock.cards.dto.card.CardCreateDTO;
+import com.bunshock.cards.dto.card.CardShowDTO;
+import com.bunshock.cards.dto.card.CardUpdateDTO;
+import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.enums.CardType;
+import com.bunshock.cards.exception.InsufficientFundsException;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import com.bunshock.cards.service.ICardService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+class CardServiceTests {
+
+	@Autowired
+	private ICardService cardService;
+
+	@Autowired
+	private ICardRepository cardRepository;
+
+	@AfterEach
+	void cleanUp() {
+		cardRepository.deleteAll();
+	}
+
+	@Test
+	void concurrentSpendsNeverOverspendNorLoseUpdates() throws Exception {
+		String cardNumber = createCard();
+		int spends = 400;
+		long amount = Money.ofMajor(1000);
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+			for (int i = 0; i < spends; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					cardService.spendMoney(cardNumber, amount);
+					return null;
+				}));
+			}
+			start.countDown();
+		}
+
+		int succeeded = 0;
+		for (Future<?> result : results) {
+			try {
+				result.get();
+				succeeded++;
+			} catch (ExecutionException e) {
+				assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+			}
+		}
+
+		// The limit covers exactly this many spends, whatever the interleaving
+		assertThat(succeeded).isEqualTo((int) (CardConstants.NEW_CARD_LIMIT / amount));
+		CardShowDTO card = cardService.fetchCard(cardNumber);
+		assertThat(card.getAvailableAmount()).isZero();
+		assertThat(card.getAmountUsed()).isEqualTo(CardConstants.NEW_CARD_LIMIT);
+	}
+
+	@Test
+	void spendMoneyTellsMissingCardFromInsufficientFunds() {
+		String cardNumber = createCard();
+
+		assertThatThrownBy(() -> cardService.spendMoney(cardNumber, CardConstants.NEW_CARD_LIMIT + 1))
+				.isInstanceOf(InsufficientFundsException.class);
+		assertThatThrownBy(() -> cardService.spendMoney("0000000000", 1L))
+				.isInstanceOf(ResourceNotFoundException.class);
+
+		cardService.spendMoney(cardNumber, Money.ofMajor(250));
+		assertThat(cardRepository.findByCardNumber(cardNumber)).hasValueSatisfying(card -> {
+			assertThat(card.getAvailableAmount()).isEqualTo(CardConstants.NEW_CARD_LIMIT - Money.ofMajor(250));
+			assertThat(card.getUpdatedBy()).isEqualTo("CARDS_MS");
+		});
+	}
+
+	@Test
+	void fetchCardsByMobileNumberReturnsOnlyTheCustomerCards() {
+		cardService.createCard(new CardCreateDTO("+15550000001", "CREDIT"));
+		cardService.createCard(new CardCreateDTO("+15550000002", "DEBIT"));
+		cardService.createCard(new CardCreateDTO("+15550000001", "DEBIT"));
+
+		assertThat(cardService.fetchCardsByMobileNumber("+15550000001"))
+				.extracting(CardShowDTO::getCardType)
+				.containsExactly(CardType.CREDIT, CardType.DEBIT);
+		assertThat(cardService.fetchCardsByMobileNumber("+15550000003")).isEmpty();
+	}
+
+	@Test
+	void updatesConcurrentWithSpendsLoseNoSpend() throws Exception {
+		String cardNumber = createCard();
+		long amount = Money.ofMajor(10);
+		int spends = 200;
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+			for (int i = 0; i < spends; i++) {
+				String mobileNumber = String.format("+1555%07d", i);
+				results.add(executor.submit(() -> {
+					start.await();
+					cardService.spendMoney(cardNumber, amount);
+					return null;
+				}));
+				results.add(executor.submit(() -> {
+					start.await();
+					cardService.updateCard(cardNumber, CardUpdateDTO.builder().mobileNumber(mobileNumber).build());
+					return null;
+				}));
+			}
+			start.countDown();
+		}
+		for (Future<?> result : results)
+			result.get();
+
+		CardShowDTO card = cardService.updateCard(cardNumber,
+				CardUpdateDTO.builder().cardType("DEBIT").cardLimit(Money.ofMajor(50_000)).build());
+		assertThat(card.getAmountUsed()).isEqualTo(spends * amount);
+		assertThat(card.getAvailableAmount()).isEqualTo(Money.ofMajor(50_000) - spends * amount);
+		assertThat(card.getCardType()).isEqualTo(CardType.DEBIT);
+		assertThatThrownBy(() -> cardService.updateCard("0000000000", CardUpdateDTO.builder().build()))
+				.isInstanceOf(ResourceNotFoundException.class);
+	}
+
+	@Test
+	void fetchAllCardsPagesThroughEveryCardOnce() {
+		// A multiple of the page size, so that the last full page must not point to an empty one
+		for (int i = 1; i <= 6; i++)
+			cardService.createCard(new CardCreateDTO(String.format("+1555%07d", i), "CREDIT"));
+
+		List<String> cardNumbers = new ArrayList<>();
+		int pages = 0;
+		Long cursor = null;
+		do {
+			CursorPageDTO<CardShowDTO> page = cardService.fetchAllCards(cursor, 2);
+			assertThat(page.getContent()).hasSize(2);
+			page.getContent().forEach(card -> cardNumbers.add(card.getCardNumber()));
+			cursor = page.getNextCursor() == null ? null : Long.valueOf(page.getNextCursor());
+			pages++;
+		} while (cursor != null);
+
+		assertThat(pages).isEqualTo(3);
+		assertThat(cardNumbers).hasSize(6).doesNotHaveDuplicates()
+				.containsExactlyInAnyOrderElementsOf(cardRepository.findAll().stream().map(Card::getCardNumber).toList());
+	}
+
+	@Test
+	void fetchAllCardsReturnsAnEmptyLastPage() {
+		CursorPageDTO<CardShowDTO> empty = cardService.fetchAllCards(null, 2);
+		assertThat(empty.getContent()).isEmpty();
+		assertThat(empty.getNextCursor()).isNull();
+
+		createCard();
+		long lastCardId = cardRepository.findAll().getFirst().getCardId();
+		CursorPageDTO<CardShowDTO> pastTheEnd = cardService.fetchAllCards(lastCardId, 2);
+		assertThat(pastTheEnd.getContent()).isEmpty();
+		assertThat(pastTheEnd.getNextCursor()).isNull();
+	}
+
+	private String createCard() {
+		cardService.createCard(new CardCreateDTO("+15550000001", "CREDIT"));
+		return cardRepository.findAll().getFirst().getCardNumber();
+	}
+
+}
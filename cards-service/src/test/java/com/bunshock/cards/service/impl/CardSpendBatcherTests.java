@@ -0,0 +1,122 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.dto.card.CardCreateDTO;
+import com.bunshock.cards.exception.InsufficientFundsException;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import com.bunshock.cards.service.ICardService;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.doThrow;
+
+@SpringBootTest(properties = {
+		"card-spend-batching.enabled=true",
+		"card-spend-batching.max-linger=5ms"
+})
+class CardSpendBatcherTests {
+
+	@Autowired
+	private ICardService cardService;
+
+	@Autowired
+	private ICardRepository cardRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@MockitoSpyBean
+	private AuditorAware<String> auditorAware;
+
+	@AfterEach
+	void cleanUp() {
+		cardRepository.deleteAll();
+	}
+
+	@Test
+	void concurrentSpendsAreBatchedWithoutOverspending() throws Exception {
+		String cardNumber = createCard();
+		int spends = 400;
+		long amount = Money.ofMajor(1000);
+		DistributionSummary batchSizes = meterRegistry.get(CardConstants.SPEND_BATCH_METRIC).summary();
+		long batchesBefore = batchSizes.count();
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(32)) {
+			for (int i = 0; i < spends; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					cardService.spendMoney(cardNumber, amount);
+					return null;
+				}));
+			}
+			start.countDown();
+		}
+
+		int succeeded = 0;
+		for (Future<?> result : results) {
+			try {
+				result.get();
+				succeeded++;
+			} catch (ExecutionException e) {
+				assertThat(e.getCause()).isInstanceOf(InsufficientFundsException.class);
+			}
+		}
+
+		assertThat(succeeded).isEqualTo((int) (CardConstants.NEW_CARD_LIMIT / amount));
+		assertThat(cardService.fetchCard(cardNumber).getAvailableAmount()).isZero();
+		// Far fewer transactions than spends
+		assertThat(batchSizes.count() - batchesBefore).isLessThan(spends / 2);
+	}
+
+	@Test
+	void rejectedSpendsKeepTheirReason() {
+		String cardNumber = createCard();
+
+		assertThatThrownBy(() -> cardService.spendMoney(cardNumber, CardConstants.NEW_CARD_LIMIT + 1))
+				.isInstanceOf(InsufficientFundsException.class);
+		assertThatThrownBy(() -> cardService.spendMoney("0000000000", 1L))
+				.isInstanceOf(ResourceNotFoundException.class);
+		cardService.spendMoney(cardNumber, 1L);
+		assertThat(cardService.fetchCard(cardNumber).getAmountUsed()).isEqualTo(1L);
+	}
+
+	@Test
+	void unexpectedFailuresFailTheirBatchButNotTheWorker() {
+		String cardNumber = createCard();
+		// Thrown outside of the batch transaction, which is the only failure the batch itself handles
+		doThrow(new IllegalStateException("Auditor unavailable")).doCallRealMethod()
+				.when(auditorAware).getCurrentAuditor();
+
+		assertThatThrownBy(() -> cardService.spendMoney(cardNumber, 1L))
+				.isInstanceOf(IllegalStateException.class)
+				.hasMessage("Auditor unavailable");
+		cardService.spendMoney(cardNumber, 1L);
+		assertThat(cardService.fetchCard(cardNumber).getAmountUsed()).isEqualTo(1L);
+	}
+
+	private String createCard() {
+		cardService.createCard(new CardCreateDTO("+15550000001", "CREDIT"));
+		return cardRepository.findAll().getFirst().getCardNumber();
+	}
+
+}
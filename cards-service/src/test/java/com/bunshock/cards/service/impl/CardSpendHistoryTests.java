@@ -0,0 +1,166 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.dto.CursorPageDTO;
+import com.bunshock.cards.dto.card.CardCreateDTO;
+import com.bunshock.cards.dto.card.CardSpendShowDTO;
+import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import com.bunshock.cards.service.ICardService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+
+@SpringBootTest(properties = {
+		"card-spend-history.enabled=true",
+		"card-spend-history.journal-dir=target/card-spend-history-tests"
+})
+class CardSpendHistoryTests {
+
+	@Autowired
+	private ICardService cardService;
+
+	@Autowired
+	private ICardRepository cardRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		cardRepository.deleteAll();
+	}
+
+	@Test
+	void spendsArePagedOldestFirstWithTheirResultingBalance() {
+		String cardNumber = createCard();
+		for (int i = 1; i <= 3; i++)
+			cardService.spendMoney(cardNumber, Money.ofMajor(i), null);
+
+		CursorPageDTO<CardSpendShowDTO> first = cardService.fetchSpendHistory(cardNumber, null, 2);
+		assertThat(first.getContent()).extracting(CardSpendShowDTO::getAmount)
+				.containsExactly(Money.ofMajor(1), Money.ofMajor(2));
+		assertThat(first.getContent()).extracting(CardSpendShowDTO::getAvailableAmount)
+				.containsExactly(CardConstants.NEW_CARD_LIMIT - Money.ofMajor(1),
+						CardConstants.NEW_CARD_LIMIT - Money.ofMajor(3));
+		assertThat(first.getNextCursor()).isNotNull();
+
+		CursorPageDTO<CardSpendShowDTO> second = cardService.fetchSpendHistory(cardNumber,
+				Long.valueOf(first.getNextCursor()), 2);
+		assertThat(second.getContent()).extracting(CardSpendShowDTO::getAvailableAmount)
+				.containsExactly(CardConstants.NEW_CARD_LIMIT - Money.ofMajor(6));
+		assertThat(second.getNextCursor()).isNull();
+	}
+
+	@Test
+	void historyOfUnknownCardIsNotFound() {
+		assertThatThrownBy(() -> cardService.fetchSpendHistory("0000000000", null, 10))
+				.isInstanceOf(ResourceNotFoundException.class);
+		assertThat(cardService.fetchSpendHistory(createCard(), null, 10).getContent()).isEmpty();
+	}
+
+	@Test
+	void journalRebuildsItsIndexAcrossSegmentsOnReopen(@TempDir Path directory) throws IOException {
+		// Room for 2 records per segment, so that 5 appends span 3 segments
+		CardSpendHistoryJournal journal = new CardSpendHistoryJournal(directory, 100, 10);
+		for (int i = 1; i <= 5; i++)
+			journal.append(i % 2 == 0 ? "2222222222" : "1111111111", i, 100 - i, i);
+		journal.close();
+
+		try (Stream<Path> segments = Files.list(directory)) {
+			assertThat(segments.count()).isEqualTo(3);
+		}
+
+		CardSpendHistoryJournal reopened = new CardSpendHistoryJournal(directory, 100, 10);
+		assertThat(reopened.count("1111111111")).isEqualTo(3);
+		List<CardSpendHistoryJournal.Entry> entries = reopened.read("2222222222", 0, 10);
+		assertThat(entries).extracting(CardSpendHistoryJournal.Entry::amount, CardSpendHistoryJournal.Entry::spentAt)
+				.containsExactly(tuple(2L, 2L), tuple(4L, 4L));
+
+		reopened.append("2222222222", 6, 94, 6);
+		assertThat(reopened.read("2222222222", entries.getLast().position(), 10))
+				.extracting(CardSpendHistoryJournal.Entry::amount)
+				.containsExactly(6L);
+		reopened.close();
+	}
+
+	@Test
+	void journalDeletesItsOldestSegmentsBeyondTheRetention(@TempDir Path directory) throws IOException {
+		// Room for 2 records per segment, and 2 segments retained
+		CardSpendHistoryJournal journal = new CardSpendHistoryJournal(directory, 100, 2);
+		for (int i = 1; i <= 7; i++)
+			journal.append(i <= 2 ? "1111111111" : "2222222222", i, 100 - i, i);
+
+		try (Stream<Path> segments = Files.list(directory)) {
+			assertThat(segments.count()).isEqualTo(2);
+		}
+		// Only the spends of the 2 last segments are left
+		assertThat(journal.count("1111111111")).isZero();
+		assertThat(journal.read("2222222222", 0, 10)).extracting(CardSpendHistoryJournal.Entry::amount)
+				.containsExactly(5L, 6L, 7L);
+		journal.close();
+
+		// Reopened with a lower retention
+		CardSpendHistoryJournal reopened = new CardSpendHistoryJournal(directory, 100, 1);
+		assertThat(reopened.read("2222222222", 0, 10)).extracting(CardSpendHistoryJournal.Entry::amount)
+				.containsExactly(7L);
+		reopened.close();
+	}
+
+	@Test
+	void pagingResumesAfterTheLastReadSpendAcrossSegmentDeletions(@TempDir Path directory) throws IOException {
+		// Room for 2 records per segment, and 2 segments retained
+		CardSpendHistoryJournal journal = new CardSpendHistoryJournal(directory, 100, 2);
+		for (int i = 1; i <= 4; i++)
+			journal.append("1111111111", i, 100 - i, i);
+		List<CardSpendHistoryJournal.Entry> first = journal.read("1111111111", 0, 3);
+		assertThat(first).extracting(CardSpendHistoryJournal.Entry::amount).containsExactly(1L, 2L, 3L);
+
+		// Rolls over twice, deleting the segment of the first 2 spends
+		for (int i = 5; i <= 6; i++)
+			journal.append("1111111111", i, 100 - i, i);
+		assertThat(journal.count("1111111111")).isEqualTo(4);
+
+		assertThat(journal.read("1111111111", first.getLast().position(), 10))
+				.extracting(CardSpendHistoryJournal.Entry::amount)
+				.containsExactly(4L, 5L, 6L);
+		// A cursor in a deleted segment resumes from the oldest retained spend
+		assertThat(journal.read("1111111111", first.getFirst().position(), 10))
+				.extracting(CardSpendHistoryJournal.Entry::amount)
+				.containsExactly(3L, 4L, 5L, 6L);
+		journal.close();
+	}
+
+	@Test
+	void rolledBackSpendsAreNotRecorded() {
+		String cardNumber = createCard();
+		transactionTemplate.executeWithoutResult(status -> {
+			cardService.spendMoney(cardNumber, Money.ofMajor(1), null);
+			status.setRollbackOnly();
+		});
+
+		assertThat(cardService.fetchSpendHistory(cardNumber, null, 10).getContent()).isEmpty();
+		assertThat(cardService.fetchCard(cardNumber).getAmountUsed()).isZero();
+	}
+
+	private String createCard() {
+		cardService.createCard(new CardCreateDTO("+15550000001", "CREDIT"));
+		return cardRepository.findAll().stream().map(Card::getCardNumber).toList().getLast();
+	}
+
+}
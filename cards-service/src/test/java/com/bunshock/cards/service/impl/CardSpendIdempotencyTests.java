@@ -0,0 +1,186 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.dto.card.CardCreateDTO;
+import com.bunshock.cards.exception.IdempotencyKeyMismatchException;
+import com.bunshock.cards.exception.IdempotentSpendInProgressException;
+import com.bunshock.cards.exception.InsufficientFundsException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import com.bunshock.cards.repository.ISpendIdempotencyRecordRepository;
+import com.bunshock.cards.service.ICardService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.fail;
+
+@SpringBootTest(properties = "card-spend-idempotency.table-backed=true")
+class CardSpendIdempotencyTests {
+
+	@Autowired
+	private ICardService cardService;
+
+	@Autowired
+	private ICardRepository cardRepository;
+
+	@Autowired
+	private ISpendIdempotencyRecordRepository recordRepository;
+
+	@AfterEach
+	void cleanUp() {
+		cardRepository.deleteAll();
+		recordRepository.deleteAll();
+	}
+
+	@Test
+	void concurrentDuplicatesSpendOnce() throws Exception {
+		String cardNumber = createCard();
+		long amount = Money.ofMajor(1000);
+		CountDownLatch start = new CountDownLatch(1);
+
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(16)) {
+			for (int i = 0; i < 64; i++) {
+				results.add(executor.submit(() -> {
+					start.await();
+					cardService.spendMoney(cardNumber, amount, "retried-spend");
+					return null;
+				}));
+			}
+			start.countDown();
+		}
+		// Every duplicate succeeds, answered by the single spend applied
+		for (Future<?> result : results)
+			result.get();
+
+		assertThat(cardService.fetchCard(cardNumber).getAmountUsed()).isEqualTo(amount);
+	}
+
+	@Test
+	void keyReusedForAnotherSpendIsRejected() {
+		String cardNumber = createCard();
+		cardService.spendMoney(cardNumber, Money.ofMajor(10), "spend-1");
+
+		assertThatThrownBy(() -> cardService.spendMoney(cardNumber, Money.ofMajor(20), "spend-1"))
+				.isInstanceOf(IdempotencyKeyMismatchException.class);
+		assertThatThrownBy(() -> cardService.spendMoney("0000000000", Money.ofMajor(10), "spend-1"))
+				.isInstanceOf(IdempotencyKeyMismatchException.class);
+		assertThat(cardService.fetchCard(cardNumber).getAmountUsed()).isEqualTo(Money.ofMajor(10));
+	}
+
+	@Test
+	void failedSpendDoesNotUseTheKey() {
+		String cardNumber = createCard();
+
+		assertThatThrownBy(() -> cardService.spendMoney(cardNumber, CardConstants.NEW_CARD_LIMIT + 1, "spend-2"))
+				.isInstanceOf(InsufficientFundsException.class);
+		cardService.spendMoney(cardNumber, Money.ofMajor(5), "spend-2");
+
+		assertThat(cardService.fetchCard(cardNumber).getAmountUsed()).isEqualTo(Money.ofMajor(5));
+	}
+
+	@Test
+	void recordedKeysAreSharedThroughTheTable() {
+		String cardNumber = createCard();
+		cardService.spendMoney(cardNumber, Money.ofMajor(10), "spend-3");
+
+		// As if on another instance (or after a restart): nothing cached, only the table
+		CardSpendIdempotencyService otherInstance = new CardSpendIdempotencyService(
+				recordRepository, new SimpleMeterRegistry(), 100, Duration.ofHours(1), true);
+		otherInstance.execute("spend-3", cardNumber, Money.ofMajor(10),
+				() -> fail("Spend already recorded must not run again"));
+		assertThatThrownBy(() -> otherInstance.execute("spend-3", cardNumber, Money.ofMajor(11), () -> { }))
+				.isInstanceOf(IdempotencyKeyMismatchException.class);
+	}
+
+	@Test
+	void keyClaimedByAnotherInstanceIsNotSpentTwice() throws Exception {
+		String cardNumber = createCard();
+		long amount = Money.ofMajor(10);
+		CardSpendIdempotencyService otherInstance = new CardSpendIdempotencyService(
+				recordRepository, new SimpleMeterRegistry(), 100, Duration.ofHours(1), true);
+		CountDownLatch spending = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+
+		try (ExecutorService executor = Executors.newSingleThreadExecutor()) {
+			// Held while its spend runs, so that the key is claimed but not completed
+			Future<?> running = executor.submit(() -> otherInstance.execute("spend-4", cardNumber, amount, () -> {
+				spending.countDown();
+				try {
+					finish.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				cardService.spendMoney(cardNumber, amount);
+			}));
+			assertThat(spending.await(5, TimeUnit.SECONDS)).isTrue();
+
+			// Claimed in the table by the other instance: neither waited for nor spent again
+			assertThatThrownBy(() -> cardService.spendMoney(cardNumber, amount, "spend-4"))
+					.isInstanceOf(IdempotentSpendInProgressException.class);
+			finish.countDown();
+			running.get();
+		}
+
+		cardService.spendMoney(cardNumber, amount, "spend-4");
+		assertThat(cardService.fetchCard(cardNumber).getAmountUsed()).isEqualTo(amount);
+	}
+
+	@Test
+	void runningSpendsAreNotEvictedByTheSizeBound() throws Exception {
+		String cardNumber = createCard();
+		CardSpendIdempotencyService service = new CardSpendIdempotencyService(
+				recordRepository, new SimpleMeterRegistry(), 1, Duration.ofHours(1), false);
+		AtomicInteger runs = new AtomicInteger();
+		CountDownLatch spending = new CountDownLatch(1);
+		CountDownLatch finish = new CountDownLatch(1);
+
+		try (ExecutorService executor = Executors.newFixedThreadPool(2)) {
+			Future<?> running = executor.submit(() -> service.execute("spend-5", cardNumber, 1L, () -> {
+				runs.incrementAndGet();
+				spending.countDown();
+				try {
+					finish.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}));
+			assertThat(spending.await(5, TimeUnit.SECONDS)).isTrue();
+
+			// More completed keys than the cache holds
+			for (int i = 0; i < 10; i++)
+				service.execute("other-spend-" + i, cardNumber, 1L, () -> { });
+			Future<?> duplicate = executor.submit(() -> service.execute("spend-5", cardNumber, 1L,
+					runs::incrementAndGet));
+			// Waits for the running spend instead of running again
+			assertThatThrownBy(() -> duplicate.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+			finish.countDown();
+			running.get();
+			duplicate.get();
+		}
+
+		assertThat(runs).hasValue(1);
+	}
+
+	private String createCard() {
+		cardService.createCard(new CardCreateDTO("+15550000001", "CREDIT"));
+		return cardRepository.findAll().getFirst().getCardNumber();
+	}
+
+}
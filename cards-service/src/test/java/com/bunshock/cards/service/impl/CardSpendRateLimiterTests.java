@@ -0,0 +1,130 @@
+package com.bunshock.cards.service.impl;
+
+import com.bunshock.cards.constants.CardConstants;
+import com.bunshock.cards.controller.CardController;
+import com.bunshock.cards.dto.card.CardCreateDTO;
+import com.bunshock.cards.dto.card.CardUpdateDTO;
+import com.bunshock.cards.entity.Card;
+import com.bunshock.cards.exception.ResourceNotFoundException;
+import com.bunshock.cards.exception.SpendRateLimitExceededException;
+import com.bunshock.cards.money.Money;
+import com.bunshock.cards.repository.ICardRepository;
+import com.bunshock.cards.service.ICardService;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+// Refills so slowly that no token comes back during a test
+@SpringBootTest(properties = {
+		"card-spend-rate-limit.enabled=true",
+		"card-spend-rate-limit.debit.rate=0.001",
+		"card-spend-rate-limit.debit.burst=3",
+		"card-spend-rate-limit.credit.rate=0.001",
+		"card-spend-rate-limit.credit.burst=5",
+		"card-spend-rate-limit.unknown.rate=0.001",
+		"card-spend-rate-limit.unknown.burst=2"
+})
+class CardSpendRateLimiterTests {
+
+	@Autowired
+	private CardController cardController;
+
+	@Autowired
+	private ICardService cardService;
+
+	@MockitoSpyBean
+	private ICardRepository cardRepository;
+
+	@Autowired
+	private MeterRegistry meterRegistry;
+
+	@AfterEach
+	void cleanUp() {
+		cardRepository.deleteAll();
+	}
+
+	@Test
+	void spendsBeyondTheBurstOfTheCardTypeAreThrottledWithoutBeingApplied() {
+		String debitCard = createCard("DEBIT");
+		String creditCard = createCard("CREDIT");
+		double throttledBefore = throttled("DEBIT");
+
+		for (int i = 0; i < 3; i++)
+			cardController.spendMoney(debitCard, "1.00", null);
+		assertThatThrownBy(() -> cardController.spendMoney(debitCard, "1.00", null))
+				.isSameAs(SpendRateLimitExceededException.INSTANCE);
+
+		// Other cards have their own bucket, sized by their type
+		for (int i = 0; i < 5; i++)
+			cardController.spendMoney(creditCard, "1.00", null);
+
+		assertThat(cardService.fetchCard(debitCard).getAvailableAmount())
+				.isEqualTo(CardConstants.NEW_CARD_LIMIT - Money.ofMajor(3));
+		assertThat(throttled("DEBIT") - throttledBefore).isEqualTo(1);
+	}
+
+	@Test
+	void repeatedIdempotencyKeysAreAnsweredWhenOutOfTokens() {
+		String card = createCard("DEBIT");
+		cardController.spendMoney(card, "1.00", "spend-1");
+		for (int i = 0; i < 2; i++)
+			cardController.spendMoney(card, "1.00", null);
+		assertThatThrownBy(() -> cardController.spendMoney(card, "1.00", "spend-2"))
+				.isSameAs(SpendRateLimitExceededException.INSTANCE);
+
+		// The spend made with the key is acknowledged again, without spending
+		cardController.spendMoney(card, "1.00", "spend-1");
+		assertThat(cardService.fetchCard(card).getAvailableAmount())
+				.isEqualTo(CardConstants.NEW_CARD_LIMIT - Money.ofMajor(3));
+	}
+
+	@Test
+	void spendsOfUnknownCardsAreThrottledAfterASingleLookup() {
+		for (int i = 0; i < 2; i++) {
+			assertThatThrownBy(() -> cardController.spendMoney("0000000000", "1.00", null))
+					.isInstanceOf(ResourceNotFoundException.class);
+		}
+		for (int i = 0; i < 10; i++) {
+			assertThatThrownBy(() -> cardController.spendMoney("0000000000", "1.00", null))
+					.isSameAs(SpendRateLimitExceededException.INSTANCE);
+		}
+
+		verify(cardRepository, times(1)).findCardTypeByCardNumber("0000000000");
+	}
+
+	@Test
+	void changingTheTypeOfACardAppliesTheLimitsOfItsNewType() {
+		String card = createCard("DEBIT");
+		for (int i = 0; i < 3; i++)
+			cardController.spendMoney(card, "1.00", null);
+
+		cardService.updateCard(card, new CardUpdateDTO(null, "CREDIT", null));
+
+		for (int i = 0; i < 5; i++)
+			cardController.spendMoney(card, "1.00", null);
+		assertThatThrownBy(() -> cardController.spendMoney(card, "1.00", null))
+				.isSameAs(SpendRateLimitExceededException.INSTANCE);
+	}
+
+	private double throttled(String cardType) {
+		return meterRegistry.get(CardConstants.SPEND_THROTTLED_METRIC).tag("card.type", cardType)
+				.counter().count();
+	}
+
+	private String createCard(String cardType) {
+		cardService.createCard(new CardCreateDTO("+15550000001", cardType));
+		return cardRepository.findAll().stream()
+				.filter(card -> card.getCardType().name().equals(cardType))
+				.map(Card::getCardNumber)
+				.findFirst().orElseThrow();
+	}
+
+}
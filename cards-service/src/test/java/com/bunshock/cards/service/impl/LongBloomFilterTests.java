@@ -0,0 +1,57 @@
+package com.bunshock.cards.service.impl;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class LongBloomFilterTests {
+
+	private static final long FIRST_NUMBER = 1_000_000_000L;
+
+	@Test
+	void concurrentPutsHaveNoFalseNegativesAndKeepTheConfiguredRate() throws Exception {
+		int keys = 100_000;
+		int threads = 8;
+		LongBloomFilter filter = new LongBloomFilter(keys, 0.01);
+
+		// Every thread puts an interleaved share of the keys
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(threads)) {
+			for (int t = 0; t < threads; t++) {
+				int offset = t;
+				results.add(executor.submit(() -> {
+					for (long key = FIRST_NUMBER + offset; key < FIRST_NUMBER + keys; key += threads)
+						filter.put(key);
+				}));
+			}
+		}
+		for (Future<?> result : results)
+			result.get();
+
+		for (long key = FIRST_NUMBER; key < FIRST_NUMBER + keys; key++)
+			assertThat(filter.mightContain(key)).isTrue();
+
+		int falsePositives = 0;
+		for (long key = FIRST_NUMBER + keys; key < FIRST_NUMBER + 2L * keys; key++) {
+			if (filter.mightContain(key))
+				falsePositives++;
+		}
+		assertThat((double) falsePositives / keys).isLessThan(0.02);
+		assertThat(filter.estimatedFalsePositiveProbability()).isBetween(0.005, 0.02);
+		assertThat(filter.estimatedElementCount()).isBetween(0.95 * keys, 1.05 * keys);
+	}
+
+	@Test
+	void invalidSizingIsRejected() {
+		assertThatThrownBy(() -> new LongBloomFilter(0, 0.01)).isInstanceOf(IllegalArgumentException.class);
+		assertThatThrownBy(() -> new LongBloomFilter(1000, 1.0)).isInstanceOf(IllegalArgumentException.class);
+	}
+
+}
@@ -0,0 +1,142 @@
+package com.bunshock.loans.amortization;
+
+import com.bunshock.loans.money.Money;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-payment amortization schedule of a loan, in minor units (see {@link Money}).
+ * <p>
+ * Installments are held column-wise in primitive arrays, so that a schedule is a handful of objects
+ * whatever its term. Schedules are immutable and depend only on the principal, rate and term, so they
+ * can be shared between loans and threads.
+ */
+@JsonSerialize(using = AmortizationScheduleSerializer.class)
+public final class AmortizationSchedule {
+
+    private static final long BASIS_POINTS_PER_YEAR = 12 * 10_000L;
+
+    private final long principal;
+    private final int annualRateBasisPoints;
+    private final int termMonths;
+    private final long totalInterest;
+    private final long[] payments;
+    private final long[] principalPaid;
+    private final long[] interestPaid;
+    private final long[] balances;
+
+    private AmortizationSchedule(long principal, int annualRateBasisPoints, int termMonths, long totalInterest,
+                                 long[] payments, long[] principalPaid, long[] interestPaid, long[] balances) {
+        this.principal = principal;
+        this.annualRateBasisPoints = annualRateBasisPoints;
+        this.termMonths = termMonths;
+        this.totalInterest = totalInterest;
+        this.payments = payments;
+        this.principalPaid = principalPaid;
+        this.interestPaid = interestPaid;
+        this.balances = balances;
+    }
+
+    /**
+     * Computes the monthly installments repaying the principal over the term.
+     * <p>
+     * The monthly payment is the annuity payment rounded up to the minor unit, and each month's interest
+     * is the balance times the monthly rate rounded half up. The last installment repays whatever is left,
+     * so it's usually a little smaller; if rounding up repaid the principal early, the schedule ends there.
+     *
+     * @throws ArithmeticException if the amounts overflow
+     */
+    public static AmortizationSchedule calculate(long principal, int annualRateBasisPoints, int termMonths) {
+        if (principal < 0 || annualRateBasisPoints < 0 || termMonths < 1)
+            throw new IllegalArgumentException("Principal and rate must not be negative, and term must be positive");
+
+        long payment = annualRateBasisPoints == 0
+                ? Math.ceilDiv(principal, termMonths)
+                : annuityPayment(principal, annualRateBasisPoints, termMonths);
+        long[] payments = new long[termMonths];
+        long[] principalPaid = new long[termMonths];
+        long[] interestPaid = new long[termMonths];
+        long[] balances = new long[termMonths];
+
+        long balance = principal;
+        long totalInterest = 0;
+        int installments = 0;
+        while (installments < termMonths && (balance > 0 || installments == 0)) {
+            long scaledInterest = Math.multiplyExact(balance, annualRateBasisPoints);
+            long interest = scaledInterest / BASIS_POINTS_PER_YEAR
+                    + (scaledInterest % BASIS_POINTS_PER_YEAR >= BASIS_POINTS_PER_YEAR / 2 ? 1 : 0);
+            long repaid = installments == termMonths - 1
+                    ? balance
+                    : Math.min(Money.subtract(payment, interest), balance);
+            balance = Money.subtract(balance, repaid);
+            totalInterest = Money.add(totalInterest, interest);
+
+            payments[installments] = Money.add(repaid, interest);
+            principalPaid[installments] = repaid;
+            interestPaid[installments] = interest;
+            balances[installments] = balance;
+            installments++;
+        }
+
+        if (installments < termMonths) {
+            payments = Arrays.copyOf(payments, installments);
+            principalPaid = Arrays.copyOf(principalPaid, installments);
+            interestPaid = Arrays.copyOf(interestPaid, installments);
+            balances = Arrays.copyOf(balances, installments);
+        }
+        return new AmortizationSchedule(principal, annualRateBasisPoints, termMonths, totalInterest,
+                payments, principalPaid, interestPaid, balances);
+    }
+
+    // P r / (1 - (1 + r)^-n), with r the monthly rate, rounded up so that the term is never exceeded
+    private static long annuityPayment(long principal, int annualRateBasisPoints, int termMonths) {
+        double monthlyRate = (double) annualRateBasisPoints / BASIS_POINTS_PER_YEAR;
+        double payment = principal * monthlyRate / -Math.expm1(-termMonths * Math.log1p(monthlyRate));
+        return (long) Math.ceil(payment);
+    }
+
+    public long principal() {
+        return principal;
+    }
+
+    public int annualRateBasisPoints() {
+        return annualRateBasisPoints;
+    }
+
+    public int termMonths() {
+        return termMonths;
+    }
+
+    public long totalInterest() {
+        return totalInterest;
+    }
+
+    // Payment of every installment but the last one
+    public long monthlyPayment() {
+        return payments[0];
+    }
+
+    public int installments() {
+        return payments.length;
+    }
+
+    // Accessors of the installment at the index, starting at 0
+
+    public long payment(int installment) {
+        return payments[installment];
+    }
+
+    public long principalPaid(int installment) {
+        return principalPaid[installment];
+    }
+
+    public long interestPaid(int installment) {
+        return interestPaid[installment];
+    }
+
+    public long balance(int installment) {
+        return balances[installment];
+    }
+
+}
@@ -0,0 +1,64 @@
+package com.bunshock.loans.amortization;
+
+import com.bunshock.loans.money.Money;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+
+/**
+ * Writes a schedule with its installments as an array of objects, straight from the primitive arrays
+ * of the schedule. Amounts are written like {@link com.bunshock.loans.money.JsonMoney} ones, through a
+ * buffer reused for the whole schedule instead of a string per amount.
+ */
+public class AmortizationScheduleSerializer extends JsonSerializer<AmortizationSchedule> {
+
+    @Override
+    public void serialize(AmortizationSchedule schedule, JsonGenerator generator, SerializerProvider provider)
+            throws IOException {
+        AmountWriter amounts = new AmountWriter(generator);
+        generator.writeStartObject();
+        amounts.write("principal", schedule.principal());
+        // Basis points are hundredths of a percent
+        generator.writeNumberField("annualRate", BigDecimal.valueOf(schedule.annualRateBasisPoints(), 2));
+        generator.writeNumberField("termMonths", schedule.termMonths());
+        amounts.write("monthlyPayment", schedule.monthlyPayment());
+        amounts.write("totalInterest", schedule.totalInterest());
+
+        generator.writeArrayFieldStart("installments");
+        for (int i = 0; i < schedule.installments(); i++) {
+            generator.writeStartObject();
+            generator.writeNumberField("number", i + 1);
+            amounts.write("payment", schedule.payment(i));
+            amounts.write("principal", schedule.principalPaid(i));
+            amounts.write("interest", schedule.interestPaid(i));
+            amounts.write("balance", schedule.balance(i));
+            generator.writeEndObject();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+    }
+
+    private static final class AmountWriter {
+
+        private final JsonGenerator generator;
+        private final StringBuilder text = new StringBuilder(24);
+        private final char[] chars = new char[24];
+
+        AmountWriter(JsonGenerator generator) {
+            this.generator = generator;
+        }
+
+        void write(String field, long amount) throws IOException {
+            text.setLength(0);
+            Money.appendTo(text, amount);
+            text.getChars(0, text.length(), chars, 0);
+            generator.writeFieldName(field);
+            generator.writeNumber(chars, 0, text.length());
+        }
+
+    }
+
+}
@@ -8,6 +8,19 @@ public class LoanConstants {
     public static final String MESSAGE_200 = "Successful operation: %s";
     public static final String MESSAGE_201 = "%s created successfully";
 
-    public static final Double NEW_LOAN_LIMIT = 20_000.0;
+    public static final String DEFAULT_PAGE_SIZE = "50";
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // In minor units, see Money
+    public static final long NEW_LOAN_LIMIT = 20_000_00L;
+
+    // Timers of the service methods, of number generation and of block claims, meters of the
+    // Bloom filter of existing numbers, meters of the amortization schedule cache, and of interest accrual
+    public static final String SERVICE_METRIC = "service.invocations";
+    public static final String ID_GENERATION_METRIC = "identifier.generation";
+    public static final String BLOCK_CLAIM_METRIC = "identifier.block.claims";
+    public static final String BLOOM_FILTER_METRIC = "identifier.bloom.filter";
+    public static final String AMORTIZATION_SCHEDULE_CACHE = "loan.amortization.schedules";
+    public static final String INTEREST_ACCRUAL_METRIC = "loan.interest.accrual";
 
 }
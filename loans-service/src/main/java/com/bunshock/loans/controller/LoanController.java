@@ -1,13 +1,17 @@
 package com.bunshock.loans.controller;
 
 import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.dto.CursorPageDTO;
 import com.bunshock.loans.dto.ResponseDTO;
 import com.bunshock.loans.dto.ResponseErrorDTO;
 import com.bunshock.loans.dto.ResponseSuccessDTO;
 import com.bunshock.loans.dto.loan.LoanCreateDTO;
+import com.bunshock.loans.dto.loan.LoanScheduleShowDTO;
 import com.bunshock.loans.dto.loan.LoanShowDTO;
+import com.bunshock.loans.dto.loan.LoanStatsShowDTO;
 import com.bunshock.loans.dto.loan.LoanUpdateDTO;
 import com.bunshock.loans.service.ILoanService;
+import com.bunshock.loans.service.impl.LoanRepaymentIngestionService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.media.Content;
 import io.swagger.v3.oas.annotations.media.ExampleObject;
@@ -15,8 +19,12 @@ import io.swagger.v3.oas.annotations.media.Schema;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.Pattern;
+import jakarta.validation.constraints.Positive;
 import lombok.AllArgsConstructor;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -29,8 +37,16 @@ import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
 import java.util.List;
 
@@ -45,6 +61,7 @@ import java.util.List;
 public class LoanController {
 
     private final ILoanService loanService;
+    private final LoanRepaymentIngestionService repaymentIngestion;
 
     @Operation(
             summary = "Create a new loan",
@@ -109,7 +126,8 @@ public class LoanController {
 
     @Operation(
             summary = "Fetch all loans",
-            description = "REST API to fetch every loan details"
+            description = "REST API to fetch every loan details. Results are paginated: pass the" +
+                    " 'nextCursor' of a response as the 'after' parameter to fetch the following page."
     )
     @ApiResponses({
             @ApiResponse(
@@ -124,10 +142,11 @@ public class LoanController {
                                             "\"message\":\"Successful operation: Fetched all loan " +
                                             "details\",\"data\":[{\"mobileNumber\":\"+2211345678\"," +
                                             "\"loanNumber\":\"8389681893\",\"loanType\":\"PERSONAL\"," +
-                                            "\"totalLoan\":20000,\"amountPaid\":0,\"outstandingAmount" +
-                                            "\":20000},{\"mobileNumber\":\"+331920123\",\"loanNumber\":" +
-                                            "\"6611626309\",\"loanType\":\"BUSINESS\",\"totalLoan\":20000," +
-                                            "\"amountPaid\":0,\"outstandingAmount\":20000}]}"
+                                            "\"totalLoan\":20000.00,\"amountPaid\":0.00,\"outstandingAmount" +
+                                            "\":20000.00},{\"mobileNumber\":\"+331920123\",\"loanNumber\":" +
+                                            "\"6611626309\",\"loanType\":\"BUSINESS\",\"totalLoan\":20000.00," +
+                                            "\"amountPaid\":0.00,\"outstandingAmount\":20000.00}]," +
+                                            "\"nextCursor\":\"2\"}"
                             )
                     )
             ),
@@ -147,12 +166,52 @@ public class LoanController {
             )
     })
     @GetMapping("/fetch")
-    public ResponseEntity<ResponseDTO> fetchAllLoans() {
+    public ResponseEntity<ResponseDTO> fetchAllLoans(
+            @Positive @RequestParam(required = false) Long after,
+            @Min(1) @Max(LoanConstants.MAX_PAGE_SIZE)
+            @RequestParam(defaultValue = LoanConstants.DEFAULT_PAGE_SIZE) int limit
+    ) {
+        CursorPageDTO<LoanShowDTO> page = loanService.fetchAllLoans(after, limit);
         return new ResponseEntity<>(ResponseSuccessDTO.<List<LoanShowDTO>>builder()
                 .statusCode(HttpStatus.OK.value())
                 .timestamp(LocalDateTime.now())
                 .message(String.format(LoanConstants.MESSAGE_200, "Fetched all loan details"))
-                .data(loanService.fetchAllLoans())
+                .data(page.getContent())
+                .nextCursor(page.getNextCursor())
+                .build(), HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Fetch loan totals per loan type",
+            description = "REST API to fetch the count, total loan, amount paid and outstanding amount of the" +
+                    " loans of each type, kept up to date as loans change instead of computed per request"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "HTTP Status: OK",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseSuccessDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Loan stats fetched successfully (types cut short)",
+                                    value = "{\"statusCode\":200,\"timestamp\":\"07-06-2025 15:30\"," +
+                                            "\"message\":\"Successful operation: Fetched loan totals per loan" +
+                                            " type\",\"data\":[{\"loanType\":\"PERSONAL\",\"count\":2," +
+                                            "\"totalLoan\":40000.00,\"amountPaid\":1200.80,\"outstandingAmount\"" +
+                                            ":38799.20},{\"loanType\":\"BUSINESS\",\"count\":0,\"totalLoan\"" +
+                                            ":0.00,\"amountPaid\":0.00,\"outstandingAmount\":0.00}]}"
+                            )
+                    )
+            )
+    })
+    @GetMapping("/stats")
+    public ResponseEntity<ResponseDTO> fetchLoanStats() {
+        return new ResponseEntity<>(ResponseSuccessDTO.<List<LoanStatsShowDTO>>builder()
+                .statusCode(HttpStatus.OK.value())
+                .timestamp(LocalDateTime.now())
+                .message(String.format(LoanConstants.MESSAGE_200, "Fetched loan totals per loan type"))
+                .data(loanService.fetchLoanStats())
                 .build(), HttpStatus.OK);
     }
 
@@ -173,8 +232,8 @@ public class LoanController {
                                             "\"message\":\"Successful operation: Fetched loan details" +
                                             " for loan number 6112860122\",\"data\":{\"mobileNumber\":" +
                                             "\"+331920123\",\"loanNumber\":\"6112860122\",\"loanType\":" +
-                                            "\"BUSINESS\",\"totalLoan\":20000,\"amountPaid\":0,\"outstandingAmount" +
-                                            "\":20000}}"
+                                            "\"BUSINESS\",\"totalLoan\":20000.00,\"amountPaid\":0.00,\"outstandingAmount" +
+                                            "\":20000.00}}"
                             )
                     )
             ),
@@ -223,6 +282,130 @@ public class LoanController {
                 .build(), HttpStatus.OK);
     }
 
+    @Operation(
+            summary = "Fetch all loans of a customer",
+            description = "REST API to fetch the details of every loan of a customer, using their mobile number"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "HTTP Status: OK",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseSuccessDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Customer loans fetched successfully",
+                                    value = "{\"statusCode\":200,\"timestamp\":\"07-06-2025 14:47\"," +
+                                            "\"message\":\"Successful operation: Fetched loan details" +
+                                            " for customer with mobile number: +331920123\",\"data\":[" +
+                                            "{\"mobileNumber\":\"+331920123\",\"loanNumber\":\"6112860122\"," +
+                                            "\"loanType\":\"BUSINESS\",\"totalLoan\":20000.00,\"amountPaid\":0.00," +
+                                            "\"outstandingAmount\":20000.00}]}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "HTTP Status: INTERNAL SERVER ERROR. Check 'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Internal server error: Invalid mobile number format",
+                                    value = "{\"statusCode\":500,\"timestamp\":\"07-06-2025 14:49\"," +
+                                            "\"apiPath\":\"uri=/api/loans/fetch/customer/123abc\",\"errorMessage" +
+                                            "\":\"fetchLoansByMobileNumber.mobileNumber: Invalid mobile number format\"}"
+                            )
+                    )
+            )
+    })
+    @GetMapping("/fetch/customer/{mobileNumber}")
+    public ResponseEntity<ResponseDTO> fetchLoansByMobileNumber(
+            @Pattern(regexp = "^\\+?\\d{1,4}?[-.\\s]?\\(?\\d{1,3}?\\)?[-.\\s]?\\d{1,4}[-.\\s]" +
+                    "?\\d{1,4}[-.\\s]?\\d{1,9}$", message = "Invalid mobile number format")
+            @PathVariable String mobileNumber
+    ) {
+        return new ResponseEntity<>(ResponseSuccessDTO.<List<LoanShowDTO>>builder()
+                .statusCode(HttpStatus.OK.value())
+                .timestamp(LocalDateTime.now())
+                .message(String.format(LoanConstants.MESSAGE_200, "Fetched loan details for customer with" +
+                        " mobile number: " + mobileNumber))
+                .data(loanService.fetchLoansByMobileNumber(mobileNumber))
+                .build(), HttpStatus.OK);
+    }
+
+    @Operation(
+            summary = "Fetch the amortization schedule of a loan",
+            description = "REST API to fetch the monthly installments repaying a loan's total, at the annual" +
+                    " rate and over the term of its loan type"
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "HTTP Status: OK",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseSuccessDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Loan schedule fetched successfully (installments cut short)",
+                                    value = "{\"statusCode\":200,\"timestamp\":\"07-06-2025 15:20\"," +
+                                            "\"message\":\"Successful operation: Fetched amortization schedule" +
+                                            " for loan number 6112860122\",\"data\":{\"loanNumber\":" +
+                                            "\"6112860122\",\"loanType\":\"BUSINESS\",\"schedule\":{" +
+                                            "\"principal\":20000.00,\"annualRate\":9.50,\"termMonths\":84," +
+                                            "\"monthlyPayment\":326.88,\"totalInterest\":7457.92,\"installments\":[" +
+                                            "{\"number\":1,\"payment\":326.88,\"principal\":168.55," +
+                                            "\"interest\":158.33,\"balance\":19831.45},{\"number\":2," +
+                                            "\"payment\":326.88,\"principal\":169.88,\"interest\":157.00," +
+                                            "\"balance\":19661.57}]}}}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "404",
+                    description = "HTTP Status: NOT FOUND. Possible cause: specified loan" +
+                            " number does not match any existing loan. Check " +
+                            "'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Loan not found",
+                                    value = "{\"statusCode\":404,\"timestamp\":\"07-06-2025 15:21\"," +
+                                            "\"apiPath\":\"uri=/api/loans/1234567890/schedule\"," +
+                                            "\"errorMessage\":\"Loan not found with loanNumber : '1234567890'\"}"
+                            )
+                    )
+            ),
+            @ApiResponse(
+                    responseCode = "500",
+                    description = "HTTP Status: INTERNAL SERVER ERROR. Check 'errorMessage' field.",
+                    content = @Content(
+                            mediaType = "application/json",
+                            schema = @Schema(implementation = ResponseErrorDTO.class),
+                            examples = @ExampleObject(
+                                    name = "Internal server error: Invalid loan number format",
+                                    value = "{\"statusCode\":500,\"timestamp\":\"07-06-2025 15:22\"," +
+                                            "\"apiPath\":\"uri=/api/loans/123/schedule\",\"errorMessage" +
+                                            "\":\"fetchLoanSchedule.loanNumber: Loan number must be exactly 10 digits\"}"
+                            )
+                    )
+            )
+    })
+    @GetMapping("/{loanNumber}/schedule")
+    public ResponseEntity<ResponseDTO> fetchLoanSchedule(
+            @Pattern(regexp = "^\\d{10}$", message = "Loan number must be exactly 10 digits")
+            @PathVariable String loanNumber
+    ) {
+        return new ResponseEntity<>(ResponseSuccessDTO.<LoanScheduleShowDTO>builder()
+                .statusCode(HttpStatus.OK.value())
+                .timestamp(LocalDateTime.now())
+                .message(String.format(LoanConstants.MESSAGE_200, "Fetched amortization schedule for loan number "
+                        + loanNumber))
+                .data(loanService.fetchLoanSchedule(loanNumber))
+                .build(), HttpStatus.OK);
+    }
+
     @Operation(
             summary = "Update a loan",
             description = "REST API to update a loan"
@@ -240,8 +423,8 @@ public class LoanController {
                                             "\"message\":\"Successful operation: Updated loan details for" +
                                             " loan number 3009103338\",\"data\":{\"mobileNumber\":" +
                                             "\"+331920123\",\"loanNumber\":\"3009103338\",\"loanType\":" +
-                                            "\"BUSINESS\",\"totalLoan\":670000,\"amountPaid\":0," +
-                                            "\"outstandingAmount\":670000}}"
+                                            "\"BUSINESS\",\"totalLoan\":670000.00,\"amountPaid\":0.00," +
+                                            "\"outstandingAmount\":670000.00}}"
                             )
                     )
             ),
@@ -373,4 +556,40 @@ public class LoanController {
                 .build(), HttpStatus.OK);
     }
 
+    @Operation(
+            summary = "Ingest a file of repayments",
+            description = "REST API to apply a CSV file of repayments, with a 'loanNumber,amount' header and" +
+                    " one repayment per row, streaming back a CSV report with the outcome of every row." +
+                    " Rows are applied in chunks, so a failure midway leaves the earlier chunks applied."
+    )
+    @ApiResponses({
+            @ApiResponse(
+                    responseCode = "200",
+                    description = "HTTP Status: OK. Rows that couldn't be applied are reported as REJECTED" +
+                            " or FAILED (the latter may be retried).",
+                    content = @Content(
+                            mediaType = "text/csv",
+                            examples = @ExampleObject(
+                                    name = "Repayments ingested",
+                                    value = "line,loanNumber,amount,status,message\n" +
+                                            "2,6112860122,1200.80,APPLIED,\n" +
+                                            "3,1234567890,50.00,REJECTED,Loan not found with loanNumber : '1234567890'\n" +
+                                            "4,6112860122,abc,REJECTED,Amount must be a decimal number with at most" +
+                                            " 2 decimal places\n"
+                            )
+                    )
+            )
+    })
+    @PostMapping(path = "/repayments", consumes = "text/csv", produces = "text/csv")
+    public ResponseEntity<StreamingResponseBody> ingestRepayments(HttpServletRequest request) {
+        StreamingResponseBody body = outputStream -> {
+            Writer report = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8));
+            repaymentIngestion.ingest(new BufferedReader(new InputStreamReader(request.getInputStream(),
+                    StandardCharsets.UTF_8)), report);
+        };
+        return ResponseEntity.ok()
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
+    }
+
 }
@@ -0,0 +1,20 @@
+package com.bunshock.loans.dto.loan;
+
+import com.bunshock.loans.amortization.AmortizationSchedule;
+import com.bunshock.loans.enums.LoanType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@Builder
+public class LoanScheduleShowDTO {
+
+    private String loanNumber;
+    private LoanType loanType;
+    private AmortizationSchedule schedule;
+
+}
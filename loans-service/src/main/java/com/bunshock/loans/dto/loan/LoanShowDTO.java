@@ -1,6 +1,7 @@
 package com.bunshock.loans.dto.loan;
 
 import com.bunshock.loans.enums.LoanType;
+import com.bunshock.loans.money.JsonMoney;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Getter;
@@ -15,8 +16,11 @@ public class LoanShowDTO {
     private String mobileNumber;
     private String loanNumber;
     private LoanType loanType;
-    private Double totalLoan;
-    private Double amountPaid;
-    private Double outstandingAmount;
+    @JsonMoney
+    private long totalLoan;
+    @JsonMoney
+    private long amountPaid;
+    @JsonMoney
+    private long outstandingAmount;
 
 }
@@ -0,0 +1,25 @@
+package com.bunshock.loans.dto.loan;
+
+import com.bunshock.loans.enums.LoanType;
+import com.bunshock.loans.money.JsonMoney;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+@Builder
+public class LoanStatsShowDTO {
+
+    private LoanType loanType;
+    private long count;
+    @JsonMoney
+    private long totalLoan;
+    @JsonMoney
+    private long amountPaid;
+    @JsonMoney
+    private long outstandingAmount;
+
+}
@@ -1,5 +1,6 @@
 package com.bunshock.loans.dto.loan;
 
+import com.bunshock.loans.money.JsonMoney;
 import com.bunshock.loans.validation.ValidLoanType;
 import io.swagger.v3.oas.annotations.media.Schema;
 import jakarta.validation.constraints.Pattern;
@@ -37,23 +38,29 @@ public class LoanUpdateDTO {
 
     @Schema(
             description = "Total loan amount",
-            example = "20000.0"
+            type = "number",
+            example = "20000.00"
     )
     @Positive
-    private Double totalLoan;
+    @JsonMoney
+    private Long totalLoan;
 
     @Schema(
             description = "Amount paid",
-            example = "18500.0"
+            type = "number",
+            example = "18500.00"
     )
     @PositiveOrZero
-    private Double amountPaid;
+    @JsonMoney
+    private Long amountPaid;
 
     @Schema(
             description = "Outstanding amount",
-            example = "1500.0"
+            type = "number",
+            example = "1500.00"
     )
     @PositiveOrZero
-    private Double outstandingAmount;
+    @JsonMoney
+    private Long outstandingAmount;
 
 }
@@ -0,0 +1,44 @@
+package com.bunshock.loans.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+// Progress of the interest accrual of a day over a range of loan ids, so that an interrupted run resumes
+// after the last committed chunk instead of accruing interest twice
+@Entity
+@Table(name = "accrual_checkpoints")
+@NoArgsConstructor @AllArgsConstructor
+@Getter @Setter
+public class AccrualCheckpoint {
+
+    // Accrual date and first loan id of the partition, like 2025-06-07/1
+    @Id
+    @Column(name = "checkpoint_id", nullable = false)
+    private String checkpointId;
+
+    @Column(name = "accrual_date", nullable = false)
+    private LocalDate accrualDate;
+
+    @Column(name = "first_loan_id", nullable = false)
+    private Long firstLoanId;
+
+    @Column(name = "last_loan_id", nullable = false)
+    private Long lastLoanId;
+
+    // Loans with an id up to this one (exclusive) are accrued
+    @Column(name = "next_loan_id", nullable = false)
+    private Long nextLoanId;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+}
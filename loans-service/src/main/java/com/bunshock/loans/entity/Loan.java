@@ -8,7 +8,9 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
@@ -16,7 +18,11 @@ import lombok.Setter;
 import lombok.experimental.SuperBuilder;
 
 @Entity
-@Table(name = "loans")
+// Lookups by customer seek this index, which also yields their loans in loan id order. Lookups by loan
+// number seek the index of the unique constraint (named, so that db/loan-number-unique.sql can create it)
+@Table(name = "loans", indexes = @Index(
+        name = "idx_loan_mobile_number", columnList = "mobile_number, loan_id"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_loan_number", columnNames = "loan_number"))
 @NoArgsConstructor @AllArgsConstructor
 @Getter @Setter
 @SuperBuilder
@@ -38,12 +44,12 @@ public class Loan extends BaseEntity {
     private LoanType loanType;
 
     @Column(name = "total_loan", nullable = false)
-    private Double totalLoan;
+    private long totalLoan;
 
     @Column(name = "amount_paid", nullable = false)
-    private Double amountPaid;
+    private long amountPaid;
 
     @Column(name = "outstanding_amount", nullable = false)
-    private Double outstandingAmount;
+    private long outstandingAmount;
 
 }
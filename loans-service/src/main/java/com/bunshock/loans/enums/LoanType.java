@@ -1,9 +1,18 @@
 package com.bunshock.loans.enums;
 
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// Annual interest rate in basis points (1/100 of a percent) and term in months of each type of loan
+@AllArgsConstructor
+@Getter
 public enum LoanType {
-    PERSONAL,
-    BUSINESS,
-    STUDENT,
-    MORTGAGE,
-    AUTO
+    PERSONAL(1200, 60),
+    BUSINESS(950, 84),
+    STUDENT(550, 120),
+    MORTGAGE(650, 360),
+    AUTO(725, 72);
+
+    private final int annualRateBasisPoints;
+    private final int termMonths;
 }
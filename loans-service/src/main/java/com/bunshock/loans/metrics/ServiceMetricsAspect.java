@@ -0,0 +1,61 @@
+package com.bunshock.loans.metrics;
+
+import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.exception.IdGenerationException;
+import com.bunshock.loans.exception.ResourceNotFoundException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.AllArgsConstructor;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+/**
+ * Times every {@link com.bunshock.loans.service.ILoanService} method, tagged by method and outcome.
+ * The timers publish a percentile histogram, so that latency percentiles can be queried per operation.
+ */
+@Aspect
+@Component
+// Outermost advice, so that the timings include caching and transactions
+@Order(Ordered.HIGHEST_PRECEDENCE)
+@AllArgsConstructor
+public class ServiceMetricsAspect {
+
+    public static final String OUTCOME_SUCCESS = "success";
+
+    private final MeterRegistry meterRegistry;
+
+    @Around("execution(* com.bunshock.loans.service.ILoanService.*(..))")
+    public Object timeServiceMethod(ProceedingJoinPoint joinPoint) throws Throwable {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = OUTCOME_SUCCESS;
+        try {
+            return joinPoint.proceed();
+        } catch (Throwable e) {
+            outcome = outcomeOf(e);
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(LoanConstants.SERVICE_METRIC)
+                    .tag("service", "ILoanService")
+                    .tag("method", joinPoint.getSignature().getName())
+                    .tag("outcome", outcome)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
+
+    // Outcome tag value of an operation that failed with the given exception
+    public static String outcomeOf(Throwable e) {
+        return switch (e) {
+            case ResourceNotFoundException ignored -> "not-found";
+            case DataIntegrityViolationException ignored -> "conflict";
+            case IdGenerationException ignored -> "id-exhausted";
+            default -> "error";
+        };
+    }
+
+}
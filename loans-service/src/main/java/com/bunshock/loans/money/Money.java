@@ -0,0 +1,87 @@
+package com.bunshock.loans.money;
+
+/**
+ * Money amounts held as a primitive {@code long} count of minor units (cents), so that balances are
+ * exact and their arithmetic doesn't allocate. Arithmetic throws {@link ArithmeticException} on
+ * overflow instead of wrapping around.
+ */
+public final class Money {
+
+    public static final int SCALE = 2;
+    public static final long MINOR_UNITS = 100;
+
+    private Money() {
+    }
+
+    public static long ofMajor(long majorUnits) {
+        return Math.multiplyExact(majorUnits, MINOR_UNITS);
+    }
+
+    public static long add(long amount, long other) {
+        return Math.addExact(amount, other);
+    }
+
+    public static long subtract(long amount, long other) {
+        return Math.subtractExact(amount, other);
+    }
+
+    /**
+     * Parses a decimal amount in major units, like {@code 1200.8}, to minor units. Decimal places
+     * beyond {@link #SCALE} are only accepted if they're zeros, as the amount would be rounded otherwise.
+     *
+     * @throws NumberFormatException if the text isn't a plain decimal number or is out of range
+     */
+    public static long parse(CharSequence text) {
+        int length = text.length();
+        int i = 0;
+        boolean negative = length > 0 && text.charAt(0) == '-';
+        if (negative)
+            i++;
+
+        long amount = 0;
+        int digits = 0;
+        int decimals = -1;
+        try {
+            for (; i < length; i++) {
+                char c = text.charAt(i);
+                if (c == '.' && decimals < 0) {
+                    decimals = 0;
+                    continue;
+                }
+                if (c < '0' || c > '9')
+                    throw new NumberFormatException("Invalid amount: " + text);
+                digits++;
+                if (decimals >= 0 && ++decimals > SCALE) {
+                    if (c != '0')
+                        throw new NumberFormatException("Amount has more than " + SCALE + " decimal places: " + text);
+                    continue;
+                }
+                amount = Math.addExact(Math.multiplyExact(amount, 10), c - '0');
+            }
+            if (digits == 0 || decimals == 0)
+                throw new NumberFormatException("Invalid amount: " + text);
+            for (int scale = Math.max(decimals, 0); scale < SCALE; scale++)
+                amount = Math.multiplyExact(amount, 10);
+        } catch (ArithmeticException e) {
+            throw new NumberFormatException("Amount out of range: " + text);
+        }
+        return negative ? -amount : amount;
+    }
+
+    // Amount in major units with exactly SCALE decimal places, like 1200.80
+    public static String format(long amount) {
+        return appendTo(new StringBuilder(24), amount).toString();
+    }
+
+    public static StringBuilder appendTo(StringBuilder builder, long amount) {
+        long majorUnits = amount / MINOR_UNITS;
+        long minorUnits = Math.abs(amount % MINOR_UNITS);
+        if (amount < 0 && majorUnits == 0)
+            builder.append('-');
+        builder.append(majorUnits).append('.');
+        if (minorUnits < 10)
+            builder.append('0');
+        return builder.append(minorUnits);
+    }
+
+}
@@ -0,0 +1,21 @@
+package com.bunshock.loans.repository;
+
+import com.bunshock.loans.entity.AccrualCheckpoint;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+@Repository
+public interface IAccrualCheckpointRepository extends JpaRepository<AccrualCheckpoint, String> {
+
+    List<AccrualCheckpoint> findByAccrualDateOrderByFirstLoanIdAsc(LocalDate accrualDate);
+
+    @Query("SELECT DISTINCT c.accrualDate FROM AccrualCheckpoint c" +
+            " WHERE c.accrualDate < :accrualDate AND c.completedAt IS NULL ORDER BY c.accrualDate")
+    List<LocalDate> findIncompleteAccrualDatesBefore(@Param("accrualDate") LocalDate accrualDate);
+
+}
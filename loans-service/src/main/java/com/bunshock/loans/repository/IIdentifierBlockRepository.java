@@ -0,0 +1,24 @@
+package com.bunshock.loans.repository;
+
+import com.bunshock.loans.entity.IdentifierBlock;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public interface IIdentifierBlockRepository extends JpaRepository<IdentifierBlock, Long> {
+
+    // Plain insert (no merge): fails with a DataIntegrityViolationException if the block is already claimed.
+    // Committed on its own, so that a conflict doesn't doom the caller's transaction, and a rollback of the
+    // caller's transaction doesn't release a block whose numbers are already in the pool
+    @Transactional(propagation = Propagation.REQUIRES_NEW)
+    @Modifying
+    @Query(value = "INSERT INTO identifier_blocks (block_start, block_end, claimed_at) " +
+            "VALUES (:blockStart, :blockEnd, CURRENT_TIMESTAMP)", nativeQuery = true)
+    void claimBlock(@Param("blockStart") long blockStart, @Param("blockEnd") long blockEnd);
+
+}
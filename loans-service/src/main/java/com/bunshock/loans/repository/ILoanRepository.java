@@ -1,16 +1,81 @@
 package com.bunshock.loans.repository;
 
 import com.bunshock.loans.entity.Loan;
+import com.bunshock.loans.enums.LoanType;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface ILoanRepository extends JpaRepository<Loan, Long> {
 
+    // Totals of the loans of a type, amounts in minor units
+    interface LoanTypeTotals {
+        LoanType getLoanType();
+        long getCount();
+        long getTotalLoan();
+        long getAmountPaid();
+        long getOutstandingAmount();
+    }
+
+    // Narrow projections of a loan, for lookups that don't need the whole entity
+
+    interface LoanScheduleInputs {
+        LoanType getLoanType();
+        long getTotalLoan();
+    }
+
+    interface LoanAmounts {
+        LoanType getLoanType();
+        long getTotalLoan();
+        long getAmountPaid();
+        long getOutstandingAmount();
+    }
+
     boolean existsByLoanNumber(String loanNumber);
 
     Optional<Loan> findByLoanNumber(String loanNumber);
 
+    // Locks the loan until the end of the transaction, so that set-based writers (like the repayment
+    // ingestion) wait for an update of the whole entity instead of being overwritten by it
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l FROM Loan l WHERE l.loanNumber = :loanNumber")
+    Optional<Loan> findForUpdateByLoanNumber(@Param("loanNumber") String loanNumber);
+
+    Optional<LoanScheduleInputs> findScheduleInputsByLoanNumber(String loanNumber);
+
+    // Locks the loan until the end of the transaction, so that its amounts are still current when it's deleted
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT l.loanType AS loanType, l.totalLoan AS totalLoan, l.amountPaid AS amountPaid," +
+            " l.outstandingAmount AS outstandingAmount FROM Loan l WHERE l.loanNumber = :loanNumber")
+    Optional<LoanAmounts> findAmountsForUpdateByLoanNumber(@Param("loanNumber") String loanNumber);
+
+    // Bulk delete: doesn't load the loan first, unlike delete(entity)
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM Loan l WHERE l.loanNumber = :loanNumber")
+    int deleteByLoanNumber(@Param("loanNumber") String loanNumber);
+
+    List<Loan> findByMobileNumberOrderByLoanIdAsc(String mobileNumber);
+
+    List<Loan> findByLoanIdGreaterThanOrderByLoanIdAsc(Long loanId, Limit limit);
+
+    @Query("SELECT l.loanNumber FROM Loan l WHERE l.loanNumber IN :loanNumbers")
+    List<String> findExistingLoanNumbers(@Param("loanNumbers") Collection<String> loanNumbers);
+
+    @Query("SELECT l.loanType AS loanType, COUNT(l) AS count, SUM(l.totalLoan) AS totalLoan," +
+            " SUM(l.amountPaid) AS amountPaid, SUM(l.outstandingAmount) AS outstandingAmount" +
+            " FROM Loan l GROUP BY l.loanType")
+    List<LoanTypeTotals> sumByLoanType();
+
 }
@@ -1,7 +1,10 @@
 package com.bunshock.loans.service;
 
+import com.bunshock.loans.dto.CursorPageDTO;
 import com.bunshock.loans.dto.loan.LoanCreateDTO;
+import com.bunshock.loans.dto.loan.LoanScheduleShowDTO;
 import com.bunshock.loans.dto.loan.LoanShowDTO;
+import com.bunshock.loans.dto.loan.LoanStatsShowDTO;
 import com.bunshock.loans.dto.loan.LoanUpdateDTO;
 
 import java.util.List;
@@ -16,11 +19,13 @@ public interface ILoanService {
     void createLoan(LoanCreateDTO loanInput);
 
     /**
-     * Fetches the details for all loans
+     * Fetches a page of loan details, ordered by loan id
      *
-     * @return a list of all loans
+     * @param after the loan id to start after (exclusive), or null for the first page
+     * @param limit the maximum number of loans in the page
+     * @return a page of loans and the cursor for the next page
      */
-    List<LoanShowDTO> fetchAllLoans();
+    CursorPageDTO<LoanShowDTO> fetchAllLoans(Long after, int limit);
 
 
     /**
@@ -31,6 +36,23 @@ public interface ILoanService {
      */
     LoanShowDTO fetchLoan(String loanNumber);
 
+    /**
+     * Fetch the details of every loan of a customer, ordered by loan id.
+     *
+     * @param mobileNumber the mobile number of the customer
+     * @return the details of the customer's loans, empty if the customer has none
+     */
+    List<LoanShowDTO> fetchLoansByMobileNumber(String mobileNumber);
+
+    /**
+     * Fetches the amortization schedule of the loan with the given loan number, repaying its total
+     * at the rate and over the term of its type
+     *
+     * @param loanNumber the loan number of the loan
+     * @return the loan number and type, and the schedule
+     */
+    LoanScheduleShowDTO fetchLoanSchedule(String loanNumber);
+
     /**
      * Updates the loan details for the given loan number
      *
@@ -48,4 +70,11 @@ public interface ILoanService {
      */
     void deleteLoan(String loanNumber);
 
+    /**
+     * Fetches the totals of the loans of each type, kept up to date as loans change
+     *
+     * @return the count, total loan, amount paid and outstanding amount of the loans of each type
+     */
+    List<LoanStatsShowDTO> fetchLoanStats();
+
 }
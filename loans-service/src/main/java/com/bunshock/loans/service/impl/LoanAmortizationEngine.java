@@ -0,0 +1,44 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.amortization.AmortizationSchedule;
+import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.enums.LoanType;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+/**
+ * Amortization schedules of loans, memoized in a bounded in-memory cache.
+ * <p>
+ * A schedule depends only on the principal, rate and term, and loans are mostly created with the same
+ * amounts, so a few cached schedules serve most loans. Concurrent requests for a missing schedule compute
+ * it once.
+ */
+@Service
+public class LoanAmortizationEngine {
+
+    private record ScheduleKey(long principal, int annualRateBasisPoints, int termMonths) {}
+
+    private final Cache<ScheduleKey, AmortizationSchedule> schedules;
+
+    public LoanAmortizationEngine(
+            MeterRegistry meterRegistry,
+            @Value("${loan-amortization.maximum-schedules:10000}") long maximumSchedules
+    ) {
+        this.schedules = Caffeine.newBuilder()
+                .maximumSize(maximumSchedules)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, schedules, LoanConstants.AMORTIZATION_SCHEDULE_CACHE);
+    }
+
+    // Schedule repaying the total of a loan of this type, at the rate and over the term of the type
+    public AmortizationSchedule scheduleOf(long totalLoan, LoanType loanType) {
+        return schedules.get(new ScheduleKey(totalLoan, loanType.getAnnualRateBasisPoints(), loanType.getTermMonths()),
+                key -> AmortizationSchedule.calculate(key.principal(), key.annualRateBasisPoints(), key.termMonths()));
+    }
+
+}
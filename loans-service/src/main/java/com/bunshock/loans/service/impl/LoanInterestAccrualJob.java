@@ -0,0 +1,253 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.entity.AccrualCheckpoint;
+import com.bunshock.loans.enums.LoanType;
+import com.bunshock.loans.money.Money;
+import com.bunshock.loans.repository.IAccrualCheckpointRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Optional daily interest accrual, enabled by {@code loan-interest-accrual.enabled}: adds a day of
+ * interest, at the annual rate of its loan type, to the outstanding amount of every loan.
+ * <p>
+ * The loans table is split into partitions of consecutive loan ids, accrued in parallel on a bounded
+ * pool of threads. A partition is read and updated in chunks of loans, in loan id order, each one a
+ * transaction holding a batched update of its loans and the checkpoint of the partition. An interrupted
+ * run for a day resumes after the last committed chunk of each partition, so a loan is accrued at most
+ * once a day, and memory use only depends on the chunk size. Every run first finishes the days left
+ * incomplete by earlier runs, oldest first.
+ * <p>
+ * Runs on several nodes may overlap: a chunk only commits if the checkpoint of its partition is still
+ * where the chunk started, otherwise it's rolled back and the partition left to the run that moved it.
+ * <p>
+ * Loans created once the run for a day started are first accrued the day after.
+ */
+@Service
+@ConditionalOnProperty(name = "loan-interest-accrual.enabled", havingValue = "true")
+@Slf4j
+public class LoanInterestAccrualJob {
+
+    private static final long BASIS_POINTS_PER_DAY_YEAR = 365 * 10_000L;
+    private static final String CHUNK_SQL = "SELECT loan_id, loan_type, outstanding_amount FROM loans" +
+            " WHERE loan_id >= ? AND loan_id <= ? AND outstanding_amount > 0 ORDER BY loan_id LIMIT ?";
+    private static final String ACCRUE_SQL = "UPDATE loans SET outstanding_amount = outstanding_amount + ?," +
+            " updated_at = ?, updated_by = ? WHERE loan_id = ?";
+    private static final String PLAN_SQL = "INSERT INTO accrual_checkpoints (checkpoint_id, accrual_date," +
+            " first_loan_id, last_loan_id, next_loan_id) VALUES (?, ?, ?, ?, ?)";
+    private static final String CHECKPOINT_SQL = "UPDATE accrual_checkpoints SET next_loan_id = ?," +
+            " completed_at = ? WHERE checkpoint_id = ? AND next_loan_id = ?";
+
+    private final IAccrualCheckpointRepository checkpointRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditorAware<String> auditorAware;
+    private final LoanPortfolioAggregates portfolio;
+    private final ExecutorService executor;
+    private final long partitionSize;
+    private final int chunkSize;
+    private final Timer runTimer;
+    private final Counter accruedLoans;
+    private final AtomicBoolean running = new AtomicBoolean();
+
+    public LoanInterestAccrualJob(
+            IAccrualCheckpointRepository checkpointRepository,
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            AuditorAware<String> auditorAware,
+            LoanPortfolioAggregates portfolio,
+            MeterRegistry meterRegistry,
+            @Value("${loan-interest-accrual.parallelism:4}") int parallelism,
+            @Value("${loan-interest-accrual.partition-size:250000}") long partitionSize,
+            @Value("${loan-interest-accrual.chunk-size:1000}") int chunkSize
+    ) {
+        this.checkpointRepository = checkpointRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.auditorAware = auditorAware;
+        this.portfolio = portfolio;
+        this.executor = Executors.newFixedThreadPool(parallelism, Thread.ofPlatform()
+                .name("loan-interest-accrual-", 0).factory());
+        this.partitionSize = partitionSize;
+        this.chunkSize = chunkSize;
+        this.runTimer = Timer.builder(LoanConstants.INTEREST_ACCRUAL_METRIC)
+                .description("Duration of the interest accrual runs")
+                .register(meterRegistry);
+        this.accruedLoans = Counter.builder(LoanConstants.INTEREST_ACCRUAL_METRIC + ".loans")
+                .description("Loans accrued a day of interest")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(cron = "${loan-interest-accrual.cron:0 0 2 * * *}")
+    public void run() {
+        accrue(LocalDate.now());
+    }
+
+    /**
+     * Accrues a day of interest to every loan not yet accrued for that day, after finishing the earlier
+     * days that runs left incomplete.
+     *
+     * @return the number of loans accrued by this call, or -1 if a run was already in progress
+     */
+    public long accrue(LocalDate accrualDate) {
+        if (!running.compareAndSet(false, true)) {
+            log.warn("Skipped interest accrual for {}: a run is already in progress", accrualDate);
+            return -1;
+        }
+        try {
+            return runTimer.recordCallable(() -> {
+                long accrued = 0;
+                for (LocalDate incomplete : checkpointRepository.findIncompleteAccrualDatesBefore(accrualDate)) {
+                    log.info("Resuming interest accrual for {}", incomplete);
+                    accrued += accruePartitions(incomplete);
+                }
+                return accrued + accruePartitions(accrualDate);
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("Interest accrual for " + accrualDate + " failed", e);
+        } finally {
+            running.set(false);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    private long accruePartitions(LocalDate accrualDate) throws InterruptedException, ExecutionException {
+        List<Future<Long>> partitions = new ArrayList<>();
+        for (AccrualCheckpoint checkpoint : checkpointsOf(accrualDate)) {
+            if (checkpoint.getCompletedAt() == null)
+                partitions.add(executor.submit(() -> accruePartition(checkpoint)));
+        }
+
+        // Every partition runs to its end even if another one fails, so a rerun has less left to do
+        long accrued = 0;
+        ExecutionException failure = null;
+        for (Future<Long> partition : partitions) {
+            try {
+                accrued += partition.get();
+            } catch (ExecutionException e) {
+                failure = e;
+            }
+        }
+        if (failure != null)
+            throw failure;
+        log.info("Accrued interest for {} to {} loans in {} partitions", accrualDate, accrued, partitions.size());
+        return accrued;
+    }
+
+    // Checkpoints of the day's partitions, planned over the current loan ids by the day's first run.
+    // They're inserted, not saved, so that a run planning them concurrently can't reset their progress
+    private List<AccrualCheckpoint> checkpointsOf(LocalDate accrualDate) {
+        List<AccrualCheckpoint> checkpoints = checkpointRepository.findByAccrualDateOrderByFirstLoanIdAsc(accrualDate);
+        if (!checkpoints.isEmpty())
+            return checkpoints;
+
+        Long[] range = jdbcTemplate.queryForObject("SELECT MIN(loan_id), MAX(loan_id) FROM loans",
+                (row, rowNumber) -> new Long[] { row.getObject(1, Long.class), row.getObject(2, Long.class) });
+        if (range == null || range[0] == null)
+            return List.of();
+        for (long first = range[0]; first <= range[1]; first += partitionSize) {
+            long last = Math.min(range[1], first + partitionSize - 1);
+            try {
+                jdbcTemplate.update(PLAN_SQL, accrualDate + "/" + first, accrualDate, first, last, first);
+            } catch (DuplicateKeyException e) {
+                // Planned by another run, over the loan ids of its time
+                break;
+            }
+        }
+        return checkpointRepository.findByAccrualDateOrderByFirstLoanIdAsc(accrualDate);
+    }
+
+    private long accruePartition(AccrualCheckpoint checkpoint) {
+        long accrued = 0;
+        long nextLoanId = checkpoint.getNextLoanId();
+        while (nextLoanId <= checkpoint.getLastLoanId()) {
+            long from = nextLoanId;
+            Map<LoanType, Long> interestByType = new EnumMap<>(LoanType.class);
+            long[] chunk = transactionTemplate.execute(status -> {
+                long[] accruedChunk = accrueChunk(checkpoint, from, interestByType);
+                if (accruedChunk == null)
+                    status.setRollbackOnly();
+                return accruedChunk;
+            });
+            if (chunk == null) {
+                log.info("Left interest accrual of {} to another run, past loan id {}", checkpoint.getCheckpointId(),
+                        from);
+                break;
+            }
+            interestByType.forEach(portfolio::accrued);
+            accrued += chunk[1];
+            accruedLoans.increment(chunk[1]);
+            nextLoanId = chunk[0];
+        }
+        return accrued;
+    }
+
+    // Accrues the next chunk of the partition and moves its checkpoint past it, returning the next loan id
+    // to accrue and the number of loans accrued, or null (the chunk is to be rolled back) if another run
+    // moved the checkpoint since the chunk started
+    private long[] accrueChunk(AccrualCheckpoint checkpoint, long from, Map<LoanType, Long> interestByType) {
+        LocalDateTime now = LocalDateTime.now();
+        String auditor = auditorAware.getCurrentAuditor().orElse(null);
+        List<Object[]> rows = new ArrayList<>(chunkSize);
+        long[] lastLoanId = { from - 1 };
+        int[] loans = { 0 };
+        jdbcTemplate.query(CHUNK_SQL, row -> {
+            long loanId = row.getLong(1);
+            LoanType loanType = LoanType.valueOf(row.getString(2));
+            long interest = dailyInterest(row.getLong(3), loanType.getAnnualRateBasisPoints());
+            if (interest > 0) {
+                rows.add(new Object[] { interest, now, auditor, loanId });
+                interestByType.merge(loanType, interest, Money::add);
+            }
+            lastLoanId[0] = loanId;
+            loans[0]++;
+        }, from, checkpoint.getLastLoanId(), chunkSize);
+
+        // A short chunk is the last one of the partition
+        boolean completed = loans[0] < chunkSize;
+        long nextLoanId = completed ? checkpoint.getLastLoanId() + 1 : lastLoanId[0] + 1;
+        if (!rows.isEmpty())
+            jdbcTemplate.batchUpdate(ACCRUE_SQL, rows);
+        if (jdbcTemplate.update(CHECKPOINT_SQL, nextLoanId, completed ? now : null, checkpoint.getCheckpointId(),
+                from) == 0)
+            return null;
+        return new long[] { nextLoanId, rows.size() };
+    }
+
+    // A day of interest at the annual rate, rounded half up to the minor unit
+    static long dailyInterest(long outstandingAmount, int annualRateBasisPoints) {
+        long scaledInterest = Math.multiplyExact(outstandingAmount, annualRateBasisPoints);
+        return scaledInterest / BASIS_POINTS_PER_DAY_YEAR
+                + (scaledInterest % BASIS_POINTS_PER_DAY_YEAR >= BASIS_POINTS_PER_DAY_YEAR / 2 ? 1 : 0);
+    }
+
+}
@@ -0,0 +1,249 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.exception.IdGenerationException;
+import com.bunshock.loans.repository.ILoanRepository;
+import com.bunshock.loans.repository.IIdentifierBlockRepository;
+import com.bunshock.loans.metrics.ServiceMetricsAspect;
+import com.bunshock.loans.service.IdentifierGenerator;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out loan numbers from an in-memory pool of pre-reserved numbers.
+ * <p>
+ * Numbers are reserved in blocks of consecutive numbers. A block is claimed by inserting
+ * its start into the identifier_blocks table, so its primary key guarantees that no other
+ * instance can claim (and hand out) the same block. Handing out a number is then a lock-free
+ * poll from memory, with no existence check against the loans table. The pool is refilled in
+ * the background once it drops below a threshold.
+ * <p>
+ * Loan numbers generated before blocks existed may fall into a claimed block. They're all put in a
+ * {@link LongBloomFilter} at startup, so that only the numbers of a block the filter can't rule out
+ * are checked against the loans table, and a block with none of them needs no check at all. Numbers
+ * created since startup can't fall into a block claimed later, as they come from claimed blocks too.
+ */
+@Service
+@Slf4j
+public class LoanNumberPoolService implements IdentifierGenerator {
+
+    private static final long MIN_LOAN_NUMBER = 1_000_000_000L;
+    private static final long MAX_LOAN_NUMBER = 9_999_999_999L;
+    private static final int MAX_CLAIM_ATTEMPTS = 10;
+
+    private final LoanNumberGeneratorService loanNumberGenerator;
+    private final IIdentifierBlockRepository identifierBlockRepository;
+    private final ILoanRepository loanRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final int blockSize;
+    private final int refillThreshold;
+    private final MeterRegistry meterRegistry;
+    private final Timer generationTimer;
+    private final Timer claimSuccessTimer;
+    private final Timer claimConflictTimer;
+    private final LongBloomFilter existingNumbers;
+    private final Counter definiteMisses;
+    private final Counter possibleHits;
+
+    private final SecureRandom secureRandom = new SecureRandom();
+    private final ConcurrentLinkedQueue<String> pool = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger available = new AtomicInteger();
+    private final AtomicBoolean refillScheduled = new AtomicBoolean();
+    private final ExecutorService refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "loan-number-pool-refill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public LoanNumberPoolService(
+            LoanNumberGeneratorService loanNumberGenerator,
+            IIdentifierBlockRepository identifierBlockRepository,
+            ILoanRepository loanRepository,
+            JdbcTemplate jdbcTemplate,
+            @Value("${identifier-pool.block-size:1000}") int blockSize,
+            @Value("${identifier-pool.refill-threshold:200}") int refillThreshold,
+            @Value("${identifier-pool.bloom-filter.expected-insertions:1000000}") long expectedInsertions,
+            @Value("${identifier-pool.bloom-filter.false-positive-probability:0.01}") double falsePositiveProbability,
+            MeterRegistry meterRegistry
+    ) {
+        this.loanNumberGenerator = loanNumberGenerator;
+        this.identifierBlockRepository = identifierBlockRepository;
+        this.loanRepository = loanRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.blockSize = blockSize;
+        this.refillThreshold = refillThreshold;
+        this.meterRegistry = meterRegistry;
+        this.generationTimer = timer(LoanConstants.ID_GENERATION_METRIC, ServiceMetricsAspect.OUTCOME_SUCCESS);
+        this.claimSuccessTimer = timer(LoanConstants.BLOCK_CLAIM_METRIC, ServiceMetricsAspect.OUTCOME_SUCCESS);
+        this.claimConflictTimer = timer(LoanConstants.BLOCK_CLAIM_METRIC, "conflict");
+
+        this.existingNumbers = new LongBloomFilter(expectedInsertions, falsePositiveProbability);
+        this.definiteMisses = probeCounter("definite-miss");
+        this.possibleHits = probeCounter("possible-hit");
+        Gauge.builder(LoanConstants.BLOOM_FILTER_METRIC + ".size", existingNumbers, LongBloomFilter::bitSize)
+                .baseUnit("bits")
+                .register(meterRegistry);
+        Gauge.builder(LoanConstants.BLOOM_FILTER_METRIC + ".false.positive.probability", () -> falsePositiveProbability)
+                .tag("kind", "configured")
+                .register(meterRegistry);
+        Gauge.builder(LoanConstants.BLOOM_FILTER_METRIC + ".false.positive.probability", existingNumbers,
+                        LongBloomFilter::estimatedFalsePositiveProbability)
+                .tag("kind", "estimated")
+                .register(meterRegistry);
+        Gauge.builder(LoanConstants.BLOOM_FILTER_METRIC + ".elements", existingNumbers,
+                        LongBloomFilter::estimatedElementCount)
+                .register(meterRegistry);
+    }
+
+    // Runs before the first refill, which is triggered once the application is ready
+    @PostConstruct
+    public void loadExistingNumbers() {
+        jdbcTemplate.query("SELECT loan_number FROM loans", statement -> statement.setFetchSize(1000),
+                row -> { existingNumbers.put(Long.parseLong(row.getString(1))); });
+    }
+
+    // Returns a reserved loan number that has never been handed out
+    @Override
+    public String generateId() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            String loanNumber = pool.poll();
+            while (loanNumber == null) {
+                // Pool drained faster than the background refill: reserve on the caller's thread
+                reserveBlock();
+                loanNumber = pool.poll();
+            }
+            if (available.decrementAndGet() < refillThreshold)
+                scheduleRefill();
+            // Not removed when the loan is deleted (or never created): a false positive at worst
+            existingNumbers.put(Long.parseLong(loanNumber));
+            sample.stop(generationTimer);
+            return loanNumber;
+        } catch (RuntimeException e) {
+            sample.stop(timer(LoanConstants.ID_GENERATION_METRIC, ServiceMetricsAspect.outcomeOf(e)));
+            throw e;
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleRefill() {
+        if (!refillScheduled.compareAndSet(false, true))
+            return;
+        refillExecutor.execute(() -> {
+            try {
+                reserveBlock();
+            } catch (RuntimeException e) {
+                // Retried on the next trigger, or on the caller's thread if the pool runs dry
+                log.warn("Failed to reserve a block of loan numbers", e);
+            } finally {
+                refillScheduled.set(false);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refillExecutor.shutdownNow();
+    }
+
+    /**
+     * Claims a random block of loan numbers not claimed by any instance before,
+     * and adds its numbers to the pool in random order.
+     *
+     * @throws IdGenerationException if no free block is found after the specified number of attempts
+     */
+    private synchronized void reserveBlock() {
+        // Another thread may have refilled the pool while this one was waiting
+        if (!pool.isEmpty() && available.get() >= refillThreshold)
+            return;
+
+        for (int attempt = 1; attempt <= MAX_CLAIM_ATTEMPTS; attempt++) {
+            // The existing random generator picks which block to claim
+            long offset = Long.parseLong(loanNumberGenerator.generateId()) - MIN_LOAN_NUMBER;
+            long blockStart = MIN_LOAN_NUMBER + offset - offset % blockSize;
+            long blockEnd = Math.min(blockStart + blockSize - 1, MAX_LOAN_NUMBER);
+
+            Timer.Sample claim = Timer.start(meterRegistry);
+            try {
+                identifierBlockRepository.claimBlock(blockStart, blockEnd);
+            } catch (DataIntegrityViolationException e) {
+                // Block already claimed (by this or another instance)
+                claim.stop(claimConflictTimer);
+                continue;
+            }
+            claim.stop(claimSuccessTimer);
+
+            fillPool(blockStart, blockEnd);
+            return;
+        }
+        throw new IdGenerationException("Failed to reserve a block of unique loan" +
+                " numbers after " + MAX_CLAIM_ATTEMPTS + " attempts");
+    }
+
+    private void fillPool(long blockStart, long blockEnd) {
+        // Only the numbers the filter can't rule out may have been generated before blocks existed
+        List<String> possiblyTaken = new ArrayList<>();
+        for (long number = blockStart; number <= blockEnd; number++) {
+            if (existingNumbers.mightContain(number))
+                possiblyTaken.add(formatLoanNumber(number));
+        }
+        possibleHits.increment(possiblyTaken.size());
+        definiteMisses.increment(blockEnd - blockStart + 1 - possiblyTaken.size());
+        Set<String> taken = possiblyTaken.isEmpty()
+                ? Set.of()
+                : new HashSet<>(loanRepository.findExistingLoanNumbers(possiblyTaken));
+
+        List<String> loanNumbers = new ArrayList<>((int) (blockEnd - blockStart + 1));
+        for (long number = blockStart; number <= blockEnd; number++) {
+            String loanNumber = formatLoanNumber(number);
+            if (!taken.contains(loanNumber))
+                loanNumbers.add(loanNumber);
+        }
+        // Don't hand out consecutive (guessable) numbers
+        Collections.shuffle(loanNumbers, secureRandom);
+
+        pool.addAll(loanNumbers);
+        available.addAndGet(loanNumbers.size());
+    }
+
+    private Counter probeCounter(String result) {
+        return Counter.builder(LoanConstants.BLOOM_FILTER_METRIC + ".probes")
+                .tag("result", result)
+                .register(meterRegistry);
+    }
+
+    private Timer timer(String name, String outcome) {
+        return Timer.builder(name)
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+    }
+
+    private static String formatLoanNumber(long number) {
+        return String.format("%010d", number);
+    }
+
+}
@@ -0,0 +1,132 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.dto.loan.LoanStatsShowDTO;
+import com.bunshock.loans.entity.Loan;
+import com.bunshock.loans.enums.LoanType;
+import com.bunshock.loans.repository.ILoanRepository;
+import jakarta.annotation.PostConstruct;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of the loans of each type: count, total loan, amount paid and outstanding amount.
+ * <p>
+ * Totals are computed from the loans table on startup, then kept up to date by every writer of the
+ * table in this service: the loan service, the repayment ingestion and the interest accrual each add
+ * the change they made once it's committed, so reading them costs the same whatever the number of
+ * loans. Changes are added to {@link LongAdder}s, so concurrent writers don't contend. A read sums each
+ * total separately, so it may see only part of a change that is applied at the same moment.
+ * <p>
+ * Changes made to the table outside of this service aren't seen: {@link #rebuild()} recomputes the
+ * totals from the table, but changes committed while it runs may then be counted twice or not at all.
+ */
+@Service
+public class LoanPortfolioAggregates {
+
+    // Type and amounts of a loan, taken before updating or deleting it
+    public record Snapshot(LoanType loanType, long totalLoan, long amountPaid, long outstandingAmount) {
+
+        public static Snapshot of(Loan loan) {
+            return new Snapshot(loan.getLoanType(), loan.getTotalLoan(), loan.getAmountPaid(),
+                    loan.getOutstandingAmount());
+        }
+
+        public static Snapshot of(ILoanRepository.LoanAmounts loan) {
+            return new Snapshot(loan.getLoanType(), loan.getTotalLoan(), loan.getAmountPaid(),
+                    loan.getOutstandingAmount());
+        }
+
+    }
+
+    private static final class Totals {
+        private final LongAdder count = new LongAdder();
+        private final LongAdder totalLoan = new LongAdder();
+        private final LongAdder amountPaid = new LongAdder();
+        private final LongAdder outstandingAmount = new LongAdder();
+
+        void add(long loans, long totalLoanDelta, long amountPaidDelta, long outstandingAmountDelta) {
+            count.add(loans);
+            totalLoan.add(totalLoanDelta);
+            amountPaid.add(amountPaidDelta);
+            outstandingAmount.add(outstandingAmountDelta);
+        }
+    }
+
+    private final ILoanRepository loanRepository;
+    private final Map<LoanType, Totals> totals = new EnumMap<>(LoanType.class);
+
+    public LoanPortfolioAggregates(ILoanRepository loanRepository) {
+        this.loanRepository = loanRepository;
+        for (LoanType loanType : LoanType.values())
+            totals.put(loanType, new Totals());
+    }
+
+    // Recomputes the totals from the loans table. Changes made while it runs may be lost
+    @PostConstruct
+    public void rebuild() {
+        totals.values().forEach(total -> {
+            total.count.reset();
+            total.totalLoan.reset();
+            total.amountPaid.reset();
+            total.outstandingAmount.reset();
+        });
+        for (ILoanRepository.LoanTypeTotals sums : loanRepository.sumByLoanType())
+            totals.get(sums.getLoanType()).add(sums.getCount(), sums.getTotalLoan(), sums.getAmountPaid(),
+                    sums.getOutstandingAmount());
+    }
+
+    // Applies a change of the totals once the current transaction commits, if there is one
+    public void afterCommit(Runnable change) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            change.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                change.run();
+            }
+        });
+    }
+
+    public void created(Loan loan) {
+        totals.get(loan.getLoanType()).add(1, loan.getTotalLoan(), loan.getAmountPaid(), loan.getOutstandingAmount());
+    }
+
+    public void deleted(Snapshot loan) {
+        totals.get(loan.loanType()).add(-1, -loan.totalLoan(), -loan.amountPaid(), -loan.outstandingAmount());
+    }
+
+    public void updated(Snapshot before, Loan after) {
+        deleted(before);
+        created(after);
+    }
+
+    public void repaid(LoanType loanType, long amount) {
+        totals.get(loanType).add(0, 0, amount, -amount);
+    }
+
+    public void accrued(LoanType loanType, long interest) {
+        totals.get(loanType).add(0, 0, 0, interest);
+    }
+
+    public List<LoanStatsShowDTO> stats() {
+        List<LoanStatsShowDTO> stats = new ArrayList<>(totals.size());
+        totals.forEach((loanType, total) -> stats.add(LoanStatsShowDTO.builder()
+                .loanType(loanType)
+                .count(total.count.sum())
+                .totalLoan(total.totalLoan.sum())
+                .amountPaid(total.amountPaid.sum())
+                .outstandingAmount(total.outstandingAmount.sum())
+                .build()));
+        return stats;
+    }
+
+}
@@ -0,0 +1,241 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.enums.LoanType;
+import com.bunshock.loans.money.Money;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.AuditorAware;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Applies a file of repayments, like the daily ones of the payment processor, to the loans.
+ * <p>
+ * The file is CSV with a {@code loanNumber,amount} header and one repayment per row, the amount being in
+ * major units, like {@code 1200.80}. It's read and applied in chunks of rows, each in its own transaction:
+ * the loans of a chunk are locked and read with a single query, then updated with one batched statement
+ * holding a row per loan, summing its repayments. A repayment is rejected if its loan doesn't exist or if
+ * it exceeds what's left outstanding, without rejecting the other repayments of the loan.
+ * <p>
+ * The outcome of every row is written to a CSV report as soon as its chunk is done, so neither the file
+ * nor the report is ever held in memory whole.
+ */
+@Service
+@Slf4j
+public class LoanRepaymentIngestionService {
+
+    public static final String REPORT_HEADER = "line,loanNumber,amount,status,message";
+
+    private static final Pattern LOAN_NUMBER = Pattern.compile("^\\d{10}$");
+    private static final String REPAY_SQL = "UPDATE loans SET amount_paid = amount_paid + ?," +
+            " outstanding_amount = outstanding_amount - ?, updated_at = ?, updated_by = ?" +
+            " WHERE loan_number = ? AND outstanding_amount >= ?";
+
+    private enum Status { APPLIED, REJECTED, FAILED }
+
+    private static final class Repayment {
+
+        private final long line;
+        private final String loanNumber;
+        private final String amountText;
+        private long amount;
+        private Status status;
+        private String message;
+
+        Repayment(long line, String loanNumber, String amountText) {
+            this.line = line;
+            this.loanNumber = loanNumber;
+            this.amountText = amountText;
+        }
+
+        void reject(Status status, String message) {
+            this.status = status;
+            this.message = message;
+        }
+
+    }
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final AuditorAware<String> auditorAware;
+    private final LoanPortfolioAggregates portfolio;
+    private final int chunkSize;
+
+    public LoanRepaymentIngestionService(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            AuditorAware<String> auditorAware,
+            LoanPortfolioAggregates portfolio,
+            @Value("${loan-repayment-ingestion.chunk-size:1000}") int chunkSize
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.auditorAware = auditorAware;
+        this.portfolio = portfolio;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Applies the repayments of the file, writing the outcome of each row to the report.
+     *
+     * @throws IOException if reading the file or writing the report fails; chunks applied until then stay applied
+     */
+    public void ingest(BufferedReader file, Writer report) throws IOException {
+        report.write(REPORT_HEADER);
+        report.write('\n');
+
+        long line = 1;
+        String header = file.readLine();
+        if (header == null || !header.strip().equalsIgnoreCase("loanNumber,amount")) {
+            writeRow(report, new Repayment(line, "", ""), Status.REJECTED, "Expected header: loanNumber,amount");
+            report.flush();
+            return;
+        }
+
+        long applied = 0;
+        long rows = 0;
+        List<Repayment> chunk = new ArrayList<>(chunkSize);
+        String text;
+        while ((text = file.readLine()) != null) {
+            line++;
+            if (text.isBlank())
+                continue;
+            chunk.add(parse(line, text));
+            if (chunk.size() == chunkSize) {
+                applied += apply(chunk, report);
+                rows += chunk.size();
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            applied += apply(chunk, report);
+            rows += chunk.size();
+        }
+        report.flush();
+        log.debug("Ingested {} repayments, {} applied", rows, applied);
+    }
+
+    private static Repayment parse(long line, String text) {
+        int comma = text.indexOf(',');
+        Repayment repayment = comma < 0
+                ? new Repayment(line, text.strip(), "")
+                : new Repayment(line, text.substring(0, comma).strip(), text.substring(comma + 1).strip());
+        if (!LOAN_NUMBER.matcher(repayment.loanNumber).matches()) {
+            repayment.reject(Status.REJECTED, "Loan number must be exactly 10 digits");
+            return repayment;
+        }
+        try {
+            repayment.amount = Money.parse(repayment.amountText);
+            if (repayment.amount <= 0)
+                repayment.reject(Status.REJECTED, "Amount must be positive");
+        } catch (NumberFormatException e) {
+            repayment.reject(Status.REJECTED, "Amount must be a decimal number with at most 2 decimal places");
+        }
+        return repayment;
+    }
+
+    // Applies the valid repayments of the chunk and writes the outcome of all of them, returning how many applied
+    private int apply(List<Repayment> chunk, Writer report) throws IOException {
+        Map<String, List<Repayment>> byLoan = new LinkedHashMap<>();
+        for (Repayment repayment : chunk) {
+            if (repayment.status == null)
+                byLoan.computeIfAbsent(repayment.loanNumber, key -> new ArrayList<>()).add(repayment);
+        }
+
+        int applied = 0;
+        if (!byLoan.isEmpty()) {
+            Map<LoanType, Long> repaidByType = new EnumMap<>(LoanType.class);
+            try {
+                applied = transactionTemplate.execute(status -> applyInTransaction(byLoan, repaidByType));
+                repaidByType.forEach(portfolio::repaid);
+            } catch (RuntimeException e) {
+                log.warn("Failed to apply a chunk of {} repayments", chunk.size(), e);
+                byLoan.values().forEach(repayments -> repayments.forEach(repayment ->
+                        repayment.reject(Status.FAILED, "Chunk could not be applied, retry the row")));
+                applied = 0;
+            }
+        }
+
+        for (Repayment repayment : chunk)
+            writeRow(report, repayment, repayment.status, repayment.message);
+        return applied;
+    }
+
+    private int applyInTransaction(Map<String, List<Repayment>> byLoan, Map<LoanType, Long> repaidByType) {
+        String placeholders = String.join(",", Collections.nCopies(byLoan.size(), "?"));
+        Map<String, Long> outstandingAmounts = new HashMap<>();
+        Map<String, LoanType> loanTypes = new HashMap<>();
+        jdbcTemplate.query("SELECT loan_number, outstanding_amount, loan_type FROM loans WHERE loan_number IN ("
+                        + placeholders + ") FOR UPDATE",
+                row -> {
+                    outstandingAmounts.put(row.getString(1), row.getLong(2));
+                    loanTypes.put(row.getString(1), LoanType.valueOf(row.getString(3)));
+                }, byLoan.keySet().toArray());
+
+        // Repayments of a loan are applied in file order, as long as they don't exceed what's outstanding
+        LocalDateTime now = LocalDateTime.now();
+        String auditor = auditorAware.getCurrentAuditor().orElse(null);
+        List<Object[]> rows = new ArrayList<>(byLoan.size());
+        List<Repayment> appliedRepayments = new ArrayList<>();
+        byLoan.forEach((loanNumber, repayments) -> {
+            Long outstanding = outstandingAmounts.get(loanNumber);
+            long total = 0;
+            for (Repayment repayment : repayments) {
+                if (outstanding == null) {
+                    repayment.reject(Status.REJECTED, "Loan not found with loanNumber : '" + loanNumber + "'");
+                } else if (repayment.amount > outstanding - total) {
+                    repayment.reject(Status.REJECTED, "Amount exceeds the outstanding amount of "
+                            + Money.format(outstanding - total));
+                } else {
+                    total = Money.add(total, repayment.amount);
+                    appliedRepayments.add(repayment);
+                }
+            }
+            if (total > 0) {
+                rows.add(new Object[] { total, total, now, auditor, loanNumber, total });
+                repaidByType.merge(loanTypes.get(loanNumber), total, Money::add);
+            }
+        });
+
+        int[] updateCounts = jdbcTemplate.batchUpdate(REPAY_SQL, rows);
+        for (int count : updateCounts) {
+            // Rows are locked, so this only happens if they changed in a way the lock doesn't cover
+            if (count == 0)
+                throw new IllegalStateException("Loan changed while applying repayments");
+        }
+        appliedRepayments.forEach(repayment -> repayment.status = Status.APPLIED);
+        return appliedRepayments.size();
+    }
+
+    private static void writeRow(Writer report, Repayment repayment, Status status, String message)
+            throws IOException {
+        report.append(String.valueOf(repayment.line)).append(',')
+                .append(csv(repayment.loanNumber)).append(',')
+                .append(csv(repayment.amountText)).append(',')
+                .append(status.name()).append(',')
+                .append(message == null ? "" : csv(message)).append('\n');
+    }
+
+    // Quotes values that would break the row, doubling their quotes
+    private static String csv(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0)
+            return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+}
@@ -1,18 +1,23 @@
 package com.bunshock.loans.service.impl;
 
 import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.dto.CursorPageDTO;
 import com.bunshock.loans.dto.loan.LoanCreateDTO;
+import com.bunshock.loans.dto.loan.LoanScheduleShowDTO;
 import com.bunshock.loans.dto.loan.LoanShowDTO;
+import com.bunshock.loans.dto.loan.LoanStatsShowDTO;
 import com.bunshock.loans.dto.loan.LoanUpdateDTO;
 import com.bunshock.loans.entity.Loan;
 import com.bunshock.loans.enums.LoanType;
-import com.bunshock.loans.exception.IdGenerationException;
 import com.bunshock.loans.exception.ResourceNotFoundException;
 import com.bunshock.loans.mapper.LoanMapper;
+import com.bunshock.loans.money.Money;
 import com.bunshock.loans.repository.ILoanRepository;
 import com.bunshock.loans.service.ILoanService;
 import lombok.AllArgsConstructor;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
@@ -21,48 +26,41 @@ import java.util.List;
 public class LoanService implements ILoanService {
 
     private final ILoanRepository loanRepository;
-    private final LoanNumberGeneratorService loanNumberGenerator;
-
-    /**
-     * Generates a unique loan number by attempting a number of times to produce
-     * a new loan number that doesn't exist in the repository.
-     *
-     * @return a unique loan number as a String
-     * @throws IdGenerationException if unable to generate a unique loan number
-     *         after the specified number of attempts
-     */
-    private String generateUniqueLoanNumber() {
-        int maxAttempts = 10;
-        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
-            String newLoanNumber = loanNumberGenerator.generateId();
-            if (!loanRepository.existsByLoanNumber(newLoanNumber)) {
-                return newLoanNumber;
-            }
-        }
-        throw new IdGenerationException("Failed to generate a unique loan" +
-                " number after " + maxAttempts + " attempts");
-    }
+    private final LoanNumberPoolService loanNumberPool;
+    private final LoanAmortizationEngine amortizationEngine;
+    private final LoanPortfolioAggregates portfolio;
 
     @Override
     public void createLoan(LoanCreateDTO loanInput) {
         // TODO: Outstanding amount should be calculated as the difference
         //  between total loan and amount paid (initially, it will be total loan)
+        long amountPaid = 0L;
         Loan loan = Loan.builder()
                 .mobileNumber(loanInput.getMobileNumber())
-                .loanNumber(generateUniqueLoanNumber())
+                .loanNumber(loanNumberPool.generateId())
                 .loanType(LoanType.valueOf(loanInput.getLoanType()))
                 .totalLoan(LoanConstants.NEW_LOAN_LIMIT)
-                .amountPaid(0.0)
-                .outstandingAmount(LoanConstants.NEW_LOAN_LIMIT)
+                .amountPaid(amountPaid)
+                .outstandingAmount(Money.subtract(LoanConstants.NEW_LOAN_LIMIT, amountPaid))
                 .build();
-        loanRepository.save(loan);
+        portfolio.created(loanRepository.save(loan));
     }
 
     @Override
-    public List<LoanShowDTO> fetchAllLoans() {
-        return loanRepository.findAll().stream()
+    public CursorPageDTO<LoanShowDTO> fetchAllLoans(Long after, int limit) {
+        // Fetch one extra row to know whether there is a next page
+        List<Loan> loans = loanRepository.findByLoanIdGreaterThanOrderByLoanIdAsc(
+                after == null ? 0L : after, Limit.of(limit + 1));
+
+        List<LoanShowDTO> page = loans.stream()
+                .limit(limit)
                 .map(LoanMapper::mapToLoanShowDTO)
                 .toList();
+        String nextCursor = loans.size() > limit
+                ? String.valueOf(loans.get(limit - 1).getLoanId())
+                : null;
+
+        return new CursorPageDTO<>(page, nextCursor);
     }
 
     @Override
@@ -73,9 +71,30 @@ public class LoanService implements ILoanService {
     }
 
     @Override
+    public List<LoanShowDTO> fetchLoansByMobileNumber(String mobileNumber) {
+        return loanRepository.findByMobileNumberOrderByLoanIdAsc(mobileNumber).stream()
+                .map(LoanMapper::mapToLoanShowDTO)
+                .toList();
+    }
+
+    @Override
+    public LoanScheduleShowDTO fetchLoanSchedule(String loanNumber) {
+        ILoanRepository.LoanScheduleInputs loan = loanRepository.findScheduleInputsByLoanNumber(loanNumber)
+                .orElseThrow(() -> new ResourceNotFoundException("Loan", "loanNumber", loanNumber));
+        return LoanScheduleShowDTO.builder()
+                .loanNumber(loanNumber)
+                .loanType(loan.getLoanType())
+                .schedule(amortizationEngine.scheduleOf(loan.getTotalLoan(), loan.getLoanType()))
+                .build();
+    }
+
+    @Override
+    @Transactional
     public LoanShowDTO updateLoan(String loanNumber, LoanUpdateDTO updatedLoan) {
-        Loan loan = loanRepository.findByLoanNumber(loanNumber)
+        // Locked until commit: the save writes every column, amounts included
+        Loan loan = loanRepository.findForUpdateByLoanNumber(loanNumber)
                 .orElseThrow(() -> new ResourceNotFoundException("Loan", "loanNumber", loanNumber));
+        LoanPortfolioAggregates.Snapshot before = LoanPortfolioAggregates.Snapshot.of(loan);
 
         if (updatedLoan.getMobileNumber() != null)
             loan.setMobileNumber(updatedLoan.getMobileNumber());
@@ -93,14 +112,26 @@ public class LoanService implements ILoanService {
         if (updatedLoan.getOutstandingAmount() != null)
             loan.setOutstandingAmount(updatedLoan.getOutstandingAmount());
 
-        return LoanMapper.mapToLoanShowDTO(loanRepository.save(loan));
+        Loan saved = loanRepository.save(loan);
+        // Both snapshots are taken under the lock of the loan, and only count once the update is committed
+        portfolio.afterCommit(() -> portfolio.updated(before, saved));
+        return LoanMapper.mapToLoanShowDTO(saved);
     }
 
     @Override
+    @Transactional
     public void deleteLoan(String loanNumber) {
-        Loan loan = loanRepository.findByLoanNumber(loanNumber)
+        // Locked until the delete commits, so that the amounts taken out of the totals are the deleted ones
+        ILoanRepository.LoanAmounts loan = loanRepository.findAmountsForUpdateByLoanNumber(loanNumber)
                 .orElseThrow(() -> new ResourceNotFoundException("Loan", "loanNumber", loanNumber));
-        loanRepository.delete(loan);
+        LoanPortfolioAggregates.Snapshot deleted = LoanPortfolioAggregates.Snapshot.of(loan);
+        loanRepository.deleteByLoanNumber(loanNumber);
+        portfolio.afterCommit(() -> portfolio.deleted(deleted));
+    }
+
+    @Override
+    public List<LoanStatsShowDTO> fetchLoanStats() {
+        return portfolio.stats();
     }
 
 }
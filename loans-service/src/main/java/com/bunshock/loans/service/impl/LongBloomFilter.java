@@ -0,0 +1,96 @@
+package com.bunshock.loans.service.impl;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Lock-free Bloom filter of {@code long} keys. A key that was put is always reported as possibly
+ * contained; a key that wasn't is reported as possibly contained with about the configured
+ * false-positive probability, as long as no more than the expected number of keys were put.
+ * <p>
+ * Bits are set with compare-and-set, so puts and lookups can run concurrently from any thread.
+ * Keys can't be removed.
+ */
+public class LongBloomFilter {
+
+    private static final LongBinaryOperator OR = (word, mask) -> word | mask;
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private final AtomicLongArray words;
+    private final long bitSize;
+    private final int hashFunctions;
+
+    public LongBloomFilter(long expectedInsertions, double falsePositiveProbability) {
+        if (expectedInsertions <= 0)
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        if (!(falsePositiveProbability > 0 && falsePositiveProbability < 1))
+            throw new IllegalArgumentException("False-positive probability must be between 0 and 1 (exclusive)");
+
+        // Optimal sizing: m = -n ln(p) / ln(2)^2 bits and k = m/n ln(2) hash functions
+        long bits = (long) Math.ceil(-expectedInsertions * Math.log(falsePositiveProbability)
+                / (Math.log(2) * Math.log(2)));
+        this.words = new AtomicLongArray(Math.toIntExact(Math.ceilDiv(bits, Long.SIZE)));
+        this.bitSize = (long) words.length() * Long.SIZE;
+        this.hashFunctions = Math.max(1, (int) Math.round((double) bitSize / expectedInsertions * Math.log(2)));
+    }
+
+    public void put(long key) {
+        long hash1 = mix(key + GOLDEN_GAMMA);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitSize);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            // Skip the write when the bit is already set, which is the common case once the filter fills up
+            if ((words.get(word) & mask) == 0)
+                words.getAndAccumulate(word, mask, OR);
+        }
+    }
+
+    public boolean mightContain(long key) {
+        long hash1 = mix(key + GOLDEN_GAMMA);
+        long hash2 = mix(hash1);
+        for (int i = 0; i < hashFunctions; i++) {
+            long bit = Long.remainderUnsigned(hash1 + i * hash2, bitSize);
+            if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0)
+                return false;
+        }
+        return true;
+    }
+
+    public long bitSize() {
+        return bitSize;
+    }
+
+    public int hashFunctions() {
+        return hashFunctions;
+    }
+
+    // Estimates below are derived from the fraction of bits set, so they need no counter on the put path
+
+    public double estimatedElementCount() {
+        double setFraction = setFraction();
+        if (setFraction >= 1)
+            return Double.POSITIVE_INFINITY;
+        return -(double) bitSize / hashFunctions * Math.log1p(-setFraction);
+    }
+
+    public double estimatedFalsePositiveProbability() {
+        return Math.pow(setFraction(), hashFunctions);
+    }
+
+    private double setFraction() {
+        long setBits = 0;
+        for (int i = 0; i < words.length(); i++)
+            setBits += Long.bitCount(words.get(i));
+        return (double) setBits / bitSize;
+    }
+
+    // SplitMix64 finalizer (applied to key + gamma), spreading close keys like consecutive numbers
+    private static long mix(long key) {
+        key = (key ^ (key >>> 30)) * 0xbf58476d1ce4e5b9L;
+        key = (key ^ (key >>> 27)) * 0x94d049bb133111ebL;
+        return key ^ (key >>> 31);
+    }
+
+}
@@ -0,0 +1,12 @@
+-- Adds the unique constraint on loan numbers, as mapped by the Loan entity, to an existing database.
+--
+-- Run it once, with the service stopped. The constraint can't be added while loan numbers are
+-- duplicated: list them with the query below and resolve them first.
+-- Tables created from scratch already get the constraint, so they need no migration.
+
+SELECT loan_number, COUNT(*) AS loans
+FROM loans
+GROUP BY loan_number
+HAVING COUNT(*) > 1;
+
+ALTER TABLE loans ADD CONSTRAINT uk_loan_number UNIQUE (loan_number);
@@ -0,0 +1,14 @@
+-- Converts the loan amounts of an existing database from DOUBLE amounts in major units
+-- to BIGINT amounts in minor units (cents), as mapped by the Loan entity.
+--
+-- Run it once, with the service stopped, before starting the version using minor units.
+-- Tables created from scratch already get BIGINT columns, so they need no migration.
+
+UPDATE loans
+SET total_loan         = ROUND(total_loan * 100),
+    amount_paid        = ROUND(amount_paid * 100),
+    outstanding_amount = ROUND(outstanding_amount * 100);
+
+ALTER TABLE loans ALTER COLUMN total_loan SET DATA TYPE BIGINT;
+ALTER TABLE loans ALTER COLUMN amount_paid SET DATA TYPE BIGINT;
+ALTER TABLE loans ALTER COLUMN outstanding_amount SET DATA TYPE BIGINT;
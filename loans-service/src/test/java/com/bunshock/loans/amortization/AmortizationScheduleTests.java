@@ -0,0 +1,51 @@
+package com.bunshock.loans.amortization;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AmortizationScheduleTests {
+
+	@Test
+	void installmentsRepayThePrincipalWithTheTotalInterest() {
+		AmortizationSchedule schedule = AmortizationSchedule.calculate(20_000_00L, 950, 84);
+
+		assertThat(schedule.installments()).isEqualTo(84);
+		assertThat(schedule.monthlyPayment()).isEqualTo(326_88L);
+		assertThat(schedule.interestPaid(0)).isEqualTo(158_33L);
+		assertThat(schedule.balance(83)).isZero();
+
+		long principalPaid = 0;
+		long interestPaid = 0;
+		for (int i = 0; i < schedule.installments(); i++) {
+			assertThat(schedule.payment(i)).isEqualTo(schedule.principalPaid(i) + schedule.interestPaid(i));
+			assertThat(schedule.payment(i)).isLessThanOrEqualTo(schedule.monthlyPayment());
+			principalPaid += schedule.principalPaid(i);
+			interestPaid += schedule.interestPaid(i);
+		}
+		assertThat(principalPaid).isEqualTo(20_000_00L);
+		assertThat(interestPaid).isEqualTo(schedule.totalInterest());
+	}
+
+	@Test
+	void interestFreeLoansSplitThePrincipalEvenly() {
+		AmortizationSchedule schedule = AmortizationSchedule.calculate(100_00L, 0, 3);
+
+		assertThat(schedule.totalInterest()).isZero();
+		assertThat(schedule.payment(0)).isEqualTo(33_34L);
+		assertThat(schedule.payment(2)).isEqualTo(33_32L);
+	}
+
+	@Test
+	void scheduleIsSerializedWithItsInstallments() throws Exception {
+		JsonNode json = new ObjectMapper().valueToTree(AmortizationSchedule.calculate(20_000_00L, 950, 84));
+
+		assertThat(json.get("annualRate").decimalValue()).isEqualByComparingTo("9.50");
+		assertThat(json.get("monthlyPayment").asText()).isEqualTo("326.88");
+		assertThat(json.get("installments")).hasSize(84);
+		assertThat(json.get("installments").get(1).get("balance").asText()).isEqualTo("19661.57");
+	}
+
+}
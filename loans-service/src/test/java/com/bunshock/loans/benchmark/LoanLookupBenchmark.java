@@ -0,0 +1,148 @@
+package com.bunshock.loans.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+// Lookups of a loan by loan number as the loans table grows, with and without the unique index on
+// loan_number: the whole row, the narrow projection of the schedule endpoint, and an existence check
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanLookupBenchmark {
+
+	private static final String[] LOAN_TYPES = { "PERSONAL", "BUSINESS", "STUDENT", "MORTGAGE", "AUTO" };
+
+	@Param({ "10000", "100000", "1000000" })
+	private int loans;
+
+	@Param({ "true", "false" })
+	private boolean indexed;
+
+	private Connection connection;
+	private PreparedStatement findLoan;
+	private PreparedStatement findScheduleInputs;
+	private PreparedStatement existsLoan;
+	private String[] loanNumbers;
+	private int next;
+
+	@Setup(Level.Trial)
+	public void setUp() throws SQLException {
+		connection = DriverManager.getConnection("jdbc:h2:mem:loan-lookup");
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("""
+					CREATE TABLE loans (
+						loan_id BIGINT AUTO_INCREMENT PRIMARY KEY,
+						mobile_number VARCHAR(255) NOT NULL,
+						loan_number VARCHAR(255) NOT NULL,
+						loan_type VARCHAR(255) NOT NULL,
+						total_loan BIGINT NOT NULL,
+						amount_paid BIGINT NOT NULL,
+						outstanding_amount BIGINT NOT NULL,
+						created_at TIMESTAMP,
+						created_by VARCHAR(255),
+						updated_at TIMESTAMP,
+						updated_by VARCHAR(255)
+					)""");
+		}
+
+		// Distinct random loan numbers, so that index lookups don't benefit from insertion order
+		Random random = new Random(42);
+		loanNumbers = random.longs(0, 10_000_000_000L)
+				.distinct()
+				.limit(loans)
+				.mapToObj(number -> String.format("%010d", number))
+				.toArray(String[]::new);
+		connection.setAutoCommit(false);
+		try (PreparedStatement insert = connection.prepareStatement("INSERT INTO loans (mobile_number, loan_number,"
+				+ " loan_type, total_loan, amount_paid, outstanding_amount) VALUES (?, ?, ?, ?, ?, ?)")) {
+			for (int i = 0; i < loans; i++) {
+				insert.setString(1, String.format("%010d", i));
+				insert.setString(2, loanNumbers[i]);
+				insert.setString(3, LOAN_TYPES[i % LOAN_TYPES.length]);
+				insert.setLong(4, 1_000_000_00L);
+				insert.setLong(5, 0);
+				insert.setLong(6, 1_000_000_00L);
+				insert.addBatch();
+				if (i % 10_000 == 9_999)
+					insert.executeBatch();
+			}
+			insert.executeBatch();
+		}
+		connection.commit();
+		connection.setAutoCommit(true);
+		if (indexed) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("ALTER TABLE loans ADD CONSTRAINT uk_loan_number UNIQUE (loan_number)");
+			}
+		}
+
+		findLoan = connection.prepareStatement("SELECT * FROM loans WHERE loan_number = ?");
+		findScheduleInputs = connection.prepareStatement(
+				"SELECT loan_type, total_loan FROM loans WHERE loan_number = ?");
+		existsLoan = connection.prepareStatement("SELECT 1 FROM loans WHERE loan_number = ? FETCH FIRST 1 ROWS ONLY");
+		// Lookups in a random order, not the insertion one
+		for (int i = loanNumbers.length - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			String loanNumber = loanNumbers[i];
+			loanNumbers[i] = loanNumbers[j];
+			loanNumbers[j] = loanNumber;
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP ALL OBJECTS");
+		}
+		connection.close();
+	}
+
+	@Benchmark
+	public Object findLoan() throws SQLException {
+		return lookup(findLoan);
+	}
+
+	@Benchmark
+	public Object findScheduleInputs() throws SQLException {
+		return lookup(findScheduleInputs);
+	}
+
+	@Benchmark
+	public Object existsLoan() throws SQLException {
+		return lookup(existsLoan);
+	}
+
+	private Object lookup(PreparedStatement statement) throws SQLException {
+		statement.setString(1, loanNumbers[next]);
+		next = next + 1 == loanNumbers.length ? 0 : next + 1;
+		try (ResultSet row = statement.executeQuery()) {
+			if (!row.next())
+				throw new IllegalStateException("Loan not found");
+			return row.getObject(1);
+		}
+	}
+
+}
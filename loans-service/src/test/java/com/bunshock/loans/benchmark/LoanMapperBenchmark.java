@@ -0,0 +1,48 @@
+package com.bunshock.loans.benchmark;
+
+import com.bunshock.loans.dto.loan.LoanShowDTO;
+import com.bunshock.loans.entity.Loan;
+import com.bunshock.loans.enums.LoanType;
+import com.bunshock.loans.mapper.LoanMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanMapperBenchmark {
+
+	private Loan loan;
+
+	@Setup
+	public void setUp() {
+		loan = Loan.builder()
+				.loanId(1L)
+				.mobileNumber("+254712345678")
+				.loanNumber("5831960233")
+				.loanType(LoanType.PERSONAL)
+				.totalLoan(100_000_00L)
+				.amountPaid(2_500_00L)
+				.outstandingAmount(97_500_00L)
+				.build();
+	}
+
+	@Benchmark
+	public LoanShowDTO mapToLoanShowDTO() {
+		return LoanMapper.mapToLoanShowDTO(loan);
+	}
+
+}
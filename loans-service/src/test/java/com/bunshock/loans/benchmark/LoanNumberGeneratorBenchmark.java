@@ -0,0 +1,39 @@
+package com.bunshock.loans.benchmark;
+
+import com.bunshock.loans.service.impl.LoanNumberGeneratorService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Loan number generation, and the formatting part of it on its own
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LoanNumberGeneratorBenchmark {
+
+	private final LoanNumberGeneratorService generator = new LoanNumberGeneratorService();
+
+	private long number = 5_831_960_233L;
+
+	@Benchmark
+	public String generateId() {
+		return generator.generateId();
+	}
+
+	@Benchmark
+	public String formatLoanNumber() {
+		return String.format("%010d", number);
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.bunshock.loans.benchmark;
+
+import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.dto.ResponseErrorDTO;
+import com.bunshock.loans.dto.ResponseSuccessDTO;
+import com.bunshock.loans.dto.loan.LoanShowDTO;
+import com.bunshock.loans.enums.LoanType;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Building the response bodies the controllers and the exception handler return,
+// and serializing them the way the message converter does
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResponseBenchmark {
+
+	// Configured with the same well-known modules as the one Spring Boot auto-configures
+	private final ObjectMapper objectMapper = Jackson2ObjectMapperBuilder.json().build();
+
+	private LoanShowDTO data;
+	private Map<String, String> errors;
+	private ResponseSuccessDTO<LoanShowDTO> successResponse;
+	private ResponseErrorDTO errorResponse;
+
+	@Setup
+	public void setUp() {
+		data = LoanShowDTO.builder()
+				.mobileNumber("+254712345678")
+				.loanNumber("5831960233")
+				.loanType(LoanType.PERSONAL)
+				.totalLoan(100_000_00L)
+				.amountPaid(2_500_00L)
+				.outstandingAmount(97_500_00L)
+				.build();
+		errors = Map.of(
+				"mobileNumber", "Invalid mobile number format",
+				"email", "Invalid email address format");
+		successResponse = buildSuccessResponse();
+		errorResponse = buildErrorResponse();
+	}
+
+	@Benchmark
+	public ResponseSuccessDTO<LoanShowDTO> buildSuccessResponse() {
+		return ResponseSuccessDTO.<LoanShowDTO>builder()
+				.statusCode(HttpStatus.OK.value())
+				.timestamp(LocalDateTime.now())
+				.message(String.format(LoanConstants.MESSAGE_200, "Fetched details"))
+				.data(data)
+				.build();
+	}
+
+	@Benchmark
+	public ResponseErrorDTO buildErrorResponse() {
+		return ResponseErrorDTO.builder()
+				.statusCode(HttpStatus.BAD_REQUEST.value())
+				.timestamp(LocalDateTime.now())
+				.apiPath("uri=/api/loans/fetch")
+				.errors(errors)
+				.build();
+	}
+
+	@Benchmark
+	public ResponseErrorDTO buildSingleErrorResponse() {
+		return ResponseErrorDTO.builder()
+				.statusCode(HttpStatus.NOT_FOUND.value())
+				.timestamp(LocalDateTime.now())
+				.apiPath("uri=/api/loans/fetch")
+				.errorMessage("Loan not found with loanNumber : '5831960233'")
+				.build();
+	}
+
+	@Benchmark
+	public byte[] serializeSuccessResponse() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(successResponse);
+	}
+
+	@Benchmark
+	public byte[] serializeErrorResponse() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(errorResponse);
+	}
+
+}
@@ -0,0 +1,139 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.dto.loan.LoanCreateDTO;
+import com.bunshock.loans.entity.AccrualCheckpoint;
+import com.bunshock.loans.entity.Loan;
+import com.bunshock.loans.repository.IAccrualCheckpointRepository;
+import com.bunshock.loans.repository.ILoanRepository;
+import com.bunshock.loans.service.ILoanService;
+import org.assertj.core.api.InstanceOfAssertFactories;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.scheduling.config.CronTask;
+import org.springframework.scheduling.config.ScheduledTask;
+import org.springframework.scheduling.config.ScheduledTaskHolder;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.doReturn;
+
+// Partitions of 4 loan ids in chunks of 3 loans, so that partitions span several chunks, and a schedule
+// that never fires (February 30th)
+@SpringBootTest(properties = {
+		"loan-interest-accrual.enabled=true",
+		"loan-interest-accrual.cron=0 0 0 30 2 *",
+		"loan-interest-accrual.partition-size=4",
+		"loan-interest-accrual.chunk-size=3"
+})
+class LoanInterestAccrualJobTests {
+
+	private static final LocalDate ACCRUAL_DATE = LocalDate.of(2025, 6, 7);
+
+	@Autowired
+	private LoanInterestAccrualJob accrualJob;
+
+	@Autowired
+	private ILoanService loanService;
+
+	@Autowired
+	private ILoanRepository loanRepository;
+
+	@MockitoSpyBean
+	private IAccrualCheckpointRepository checkpointRepository;
+
+	@Autowired
+	private ScheduledTaskHolder scheduledTasks;
+
+	@AfterEach
+	void cleanUp() {
+		loanRepository.deleteAll();
+		checkpointRepository.deleteAll();
+	}
+
+	@Test
+	void runIsScheduledWithTheConfiguredCron() {
+		// Scheduled tasks are described by the method they run
+		assertThat(scheduledTasks.getScheduledTasks())
+				.filteredOn(task -> task.toString().equals(LoanInterestAccrualJob.class.getName() + ".run"))
+				.singleElement()
+				.extracting(ScheduledTask::getTask)
+				.asInstanceOf(InstanceOfAssertFactories.type(CronTask.class))
+				.extracting(CronTask::getExpression)
+				.isEqualTo("0 0 0 30 2 *");
+	}
+
+	@Test
+	void everyLoanIsAccruedOnceADay() {
+		for (int i = 0; i < 10; i++)
+			loanService.createLoan(new LoanCreateDTO("+15550000001", "PERSONAL"));
+		// 20000.00 at 12% a year
+		long dailyInterest = LoanInterestAccrualJob.dailyInterest(LoanConstants.NEW_LOAN_LIMIT, 1200);
+		assertThat(dailyInterest).isEqualTo(6_58L);
+
+		assertThat(accrualJob.accrue(ACCRUAL_DATE)).isEqualTo(10);
+		assertThat(accrualJob.accrue(ACCRUAL_DATE)).isZero();
+		assertThat(loanRepository.findAll()).extracting(Loan::getOutstandingAmount)
+				.containsOnly(LoanConstants.NEW_LOAN_LIMIT + dailyInterest);
+		assertThat(checkpointRepository.findByAccrualDateOrderByFirstLoanIdAsc(ACCRUAL_DATE))
+				.hasSize(3).allMatch(checkpoint -> checkpoint.getCompletedAt() != null);
+
+		assertThat(accrualJob.accrue(ACCRUAL_DATE.plusDays(1))).isEqualTo(10);
+	}
+
+	@Test
+	void interruptedRunResumesAfterTheLastCheckpoint() {
+		for (int i = 0; i < 6; i++)
+			loanService.createLoan(new LoanCreateDTO("+15550000001", "AUTO"));
+		List<Long> loanIds = loanRepository.findAll().stream().map(Loan::getLoanId).sorted().toList();
+
+		// As left by a run that committed the first 2 loans of the day, then stopped
+		checkpointRepository.save(new AccrualCheckpoint(ACCRUAL_DATE + "/" + loanIds.getFirst(), ACCRUAL_DATE,
+				loanIds.getFirst(), loanIds.getLast(), loanIds.get(2), null));
+
+		assertThat(accrualJob.accrue(ACCRUAL_DATE)).isEqualTo(4);
+		assertThat(loanRepository.findAll()).filteredOn(loan -> loan.getLoanId() < loanIds.get(2))
+				.extracting(Loan::getOutstandingAmount).containsOnly(LoanConstants.NEW_LOAN_LIMIT);
+	}
+
+	@Test
+	void incompleteEarlierDaysAreFinishedFirst() {
+		for (int i = 0; i < 6; i++)
+			loanService.createLoan(new LoanCreateDTO("+15550000001", "AUTO"));
+		List<Long> loanIds = loanRepository.findAll().stream().map(Loan::getLoanId).sorted().toList();
+		LocalDate dayBefore = ACCRUAL_DATE.minusDays(1);
+		checkpointRepository.save(new AccrualCheckpoint(dayBefore + "/" + loanIds.getFirst(), dayBefore,
+				loanIds.getFirst(), loanIds.getLast(), loanIds.get(2), null));
+
+		// 4 loans left of the day before, then the 6 of the day
+		assertThat(accrualJob.accrue(ACCRUAL_DATE)).isEqualTo(10);
+		assertThat(checkpointRepository.findAll()).allMatch(checkpoint -> checkpoint.getCompletedAt() != null);
+	}
+
+	@Test
+	void chunksOfACheckpointMovedByAnotherRunAreRolledBack() {
+		for (int i = 0; i < 6; i++)
+			loanService.createLoan(new LoanCreateDTO("+15550000001", "AUTO"));
+		List<Long> loanIds = loanRepository.findAll().stream().map(Loan::getLoanId).sorted().toList();
+		String checkpointId = ACCRUAL_DATE + "/" + loanIds.getFirst();
+
+		// Read by this run before another one accrued the first 3 loans
+		AccrualCheckpoint stale = new AccrualCheckpoint(checkpointId, ACCRUAL_DATE, loanIds.getFirst(),
+				loanIds.getLast(), loanIds.getFirst(), null);
+		checkpointRepository.save(new AccrualCheckpoint(checkpointId, ACCRUAL_DATE, loanIds.getFirst(),
+				loanIds.getLast(), loanIds.get(3), null));
+		doReturn(List.of(stale)).when(checkpointRepository).findByAccrualDateOrderByFirstLoanIdAsc(ACCRUAL_DATE);
+
+		assertThat(accrualJob.accrue(ACCRUAL_DATE)).isZero();
+		assertThat(loanRepository.findAll()).extracting(Loan::getOutstandingAmount)
+				.containsOnly(LoanConstants.NEW_LOAN_LIMIT);
+		assertThat(checkpointRepository.findById(checkpointId)).get()
+				.extracting(AccrualCheckpoint::getNextLoanId).isEqualTo(loanIds.get(3));
+	}
+
+}
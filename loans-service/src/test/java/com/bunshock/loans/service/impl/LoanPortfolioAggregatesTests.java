@@ -0,0 +1,138 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.dto.loan.LoanCreateDTO;
+import com.bunshock.loans.dto.loan.LoanStatsShowDTO;
+import com.bunshock.loans.dto.loan.LoanUpdateDTO;
+import com.bunshock.loans.entity.Loan;
+import com.bunshock.loans.enums.LoanType;
+import com.bunshock.loans.repository.ILoanRepository;
+import com.bunshock.loans.service.ILoanService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class LoanPortfolioAggregatesTests {
+
+	@Autowired
+	private ILoanService loanService;
+
+	@Autowired
+	private ILoanRepository loanRepository;
+
+	@Autowired
+	private LoanPortfolioAggregates portfolio;
+
+	@Autowired
+	private LoanRepaymentIngestionService repaymentIngestion;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	// Other tests change the table directly
+	@BeforeEach
+	void rebuild() {
+		portfolio.rebuild();
+	}
+
+	@AfterEach
+	void cleanUp() {
+		loanRepository.deleteAll();
+	}
+
+	@Test
+	void totalsFollowEveryChangeToLoans() throws Exception {
+		List<Future<?>> results = new ArrayList<>();
+		try (ExecutorService executor = Executors.newFixedThreadPool(8)) {
+			for (int i = 0; i < 40; i++) {
+				String loanType = i % 2 == 0 ? "PERSONAL" : "AUTO";
+				results.add(executor.submit(() -> loanService.createLoan(new LoanCreateDTO("+15550000001", loanType))));
+			}
+		}
+		for (Future<?> result : results)
+			result.get();
+
+		List<String> loanNumbers = loanRepository.findAll().stream().map(Loan::getLoanNumber).toList();
+		loanService.updateLoan(loanNumbers.get(0), LoanUpdateDTO.builder()
+				.loanType("MORTGAGE")
+				.totalLoan(50_000_00L)
+				.outstandingAmount(50_000_00L)
+				.build());
+		loanService.deleteLoan(loanNumbers.get(1));
+		repaymentIngestion.ingest(new BufferedReader(new StringReader("loanNumber,amount\n"
+				+ loanNumbers.get(2) + ",100.00\n" + loanNumbers.get(2) + ",50.50\n")), new StringWriter());
+
+		List<LoanStatsShowDTO> maintained = loanService.fetchLoanStats();
+		assertThat(maintained).filteredOn(stats -> stats.getLoanType() == LoanType.MORTGAGE)
+				.singleElement().extracting(LoanStatsShowDTO::getCount).isEqualTo(1L);
+
+		// Same totals as computed from the table
+		portfolio.rebuild();
+		assertThat(maintained).usingRecursiveFieldByFieldElementComparator()
+				.containsExactlyElementsOf(loanService.fetchLoanStats());
+	}
+
+	@Test
+	void repaymentsIngestedDuringADeleteAreNotTakenOutOfTheTotals() throws Exception {
+		loanService.createLoan(new LoanCreateDTO("+15550000001", "PERSONAL"));
+		String loanNumber = loanRepository.findAll().getFirst().getLoanNumber();
+
+		CompletableFuture<Void> ingestion = new CompletableFuture<>();
+		transactionTemplate.executeWithoutResult(status -> {
+			loanService.deleteLoan(loanNumber);
+			// Runs while the delete is uncommitted, so it has to wait for it, then finds no loan
+			Thread.ofPlatform().start(() -> {
+				try {
+					repaymentIngestion.ingest(new BufferedReader(new StringReader(
+							"loanNumber,amount\n" + loanNumber + ",100.00\n")), new StringWriter());
+					ingestion.complete(null);
+				} catch (Exception e) {
+					ingestion.completeExceptionally(e);
+				}
+			});
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+		ingestion.get(10, TimeUnit.SECONDS);
+
+		List<LoanStatsShowDTO> maintained = loanService.fetchLoanStats();
+		portfolio.rebuild();
+		assertThat(maintained).usingRecursiveFieldByFieldElementComparator()
+				.containsExactlyElementsOf(loanService.fetchLoanStats());
+	}
+
+	@Test
+	void rolledBackUpdatesLeaveTheTotalsUnchanged() {
+		loanService.createLoan(new LoanCreateDTO("+15550000001", "PERSONAL"));
+		String loanNumber = loanRepository.findAll().getFirst().getLoanNumber();
+		List<LoanStatsShowDTO> before = loanService.fetchLoanStats();
+
+		transactionTemplate.executeWithoutResult(status -> {
+			loanService.updateLoan(loanNumber, LoanUpdateDTO.builder().loanType("AUTO").build());
+			status.setRollbackOnly();
+		});
+
+		assertThat(loanService.fetchLoanStats()).usingRecursiveFieldByFieldElementComparator()
+				.containsExactlyElementsOf(before);
+	}
+
+}
@@ -0,0 +1,117 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.constants.LoanConstants;
+import com.bunshock.loans.dto.loan.LoanCreateDTO;
+import com.bunshock.loans.dto.loan.LoanUpdateDTO;
+import com.bunshock.loans.entity.Loan;
+import com.bunshock.loans.money.Money;
+import com.bunshock.loans.repository.ILoanRepository;
+import com.bunshock.loans.service.ILoanService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+// Small chunks, so that the repayments of a loan span several of them
+@SpringBootTest(properties = "loan-repayment-ingestion.chunk-size=2")
+class LoanRepaymentIngestionTests {
+
+	@Autowired
+	private LoanRepaymentIngestionService repaymentIngestion;
+
+	@Autowired
+	private ILoanService loanService;
+
+	@Autowired
+	private ILoanRepository loanRepository;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@AfterEach
+	void cleanUp() {
+		loanRepository.deleteAll();
+	}
+
+	@Test
+	void repaymentsAreAppliedPerRowAndReportedInFileOrder() throws Exception {
+		loanService.createLoan(new LoanCreateDTO("+15550000001", "PERSONAL"));
+		String loanNumber = loanRepository.findAll().getFirst().getLoanNumber();
+
+		String file = "loanNumber,amount\n"
+				+ loanNumber + ",1200.80\n"
+				+ "1234567890,50.00\n"
+				+ loanNumber + ",abc\n"
+				+ "\n"
+				+ loanNumber + ",18799.20\n"
+				+ loanNumber + ",0.01\n";
+		StringWriter report = new StringWriter();
+		repaymentIngestion.ingest(new BufferedReader(new StringReader(file)), report);
+
+		assertThat(report.toString().lines()).containsExactly(
+				LoanRepaymentIngestionService.REPORT_HEADER,
+				"2," + loanNumber + ",1200.80,APPLIED,",
+				"3,1234567890,50.00,REJECTED,Loan not found with loanNumber : '1234567890'",
+				"4," + loanNumber + ",abc,REJECTED,Amount must be a decimal number with at most 2 decimal places",
+				"6," + loanNumber + ",18799.20,APPLIED,",
+				"7," + loanNumber + ",0.01,REJECTED,Amount exceeds the outstanding amount of 0.00");
+
+		Loan loan = loanRepository.findByLoanNumber(loanNumber).orElseThrow();
+		assertThat(loan.getAmountPaid()).isEqualTo(LoanConstants.NEW_LOAN_LIMIT);
+		assertThat(loan.getOutstandingAmount()).isZero();
+		assertThat(loan.getUpdatedBy()).isEqualTo("LOANS_MS");
+	}
+
+	@Test
+	void repaymentsIngestedDuringAnUpdateOfTheLoanAreNotLost() throws Exception {
+		loanService.createLoan(new LoanCreateDTO("+15550000001", "PERSONAL"));
+		String loanNumber = loanRepository.findAll().getFirst().getLoanNumber();
+
+		CompletableFuture<String> ingestion = new CompletableFuture<>();
+		transactionTemplate.executeWithoutResult(status -> {
+			loanService.updateLoan(loanNumber, LoanUpdateDTO.builder().mobileNumber("+15550000002").build());
+			// Runs while the update is uncommitted, so it has to wait for it
+			Thread.ofPlatform().start(() -> {
+				StringWriter report = new StringWriter();
+				try {
+					repaymentIngestion.ingest(new BufferedReader(new StringReader(
+							"loanNumber,amount\n" + loanNumber + ",100.00\n")), report);
+					ingestion.complete(report.toString());
+				} catch (Exception e) {
+					ingestion.completeExceptionally(e);
+				}
+			});
+			try {
+				Thread.sleep(200);
+			} catch (InterruptedException e) {
+				throw new IllegalStateException(e);
+			}
+		});
+
+		assertThat(ingestion.get(10, TimeUnit.SECONDS).lines()).contains("2," + loanNumber + ",100.00,APPLIED,");
+		Loan loan = loanRepository.findByLoanNumber(loanNumber).orElseThrow();
+		assertThat(loan.getMobileNumber()).isEqualTo("+15550000002");
+		assertThat(loan.getAmountPaid()).isEqualTo(Money.ofMajor(100));
+		assertThat(loan.getOutstandingAmount()).isEqualTo(LoanConstants.NEW_LOAN_LIMIT - Money.ofMajor(100));
+	}
+
+	@Test
+	void fileWithoutTheHeaderIsRejected() throws Exception {
+		StringWriter report = new StringWriter();
+		repaymentIngestion.ingest(new BufferedReader(new StringReader("1234567890,50.00\n")), report);
+
+		assertThat(report.toString().lines()).containsExactly(
+				LoanRepaymentIngestionService.REPORT_HEADER,
+				"1,,,REJECTED,\"Expected header: loanNumber,amount\"");
+	}
+
+}
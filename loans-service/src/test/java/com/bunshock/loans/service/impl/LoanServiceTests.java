@@ -0,0 +1,68 @@
+package com.bunshock.loans.service.impl;
+
+import com.bunshock.loans.dto.CursorPageDTO;
+import com.bunshock.loans.dto.loan.LoanCreateDTO;
+import com.bunshock.loans.dto.loan.LoanShowDTO;
+import com.bunshock.loans.entity.Loan;
+import com.bunshock.loans.repository.ILoanRepository;
+import com.bunshock.loans.service.ILoanService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+class LoanServiceTests {
+
+	@Autowired
+	private ILoanService loanService;
+
+	@Autowired
+	private ILoanRepository loanRepository;
+
+	@AfterEach
+	void cleanUp() {
+		loanRepository.deleteAll();
+	}
+
+	@Test
+	void fetchAllLoansPagesThroughEveryLoanOnce() {
+		// A multiple of the page size, so that the last full page must not point to an empty one
+		for (int i = 1; i <= 6; i++)
+			loanService.createLoan(new LoanCreateDTO(String.format("+1555%07d", i), "PERSONAL"));
+
+		List<String> loanNumbers = new ArrayList<>();
+		int pages = 0;
+		Long cursor = null;
+		do {
+			CursorPageDTO<LoanShowDTO> page = loanService.fetchAllLoans(cursor, 2);
+			assertThat(page.getContent()).hasSize(2);
+			page.getContent().forEach(loan -> loanNumbers.add(loan.getLoanNumber()));
+			cursor = page.getNextCursor() == null ? null : Long.valueOf(page.getNextCursor());
+			pages++;
+		} while (cursor != null);
+
+		assertThat(pages).isEqualTo(3);
+		assertThat(loanNumbers).hasSize(6).doesNotHaveDuplicates()
+				.containsExactlyInAnyOrderElementsOf(loanRepository.findAll().stream().map(Loan::getLoanNumber).toList());
+	}
+
+	@Test
+	void fetchAllLoansReturnsAnEmptyLastPage() {
+		CursorPageDTO<LoanShowDTO> empty = loanService.fetchAllLoans(null, 2);
+		assertThat(empty.getContent()).isEmpty();
+		assertThat(empty.getNextCursor()).isNull();
+
+		loanService.createLoan(new LoanCreateDTO("+15550000001", "PERSONAL"));
+		long lastLoanId = loanRepository.findAll().getFirst().getLoanId();
+		CursorPageDTO<LoanShowDTO> pastTheEnd = loanService.fetchAllLoans(lastLoanId, 2);
+		assertThat(pastTheEnd.getContent()).isEmpty();
+		assertThat(pastTheEnd.getNextCursor()).isNull();
+	}
+
+}